@@ -0,0 +1,255 @@
+package Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import bibleReader.BibleIO;
+import bibleReader.model.Bible;
+import bibleReader.model.BibleFactory;
+import bibleReader.model.BibleFactory.BibleType;
+import bibleReader.model.BibleReaderModel;
+import bibleReader.model.BookOfBible;
+import bibleReader.model.Concordance;
+import bibleReader.model.Reference;
+import bibleReader.model.ReferenceList;
+import bibleReader.model.Verse;
+import bibleReader.model.VerseList;
+
+/**
+ * Tests that the concordance finds exactly the verses whose words (as given by Concordance.extractWords) include the
+ * word searched for. These tests assume BibleIO is working and can read in the esv.atv file.
+ *
+ * @author Logan
+ */
+public class Stage12ConcordanceTest {
+	private static Bible		bible;
+	private static Concordance	concordance;
+
+	@BeforeClass
+	public static void readFileAndCreateConcordance() {
+		VerseList verses = BibleIO.readBible(new File("esv.atv"));
+		bible = BibleFactory.createBible(verses);
+		concordance = BibleFactory.createConcordance(bible);
+	}
+
+	@Test(timeout = 1000)
+	public void testConcordanceCreationTime() {
+		BibleFactory.createConcordance(bible);
+	}
+
+	@Test(timeout = 5000)
+	public void testMatchesExtractWords() {
+		String[] words = { "god", "jesus", "wept", "the", "lord", "son", "sons", "s", "sup", "8212", "1000", "melchizedek",
+				"zzz" };
+		for (String word : words) {
+			ReferenceList expected = new ReferenceList();
+			for (Verse verse : bible.getAllVerses()) {
+				if (Concordance.extractWords(verse.getText()).contains(word)) {
+					expected.add(verse.getReference());
+				}
+			}
+			assertEquals(word, expected, concordance.getReferencesContaining(word));
+		}
+	}
+
+	@Test(timeout = 5000)
+	public void testParallelBuildMatchesSequentialBuild() {
+		Concordance sequential = new Concordance(bible);
+		Concordance parallel = new Concordance(bible, new ForkJoinPool(4));
+		String[] words = { "god", "jesus", "wept", "the", "aaron", "zion", "amen", "zzz" };
+		for (String word : words) {
+			assertEquals(word, sequential.getReferencesContaining(word), parallel.getReferencesContaining(word));
+		}
+	}
+
+	@Test(timeout = 5000)
+	public void testContainingAllMatchesExtractWords() {
+		String[][] queries = { { "son", "of", "god" }, { "jesus", "wept" }, { "the", "lord" }, { "Lord", "LORD" },
+				{ "god", "zzz" }, { "wept" } };
+		for (String[] query : queries) {
+			ArrayList<String> words = new ArrayList<String>(Arrays.asList(query));
+			ReferenceList expected = new ReferenceList();
+			for (Verse verse : bible.getAllVerses()) {
+				ArrayList<String> verseWords = Concordance.extractWords(verse.getText());
+				boolean hasAll = true;
+				for (String word : words) {
+					hasAll = hasAll && verseWords.contains(word.toLowerCase());
+				}
+				if (hasAll) {
+					expected.add(verse.getReference());
+				}
+			}
+			assertEquals(words.toString(), expected, concordance.getReferencesContainingAll(words));
+		}
+		assertEquals(0, concordance.getReferencesContainingAll(new ArrayList<String>()).size());
+	}
+
+	@Test(timeout = 5000)
+	public void testModelContainingAllWords() {
+		BibleReaderModel model = new BibleReaderModel();
+		model.addBible(bible);
+		ArrayList<String> words = new ArrayList<String>(Arrays.asList("son", "of", "god"));
+		assertEquals(concordance.getReferencesContainingAll(words), model.getReferencesContainingAllWords("Son of God!"));
+		assertEquals(0, model.getReferencesContainingAllWords("  ").size());
+	}
+
+	@Test(timeout = 5000)
+	public void testPhrasesMatchExtractWords() {
+		String[] phrases = { "son of god", "Jesus wept", "the lord", "of the", "god god", "in the beginning", "wept" };
+		for (String phrase : phrases) {
+			ArrayList<String> phraseWords = Concordance.extractWords(phrase);
+			ReferenceList expected = new ReferenceList();
+			for (Verse verse : bible.getAllVerses()) {
+				if (Collections.indexOfSubList(Concordance.extractWords(verse.getText()), phraseWords) >= 0) {
+					expected.add(verse.getReference());
+				}
+			}
+			assertEquals(phrase, expected, concordance.getReferencesContainingPhrase(phrase));
+		}
+		assertEquals(0, concordance.getReferencesContainingPhrase(" , ").size());
+	}
+
+	@Test(timeout = 5000)
+	public void testModelWordsAndPhrases() {
+		BibleReaderModel model = new BibleReaderModel();
+		model.addBible(bible);
+		ArrayList<String> words = new ArrayList<String>(Arrays.asList("the"));
+		ArrayList<String> phrases = new ArrayList<String>(Arrays.asList("son of god"));
+		ReferenceList results = model.getReferencesContainingAllWordsAndPhrases("\"Son of God\" the");
+		assertEquals(concordance.getReferencesContainingAll(words, phrases), results);
+		assertTrue(results.size() > 0);
+		assertEquals(0, model.getReferencesContainingAllWordsAndPhrases("\"\"").size());
+	}
+
+	@Test
+	public void testSizeInBytes() {
+		// The compressed postings should take a few bytes per occurrence, not
+		// a Reference object each.
+		assertTrue(concordance.getSizeInBytes() > 0);
+		assertTrue(concordance.getSizeInBytes() < 16 * 1024 * 1024);
+	}
+
+	@Test(timeout = 5000)
+	public void testSavedConcordance() throws IOException {
+		File file = File.createTempFile("esv", ".cnc");
+		try {
+			assertTrue(BibleIO.writeConcordance(file, concordance));
+			Concordance loaded = BibleFactory.createConcordance(bible, file);
+			String[] words = { "god", "jesus", "wept", "the", "zzz" };
+			for (String word : words) {
+				assertEquals(word, concordance.getReferencesContaining(word), loaded.getReferencesContaining(word));
+			}
+			assertEquals(concordance.getReferencesContainingPhrase("son of god"),
+					loaded.getReferencesContainingPhrase("son of god"));
+
+			// A file with a damaged header, or cut short, is ignored and the concordance is built instead.
+			byte[] bytes = Files.readAllBytes(file.toPath());
+			assertNull(Concordance.read(bible, ByteBuffer.wrap(bytes, 0, bytes.length - 1).slice()));
+			RandomAccessFile raf = new RandomAccessFile(file, "rw");
+			raf.seek(20);
+			int b = raf.read();
+			raf.seek(20);
+			raf.write(b ^ 0xFF);
+			raf.close();
+			ByteBuffer damaged = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+			assertNull(Concordance.read(bible, damaged));
+			assertEquals(concordance.getReferencesContaining("god"),
+					BibleFactory.createConcordance(bible, file).getReferencesContaining("god"));
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test(timeout = 5000)
+	public void testSavedConcordanceForDifferentText() throws IOException {
+		File file = File.createTempFile("esv", ".cnc");
+		try {
+			assertTrue(BibleIO.writeConcordance(file, concordance));
+
+			// The same references, but the first verse says something else.
+			VerseList verses = new VerseList(bible.getVersion(), bible.getTitle());
+			verses.addAll(bible.getAllVerses());
+			Reference changed = verses.get(0).getReference();
+			verses.set(0, new Verse(changed, "Zzz."));
+			Bible other = BibleFactory.createBible(verses);
+			assertNull(Concordance.read(other, ByteBuffer.wrap(Files.readAllBytes(file.toPath()))));
+
+			// So the concordance is built for the new text instead.
+			Concordance rebuilt = BibleFactory.createConcordance(other, file);
+			assertEquals(0, concordance.getReferencesContaining("zzz").size());
+			assertEquals(Arrays.asList(changed), rebuilt.getReferencesContaining("zzz"));
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test(timeout = 5000)
+	public void testSavedConcordanceForEachType() throws IOException {
+		// Each kind of Bible works out the same checksums for the same verses, so the file can be read with any of them.
+		File file = File.createTempFile("esv", ".cnc");
+		try {
+			assertTrue(BibleIO.writeConcordance(file, concordance));
+			for (BibleType type : BibleType.values()) {
+				Bible other = BibleFactory.createBible(bible.getAllVerses(), type);
+				Concordance loaded = BibleFactory.readConcordance(other, file);
+				assertNotNull(type.toString(), loaded);
+				assertEquals(type.toString(), concordance.getReferencesContaining("god"),
+						loaded.getReferencesContaining("god"));
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test(timeout = 5000)
+	public void testSavingAgainReplacesTheFile() throws IOException {
+		File folder = Files.createTempDirectory("cnc").toFile();
+		File file = new File(folder, "esv.atv.cnc");
+		try {
+			assertTrue(BibleIO.writeConcordance(file, concordance));
+			assertTrue(BibleIO.writeConcordance(file, concordance));
+			// No temporary files are left behind.
+			assertArrayEquals(new String[] { file.getName() }, folder.list());
+			assertEquals(concordance.getReferencesContaining("god"),
+					BibleFactory.readConcordance(bible, file).getReferencesContaining("god"));
+		} finally {
+			for (File f : folder.listFiles()) {
+				f.delete();
+			}
+			folder.delete();
+		}
+	}
+
+	@Test
+	public void testIgnoresCase() {
+		assertEquals(concordance.getReferencesContaining("jesus"), concordance.getReferencesContaining("JeSuS"));
+		assertEquals(concordance.getReferencesContaining("wept"), concordance.getReferencesContaining(" wept "));
+		assertEquals(0, concordance.getReferencesContaining("").size());
+	}
+
+	@Test
+	public void testWordsAreOnlyListedOncePerVerse() {
+		ReferenceList results = concordance.getReferencesContaining("the");
+		// In order and without duplicates.
+		for (int i = 1; i < results.size(); i++) {
+			assertTrue(results.get(i - 1).compareTo(results.get(i)) < 0);
+		}
+		assertTrue(results.contains(new Reference(BookOfBible.Genesis, 1, 1)));
+	}
+}
@@ -0,0 +1,183 @@
+package Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import bibleReader.BibleIO;
+import bibleReader.model.Bible;
+import bibleReader.model.BibleFactory;
+import bibleReader.model.BookOfBible;
+import bibleReader.model.Concordance;
+import bibleReader.model.PackedBible;
+import bibleReader.model.Reference;
+import bibleReader.model.ReferenceList;
+import bibleReader.model.Verse;
+import bibleReader.model.VerseList;
+
+/**
+ * Tests for the PackedBible class and the packed form of a Reference. These tests assume BibleIO is working and can
+ * read in the kjv.atv file.
+ *
+ * @author Logan
+ */
+public class Stage13PackedBibleTest {
+	private static VerseList	versesFromFile;
+	private Bible				testBible;
+
+	@BeforeClass
+	public static void readFile() {
+		versesFromFile = BibleIO.readBible(new File("kjv.atv"));
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		VerseList copyOfVerseList = new VerseList(versesFromFile.getVersion(), versesFromFile.getDescription(),
+				new ArrayList<Verse>(versesFromFile));
+		testBible = new PackedBible(copyOfVerseList);
+	}
+
+	@Test
+	public void testPackedReferencesSortLikeReferences() {
+		Reference[] refs = { new Reference(BookOfBible.Genesis, 1, 1), new Reference(BookOfBible.Genesis, 1, 31),
+				new Reference(BookOfBible.Genesis, 2, 1), new Reference(BookOfBible.Psalms, 119, 176),
+				new Reference(BookOfBible.Revelation, 22, 21) };
+		for (int i = 0; i < refs.length; i++) {
+			assertEquals(refs[i], Reference.unpack(refs[i].pack()));
+			if (i > 0) {
+				assertTrue(refs[i - 1].pack() < refs[i].pack());
+			}
+		}
+		assertFalse(Reference.isPackable(BookOfBible.John, 3, -1));
+		assertFalse(Reference.isPackable(null, 3, 16));
+	}
+
+	@Test(timeout = 50)
+	public void testGetVerse() {
+		assertEquals(versesFromFile.get(26136), testBible.getVerse(new Reference(BookOfBible.John, 3, 16)));
+		assertEquals(versesFromFile.get(0), testBible.getVerse(BookOfBible.Genesis, 1, 1));
+		assertEquals(versesFromFile.get(31101), testBible.getVerse(BookOfBible.Revelation, 22, 21));
+		assertNull(testBible.getVerse(BookOfBible.Revelation, 22, 22));
+		assertNull(testBible.getVerse(new Reference(null, 1, 1)));
+		assertFalse(testBible.isValid(new Reference(BookOfBible.Dummy, 1, 1)));
+	}
+
+	@Test(timeout = 50)
+	public void testLastVerseAndChapterNumbers() {
+		assertEquals(6, testBible.getLastVerseNumber(BookOfBible.Psalms, 23));
+		assertEquals(45, testBible.getLastVerseNumber(BookOfBible.Psalms, 105));
+		assertEquals(-1, testBible.getLastVerseNumber(BookOfBible.Jude, 2));
+		assertEquals(50, testBible.getLastChapterNumber(BookOfBible.Genesis));
+		assertEquals(1, testBible.getLastChapterNumber(BookOfBible.Philemon));
+		assertEquals(-1, testBible.getLastChapterNumber(BookOfBible.Dummy));
+	}
+
+	@Test(timeout = 50)
+	public void testPassages() {
+		ReferenceList results = testBible.getReferencesInclusive(new Reference(BookOfBible.Kings2, 3, 4),
+				new Reference(BookOfBible.Kings2, 11, 2));
+		assertEquals(new Reference(BookOfBible.Kings2, 3, 4), results.get(0));
+		assertEquals(new Reference(BookOfBible.Kings2, 11, 2), results.get(results.size() - 1));
+
+		// As in the other Bibles, a passage that starts and ends at the same verse is empty.
+		results = testBible.getReferencesForPassage(BookOfBible.John, 3, 16, 16);
+		assertEquals(0, results.size());
+		assertEquals(0, testBible.getPassage(BookOfBible.John, 3, 16, 16).size());
+
+		assertEquals(versesFromFile.subList(0, 31), testBible.getChapter(BookOfBible.Genesis, 1));
+		assertEquals(0, testBible.getChapters(BookOfBible.Timothy1, 3, 2).size());
+		assertEquals(0, testBible.getReferencesForBook(null).size());
+	}
+
+	@Test(timeout = 500)
+	public void testVersesOutOfOrder() {
+		ArrayList<Verse> shuffled = new ArrayList<Verse>(versesFromFile);
+		Collections.shuffle(shuffled);
+		Bible bible = BibleFactory.createBible(new VerseList("KJV", "", shuffled), BibleFactory.BibleType.PACKED);
+		assertEquals(versesFromFile, bible.getAllVerses());
+	}
+
+	@Test(timeout = 5000)
+	public void testBinaryFileRoundTrip() throws IOException {
+		File file = File.createTempFile("kjv", ".bbin");
+		try {
+			assertTrue(BibleIO.writeBibleBinary(file, testBible));
+			Bible bible = BibleIO.readBinaryBible(file);
+			assertEquals(testBible.getVersion(), bible.getVersion());
+			assertEquals(testBible.getTitle(), bible.getTitle());
+			assertEquals(versesFromFile, bible.getAllVerses());
+			assertEquals(versesFromFile, BibleIO.readBible(file));
+			assertEquals(testBible.getVerse(BookOfBible.John, 3, 16), bible.getVerse(BookOfBible.John, 3, 16));
+			assertEquals(testBible.getReferencesContaining("son of god"), bible.getReferencesContaining("son of god"));
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test(timeout = 5000)
+	public void testWritingOverABinaryFileInUse() throws IOException {
+		File folder = Files.createTempDirectory("bbin").toFile();
+		File file = new File(folder, "kjv.bbin");
+		try {
+			assertTrue(BibleIO.writeBibleBinary(file, testBible));
+			Bible mapped = BibleIO.readBinaryBible(file);
+			assertTrue(BibleIO.writeBibleBinary(file, testBible));
+			// The Bible mapped from the old file still reads, and no temporary files are left behind.
+			assertEquals(versesFromFile, mapped.getAllVerses());
+			assertArrayEquals(new String[] { file.getName() }, folder.list());
+			assertEquals(versesFromFile, BibleIO.readBinaryBible(file).getAllVerses());
+		} finally {
+			for (File f : folder.listFiles()) {
+				f.delete();
+			}
+			folder.delete();
+		}
+	}
+
+	@Test(timeout = 5000)
+	public void testDamagedBinaryFileIsNotRead() throws IOException {
+		File file = File.createTempFile("kjv", ".bbin");
+		try {
+			assertTrue(BibleIO.writeBibleBinary(file, testBible));
+			byte[] bytes = Files.readAllBytes(file.toPath());
+			bytes[4]++;
+			assertNull(PackedBible.read(ByteBuffer.wrap(bytes)));
+			bytes[4]--;
+			assertNull(PackedBible.read(ByteBuffer.wrap(bytes, 0, bytes.length / 2).slice()));
+			assertEquals(versesFromFile, PackedBible.read(ByteBuffer.wrap(bytes)).getAllVerses());
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test(timeout = 5000)
+	public void testStreamingIntoSeveralSinks() {
+		PackedBible.Builder bibleBuilder = new PackedBible.Builder();
+		Concordance.Builder concordanceBuilder = new Concordance.Builder();
+		assertTrue(BibleIO.streamBible(new File("kjv.atv"), bibleBuilder, concordanceBuilder));
+		Bible bible = bibleBuilder.build();
+		assertEquals(versesFromFile.getVersion(), bible.getVersion());
+		assertEquals(versesFromFile.getDescription(), bible.getTitle());
+		assertEquals(versesFromFile, bible.getAllVerses());
+
+		Concordance streamed = concordanceBuilder.build();
+		Concordance built = new Concordance(testBible);
+		for (String word : new String[] { "god", "jesus", "the", "lamb", "notaword" }) {
+			assertEquals(built.getReferencesContaining(word), streamed.getReferencesContaining(word));
+		}
+		assertFalse(BibleIO.streamBible(new File("kjv.txt"), new PackedBible.Builder()));
+	}
+}
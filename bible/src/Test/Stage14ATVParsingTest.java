@@ -0,0 +1,113 @@
+package Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Test;
+
+import bibleReader.BibleIO;
+import bibleReader.model.BookOfBible;
+import bibleReader.model.Verse;
+import bibleReader.model.VerseList;
+
+/**
+ * Tests that the ATV reader accepts and rejects lines exactly as it did when it split each line with
+ * String.split("@") and split(":").
+ *
+ * @author Logan
+ */
+public class Stage14ATVParsingTest {
+	private File	file;
+
+	@After
+	public void tearDown() {
+		if (file != null) {
+			file.delete();
+		}
+		BibleIO.setParallelReading(Runtime.getRuntime().availableProcessors() > 1);
+	}
+
+	@Test(timeout = 1000)
+	public void testBooksChangingBetweenLines() throws IOException {
+		VerseList verses = read("KJV: Test", "Ge@1:1@One.", "Ge@1:2@Two.", "Ex@3:4@Three.", "Gen@5:6@Four.",
+				"Ge@7:8@Five.");
+		assertEquals(5, verses.size());
+		assertEquals(new Verse(BookOfBible.Genesis, 1, 2, "Two."), verses.get(1));
+		assertEquals(new Verse(BookOfBible.Exodus, 3, 4, "Three."), verses.get(2));
+		assertEquals(new Verse(BookOfBible.Genesis, 5, 6, "Four."), verses.get(3));
+		assertEquals(new Verse(BookOfBible.Genesis, 7, 8, "Five."), verses.get(4));
+	}
+
+	@Test(timeout = 1000)
+	public void testSeparatorsAtTheEndAreIgnored() throws IOException {
+		VerseList verses = read("KJV: Test", "Ge@1:1@One.@", "Ge@1:2:@Two.@@");
+		assertEquals(new Verse(BookOfBible.Genesis, 1, 1, "One."), verses.get(0));
+		assertEquals(new Verse(BookOfBible.Genesis, 1, 2, "Two."), verses.get(1));
+		assertNull(read("KJV: Test", "Ge@1:1@"));
+	}
+
+	@Test(timeout = 1000)
+	public void testVersesWithoutChapterAndVerseAreSkipped() throws IOException {
+		VerseList verses = read("KJV: Test", "Ge@1@One.", "Ge@@Two.", "Ge@1:2:3@Three.", "Ge@1:4@Four.");
+		assertEquals(1, verses.size());
+		assertEquals(new Verse(BookOfBible.Genesis, 1, 4, "Four."), verses.get(0));
+	}
+
+	@Test(timeout = 1000)
+	public void testCorruptLines() throws IOException {
+		assertNull(read("KJV: Test", "Ge@1:1@One.", "Ge@1:2@Two@Three."));
+		assertNull(read("KJV: Test", "Ge@1:1@One.", "Ge 1:2 Two."));
+		assertNull(read("KJV: Test", "Ge@1:1@One.", "Zz@1:2@Two."));
+		assertNull(read("KJV: Test", "Ge@1:1@One.", "Ge@1:x@Two."));
+		assertNull(read("KJV: Test", "Ge@1:1@One.", "Ge@:2@Two."));
+		assertNull(read("KJV: Test", "Ge@1:1@One.", "", "Ge@1:3@Three."));
+	}
+
+	@Test(timeout = 1000)
+	public void testNumbers() throws IOException {
+		VerseList verses = read("KJV: Test", "Ge@+1:007@One.", "Ge@123456789:2@Two.");
+		assertEquals(new Verse(BookOfBible.Genesis, 1, 7, "One."), verses.get(0));
+		assertEquals(new Verse(BookOfBible.Genesis, 123456789, 2, "Two."), verses.get(1));
+		assertNull(read("KJV: Test", "Ge@99999999999:1@One."));
+	}
+
+	@Test(timeout = 10000)
+	public void testReadingInParallel() throws IOException {
+		BibleIO.setParallelReading(false);
+		VerseList sequential = BibleIO.readBible(new File("kjv.atv"));
+		BibleIO.setParallelReading(true);
+		VerseList parallel = BibleIO.readBible(new File("kjv.atv"));
+		assertEquals(sequential.getVersion(), parallel.getVersion());
+		assertEquals(sequential.getDescription(), parallel.getDescription());
+		assertEquals(sequential, parallel);
+
+		// Windows line breaks, and a corrupt line near the end.
+		String text = new String(Files.readAllBytes(new File("kjv.atv").toPath()), "UTF-8");
+		file = File.createTempFile("test", ".atv");
+		Files.write(file.toPath(), text.replace("\n", "\r\n").getBytes("UTF-8"));
+		assertEquals(sequential, BibleIO.readBible(file));
+		int end = text.lastIndexOf('\n', text.length() - 2);
+		Files.write(file.toPath(), (text.substring(0, end) + "\nRe@22:x@Amen.\n" + text.substring(end + 1))
+				.getBytes("UTF-8"));
+		assertNull(BibleIO.readBible(file));
+	}
+
+	private VerseList read(String... lines) throws IOException {
+		if (file == null) {
+			file = File.createTempFile("test", ".atv");
+		}
+		PrintWriter writer = new PrintWriter(new FileWriter(file));
+		for (String line : lines) {
+			writer.println(line);
+		}
+		writer.close();
+		return BibleIO.readBible(file);
+	}
+}
@@ -0,0 +1,174 @@
+package Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import bibleReader.BibleIO;
+import bibleReader.model.ArrayListBible;
+import bibleReader.model.Bible;
+import bibleReader.model.BibleFactory;
+import bibleReader.model.BibleFactory.BibleType;
+import bibleReader.model.BibleReaderModel;
+import bibleReader.model.BibleSource;
+import bibleReader.model.BookOfBible;
+import bibleReader.model.Concordance;
+import bibleReader.model.LazyBible;
+import bibleReader.model.Reference;
+import bibleReader.model.VerseList;
+
+/**
+ * Tests for LazyBible and BibleIO.openBible, which let a model list versions that are only read when they are used.
+ *
+ * @author Logan
+ */
+public class Stage15LazyBibleTest {
+	private static VerseList	kjvVerses;
+
+	@BeforeClass
+	public static void readFile() {
+		kjvVerses = BibleIO.readBible(new File("kjv.atv"));
+	}
+
+	@Test(timeout = 1000)
+	public void testLoadedOnlyWhenNeeded() {
+		LazyBible bible = new LazyBible("KJV", "King James", new BibleSource() {
+			@Override
+			public Bible load() {
+				return new ArrayListBible(kjvVerses);
+			}
+		});
+		assertEquals("KJV", bible.getVersion());
+		assertEquals("King James", bible.getTitle());
+		assertFalse(bible.isLoaded());
+		assertEquals(0, bible.getNumberOfLoads());
+
+		assertEquals(kjvVerses.get(0), bible.getVerse(BookOfBible.Genesis, 1, 1));
+		assertEquals(kjvVerses.size(), bible.getNumberOfVerses());
+		assertTrue(bible.isLoaded());
+		assertEquals(1, bible.getNumberOfLoads());
+
+		bible.unload();
+		assertFalse(bible.isLoaded());
+		assertEquals(kjvVerses.get(0), bible.getVerse(BookOfBible.Genesis, 1, 1));
+		assertEquals(2, bible.getNumberOfLoads());
+	}
+
+	@Test(timeout = 1000)
+	public void testSourceThatCannotBeRead() {
+		LazyBible bible = new LazyBible("XYZ", "", new BibleSource() {
+			@Override
+			public Bible load() {
+				return null;
+			}
+		});
+		assertEquals(0, bible.getNumberOfVerses());
+		assertNull(bible.getVerse(BookOfBible.Genesis, 1, 1));
+		assertEquals("XYZ", bible.getVersion());
+	}
+
+	@Test(timeout = 5000)
+	public void testOpeningFiles() {
+		LazyBible kjv = BibleIO.openBible(new File("kjv.atv"));
+		assertEquals(kjvVerses.getVersion(), kjv.getVersion());
+		assertEquals(kjvVerses.getDescription(), kjv.getTitle());
+		assertFalse(kjv.isLoaded());
+		assertEquals(kjvVerses, kjv.getAllVerses());
+
+		VerseList asvVerses = BibleIO.readBible(new File("asv.xmv"));
+		LazyBible asv = BibleIO.openBible(new File("asv.xmv"));
+		assertEquals(asvVerses.getVersion(), asv.getVersion());
+		assertEquals(asvVerses.getDescription(), asv.getTitle());
+		assertEquals(asvVerses, asv.getAllVerses());
+
+		assertNull(BibleIO.openBible(new File("kjv.txt")));
+	}
+
+	@Test(timeout = 10000)
+	public void testConcordanceSavedNextToTheFile() throws IOException {
+		File folder = Files.createTempDirectory("bible").toFile();
+		File file = new File(folder, "kjv.atv");
+		File concordanceFile = BibleIO.getConcordanceFile(file);
+		try {
+			Files.copy(new File("kjv.atv").toPath(), file.toPath());
+			Concordance expected = BibleFactory.createConcordance(new ArrayListBible(kjvVerses));
+
+			// The first time it is built and saved.
+			LazyBible kjv = BibleIO.openBible(file);
+			assertEquals(expected.getReferencesContaining("lamb"), kjv.getConcordance().getReferencesContaining("lamb"));
+			assertTrue(concordanceFile.isFile());
+
+			// After that it is read from the saved file rather than built (and saved) again.
+			assertTrue(concordanceFile.setLastModified(1000000000000L));
+			kjv = BibleIO.openBible(file);
+			assertEquals(expected.getReferencesContaining("lamb"), kjv.getConcordance().getReferencesContaining("lamb"));
+			assertEquals(expected.getReferencesContainingPhrase("the lamb of god"), kjv.getConcordance()
+					.getReferencesContainingPhrase("the lamb of god"));
+			assertEquals(1000000000000L, concordanceFile.lastModified());
+		} finally {
+			concordanceFile.delete();
+			file.delete();
+			folder.delete();
+		}
+	}
+
+	@Test(timeout = 5000)
+	public void testOpeningAsEachType() throws IOException {
+		File file = File.createTempFile("big", ".atv");
+		BibleType defaultType = BibleFactory.getDefaultType();
+		try {
+			// A chapter too big to pack, which only PackedBible can't hold.
+			Files.write(file.toPath(), Arrays.asList("XYZ: Test", "Genesis@1:1@In the beginning", "Genesis@5000:1@Big"));
+			Reference big = new Reference(BookOfBible.Genesis, 5000, 1);
+			BibleType[] types = { BibleType.ARRAY_LIST, BibleType.TREE_MAP };
+			for (BibleType type : types) {
+				LazyBible bible = BibleIO.openBible(file, type);
+				assertEquals(type.toString(), 2, bible.getNumberOfVerses());
+				assertEquals(type.toString(), "Big", bible.getVerseText(big));
+			}
+
+			// openBible(File) uses the factory's default.
+			BibleFactory.setDefaultType(BibleType.ARRAY_LIST);
+			assertEquals("Big", BibleIO.openBible(file).getVerseText(big));
+		} finally {
+			BibleFactory.setDefaultType(defaultType);
+			file.delete();
+		}
+	}
+
+	@Test(timeout = 5000)
+	public void testModelWithVersionsNotYetRead() {
+		BibleReaderModel lazyModel = new BibleReaderModel();
+		LazyBible kjv = BibleIO.openBible(new File("kjv.atv"));
+		LazyBible esv = BibleIO.openBible(new File("esv.atv"));
+		lazyModel.addBible(kjv);
+		lazyModel.addBible(esv);
+
+		BibleReaderModel model = new BibleReaderModel();
+		model.addBible(new ArrayListBible(kjvVerses));
+		model.addBible(new ArrayListBible(BibleIO.readBible(new File("esv.atv"))));
+
+		assertArrayEquals(model.getVersions(), lazyModel.getVersions());
+		assertFalse(kjv.isLoaded());
+		assertFalse(esv.isLoaded());
+
+		assertEquals(model.getReferencesContainingWord("lamb"), lazyModel.getReferencesContainingWord("lamb"));
+		assertEquals(model.getReferencesForPassage("John 3:16-18"), lazyModel.getReferencesForPassage("John 3:16-18"));
+
+		// Dropping a version just means it is read again.
+		kjv.unload();
+		assertEquals(model.getReferencesContainingAllWords("the lamb"),
+				lazyModel.getReferencesContainingAllWords("the lamb"));
+		assertEquals(2, kjv.getNumberOfLoads());
+	}
+}
@@ -0,0 +1,220 @@
+package Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import bibleReader.BibleIO;
+import bibleReader.model.ArrayListBible;
+import bibleReader.model.Bible;
+import bibleReader.model.BibleFactory;
+import bibleReader.model.BibleReaderModel;
+import bibleReader.model.BibleSource;
+import bibleReader.model.Concordance;
+import bibleReader.model.LazyBible;
+import bibleReader.model.ReferenceList;
+import bibleReader.model.VerseList;
+
+/**
+ * Tests that a model builds its concordances in the background, and finds the same verses by reading them until a
+ * concordance is ready.
+ *
+ * @author Logan
+ */
+public class Stage16AsyncConcordanceTest {
+	private static final String[]	SEARCHES	= { "lord", "the lord", "\"the lord\" god", "\"lord\"", "Lord's",
+			"\"the lord god\"", "\"lord, god\"", "god lord", "", "zzzz" };
+
+	private static VerseList		kjvVerses;
+	private static VerseList		esvVerses;
+
+	@BeforeClass
+	public static void readFiles() {
+		kjvVerses = BibleIO.readBible(new File("kjv.atv"));
+		esvVerses = BibleIO.readBible(new File("esv.atv"));
+	}
+
+	@Test(timeout = 20000)
+	public void testSearchingBeforeAndAfterTheConcordanceIsReady() throws InterruptedException {
+		BibleReaderModel model = new BibleReaderModel();
+		model.addBible(new ArrayListBible(kjvVerses));
+		model.addBible(new ArrayListBible(esvVerses));
+		// Probably not ready yet, so these read the verses.
+
+		ReferenceList[] words = new ReferenceList[SEARCHES.length];
+		ReferenceList[] allWords = new ReferenceList[SEARCHES.length];
+		ReferenceList[] phrases = new ReferenceList[SEARCHES.length];
+		for (int i = 0; i < SEARCHES.length; i++) {
+			words[i] = model.getReferencesContainingWord(SEARCHES[i]);
+			allWords[i] = model.getReferencesContainingAllWords(SEARCHES[i]);
+			phrases[i] = model.getReferencesContainingAllWordsAndPhrases(SEARCHES[i]);
+		}
+
+		while (!model.isConcordanceReady(kjvVerses.getVersion()) || !model.isConcordanceReady(esvVerses.getVersion())) {
+			Thread.sleep(10);
+		}
+		for (int i = 0; i < SEARCHES.length; i++) {
+			assertEquals(SEARCHES[i], words[i], model.getReferencesContainingWord(SEARCHES[i]));
+			assertEquals(SEARCHES[i], allWords[i], model.getReferencesContainingAllWords(SEARCHES[i]));
+			assertEquals(SEARCHES[i], phrases[i], model.getReferencesContainingAllWordsAndPhrases(SEARCHES[i]));
+		}
+		assertTrue(words[0].size() > 0);
+		assertTrue(phrases[2].size() > 0);
+	}
+
+	@Test(timeout = 5000)
+	public void testAddingDoesNotWaitForTheConcordance() throws InterruptedException {
+		final CountDownLatch building = new CountDownLatch(1);
+		final CountDownLatch finishBuilding = new CountDownLatch(1);
+		final AtomicBoolean first = new AtomicBoolean(true);
+		// The first to read its verses is whatever builds its concordance, which then waits until the test is done.
+		ArrayListBible stuck = new ArrayListBible(kjvVerses) {
+			@Override
+			public VerseList getAllVerses() {
+				if (first.getAndSet(false)) {
+					building.countDown();
+					try {
+						finishBuilding.await();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+				return super.getAllVerses();
+			}
+		};
+		BibleReaderModel model = new BibleReaderModel();
+		try {
+			model.addBible(stuck);
+			building.await();
+			// The concordance can't be finished, so neither adding nor searching can wait for it.
+			model.addBible(new ArrayListBible(kjvVerses));
+			assertFalse(model.isConcordanceReady(kjvVerses.getVersion()));
+			// And searching finds the same verses without it.
+			BibleReaderModel oneVersion = new BibleReaderModel();
+			oneVersion.addBible(new ArrayListBible(kjvVerses));
+			assertEquals(oneVersion.getReferencesContainingWord("lord"), model.getReferencesContainingWord("lord"));
+		} finally {
+			finishBuilding.countDown();
+		}
+	}
+
+	@Test(timeout = 5000)
+	public void testAddingDoesNotWaitForAVersionBeingRead() throws InterruptedException {
+		final CountDownLatch reading = new CountDownLatch(1);
+		final CountDownLatch finishReading = new CountDownLatch(1);
+		LazyBible slow = new LazyBible("SLOW", "Slow", new BibleSource() {
+			@Override
+			public Bible load() {
+				reading.countDown();
+				try {
+					finishReading.await();
+				} catch (InterruptedException e) {
+					return null;
+				}
+				return new ArrayListBible(kjvVerses);
+			}
+		});
+		final BibleReaderModel model = new BibleReaderModel();
+		model.addBible(slow);
+		// The search asks for the concordance, which starts reading the version in the background.
+		Thread searcher = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				model.getReferencesContainingWord("lord");
+			}
+		});
+		searcher.start();
+		reading.await();
+		try {
+			// Neither waits for the version to be read.
+			model.addBible(new ArrayListBible(esvVerses));
+			assertFalse(model.isConcordanceReady("SLOW"));
+			assertEquals(2, model.getNumberOfVersions());
+		} finally {
+			finishReading.countDown();
+		}
+		searcher.join();
+		assertEquals(1, slow.getNumberOfLoads());
+	}
+
+	@Test(timeout = 5000)
+	public void testFailedConcordanceIsNotMadeOnEverySearch() throws InterruptedException {
+		final AtomicInteger attempts = new AtomicInteger();
+		LazyBible failing = new LazyBible("FAIL", "Failing", new BibleSource() {
+			@Override
+			public Bible load() {
+				return new ArrayListBible(kjvVerses);
+			}
+
+			@Override
+			public Concordance loadConcordance(Bible bible) {
+				attempts.incrementAndGet();
+				throw new IllegalStateException("Can't make it");
+			}
+		});
+		// Concordances are made one at a time, in the order they are asked for, so once this one has been made again
+		// everything asked for before it is done.
+		final Semaphore made = new Semaphore(0);
+		LazyBible marker = new LazyBible("MARK", "Marker", new BibleSource() {
+			@Override
+			public Bible load() {
+				return new ArrayListBible(new VerseList("MARK", "Marker"));
+			}
+
+			@Override
+			public Concordance loadConcordance(Bible bible) {
+				Concordance concordance = BibleFactory.createConcordance(bible);
+				made.release();
+				return concordance;
+			}
+		});
+		BibleReaderModel model = new BibleReaderModel();
+		model.addBible(failing);
+		model.addBible(marker);
+
+		String[] words = { "lord", "god", "the", "and", "israel" };
+		for (int i = 0; i < 3; i++) {
+			marker.unload();
+			model.getReferencesContainingWord(words[i]);
+			made.acquire();
+		}
+		assertEquals(1, attempts.get());
+
+		// Once it has been read again it is worth another try.
+		failing.unload();
+		for (int i = 3; i < words.length; i++) {
+			marker.unload();
+			model.getReferencesContainingWord(words[i]);
+			made.acquire();
+		}
+		assertEquals(2, attempts.get());
+		assertFalse(model.isConcordanceReady("FAIL"));
+	}
+
+	@Test(timeout = 5000)
+	public void testAskingWhetherReadyDoesNotReadTheVersion() throws InterruptedException {
+		LazyBible kjv = new LazyBible("KJV", "King James", new BibleSource() {
+			@Override
+			public Bible load() {
+				return new ArrayListBible(kjvVerses);
+			}
+		});
+		BibleReaderModel model = new BibleReaderModel();
+		model.addBible(kjv);
+		for (int i = 0; i < 10; i++) {
+			assertFalse(model.isConcordanceReady("KJV"));
+			Thread.sleep(10);
+		}
+		assertFalse(kjv.isLoaded());
+		assertEquals(0, kjv.getNumberOfLoads());
+	}
+}
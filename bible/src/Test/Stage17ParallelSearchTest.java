@@ -0,0 +1,90 @@
+package Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import bibleReader.BibleIO;
+import bibleReader.model.BibleFactory;
+import bibleReader.model.BibleReaderModel;
+import bibleReader.model.BookOfBible;
+import bibleReader.model.Reference;
+import bibleReader.model.ReferenceList;
+
+/**
+ * Tests that searching all of the versions of a model at once finds the same verses, in the same order, as searching
+ * one version after another.
+ *
+ * @author Logan
+ */
+public class Stage17ParallelSearchTest {
+	private static BibleReaderModel	model;
+
+	@BeforeClass
+	public static void readFiles() {
+		model = new BibleReaderModel();
+		model.addBible(BibleFactory.createBible(BibleIO.readBible(new File("kjv.atv"))));
+		model.addBible(BibleFactory.createBible(BibleIO.readBible(new File("asv.xmv"))));
+		model.addBible(BibleFactory.createBible(BibleIO.readBible(new File("esv.atv"))));
+	}
+
+	@After
+	public void tearDown() {
+		BibleReaderModel.setParallelSearching(Runtime.getRuntime().availableProcessors() > 1);
+	}
+
+	@Test(timeout = 20000)
+	public void testSameResultsAsSequentialSearching() {
+		String[] passages = { "Genesis", "Ruth 1", "Psalms 1-3", "John 3:16", "John 3:16-18", "Ephesians 3:4-5:6",
+				"Jude 2", "Mal 4:2-6" };
+		String[] searches = { "lord", "god", "the lord", "\"the lord\" god", "melchizedek", "zzzz", "" };
+
+		BibleReaderModel.setParallelSearching(false);
+		ReferenceList[] expected = new ReferenceList[passages.length + 3 * searches.length + 1];
+		int n = 0;
+		for (String passage : passages) {
+			expected[n++] = model.getReferencesForPassage(passage);
+		}
+		for (String search : searches) {
+			expected[n++] = model.getReferencesContaining(search);
+			expected[n++] = model.getReferencesContainingAllWords(search);
+			expected[n++] = model.getReferencesContainingAllWordsAndPhrases(search);
+		}
+		expected[n++] = model.getPassageReferences(new Reference(BookOfBible.Genesis, 1, 1), new Reference(
+				BookOfBible.Exodus, 2, 3));
+
+		BibleReaderModel.setParallelSearching(true);
+		// Search again rather than finding the results from before.
+		model.getQueryCache().clear();
+		n = 0;
+		for (String passage : passages) {
+			assertEquals(passage, expected[n++], model.getReferencesForPassage(passage));
+		}
+		for (String search : searches) {
+			assertEquals(search, expected[n++], model.getReferencesContaining(search));
+			assertEquals(search, expected[n++], model.getReferencesContainingAllWords(search));
+			assertEquals(search, expected[n++], model.getReferencesContainingAllWordsAndPhrases(search));
+		}
+		assertEquals(expected[n++], model.getPassageReferences(new Reference(BookOfBible.Genesis, 1, 1), new Reference(
+				BookOfBible.Exodus, 2, 3)));
+		assertTrue(expected[0].size() > 0);
+	}
+
+	@Test(timeout = 20000)
+	public void testResultsAreInOrderWithoutDuplicates() {
+		BibleReaderModel.setParallelSearching(true);
+		ReferenceList results = model.getBookReferences(BookOfBible.Genesis);
+		for (int i = 1; i < results.size(); i++) {
+			assertTrue(results.get(i - 1).compareTo(results.get(i)) < 0);
+		}
+		results = model.getReferencesContainingWord("lord");
+		for (int i = 1; i < results.size(); i++) {
+			assertTrue(results.get(i - 1).compareTo(results.get(i)) < 0);
+		}
+	}
+}
@@ -0,0 +1,77 @@
+package Test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+import bibleReader.model.BookOfBible;
+import bibleReader.model.Reference;
+import bibleReader.model.ReferenceList;
+
+/**
+ * Tests ReferenceList.union, which combines the results from several versions.
+ *
+ * @author Logan
+ */
+public class Stage18ReferenceUnionTest {
+	private static final Reference	GEN_1_1	= new Reference(BookOfBible.Genesis, 1, 1);
+	private static final Reference	GEN_1_2	= new Reference(BookOfBible.Genesis, 1, 2);
+	private static final Reference	GEN_2_1	= new Reference(BookOfBible.Genesis, 2, 1);
+	private static final Reference	EXO_1_1	= new Reference(BookOfBible.Exodus, 1, 1);
+	private static final Reference	REV_22_21	= new Reference(BookOfBible.Revelation, 22, 21);
+
+	@Test
+	public void testNoLists() {
+		assertEquals(0, ReferenceList.union().size());
+		assertEquals(0, ReferenceList.union(new ReferenceList(), new ReferenceList()).size());
+	}
+
+	@Test
+	public void testOverlappingLists() {
+		ReferenceList a = list(GEN_1_1, GEN_2_1, REV_22_21);
+		ReferenceList b = list(GEN_1_2, GEN_2_1);
+		ReferenceList c = list(GEN_1_1, EXO_1_1, REV_22_21);
+		assertEquals(list(GEN_1_1, GEN_1_2, GEN_2_1, EXO_1_1, REV_22_21), ReferenceList.union(a, b, c));
+		assertEquals(list(GEN_1_1, GEN_2_1, REV_22_21), ReferenceList.union(a));
+
+		// The lists given aren't changed.
+		assertEquals(list(GEN_1_1, GEN_2_1, REV_22_21), a);
+	}
+
+	@Test
+	public void testListsOutOfOrderOrWithDuplicates() {
+		ReferenceList a = list(REV_22_21, GEN_1_1, GEN_1_1);
+		ReferenceList b = list(GEN_2_1, GEN_2_1, EXO_1_1);
+		assertEquals(list(GEN_1_1, GEN_2_1, EXO_1_1, REV_22_21), ReferenceList.union(a, b));
+		assertEquals(list(REV_22_21, GEN_1_1, GEN_1_1), a);
+	}
+
+	@Test(timeout = 5000)
+	public void testSameAsTreeSet() {
+		Random random = new Random(18);
+		BookOfBible[] books = BookOfBible.values();
+		for (int k = 1; k <= 7; k++) {
+			ReferenceList[] lists = new ReferenceList[k];
+			TreeSet<Reference> expected = new TreeSet<Reference>();
+			for (int i = 0; i < k; i++) {
+				TreeSet<Reference> set = new TreeSet<Reference>();
+				int size = random.nextInt(2000);
+				for (int j = 0; j < size; j++) {
+					set.add(new Reference(books[random.nextInt(66)], 1 + random.nextInt(50), 1 + random.nextInt(40)));
+				}
+				lists[i] = new ReferenceList(set);
+				expected.addAll(set);
+			}
+			assertEquals(new ArrayList<Reference>(expected), ReferenceList.union(lists));
+		}
+	}
+
+	private static ReferenceList list(Reference... refs) {
+		return new ReferenceList(Arrays.asList(refs));
+	}
+}
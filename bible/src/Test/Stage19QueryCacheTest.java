@@ -0,0 +1,142 @@
+package Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import bibleReader.BibleIO;
+import bibleReader.model.Bible;
+import bibleReader.model.BibleFactory;
+import bibleReader.model.BibleReaderModel;
+import bibleReader.model.QueryCache;
+import bibleReader.model.ReferenceList;
+
+/**
+ * Tests that a model remembers the results of recent searches and passages, forgets them when a version is added,
+ * and keeps them to the size it is given.
+ *
+ * @author Logan
+ */
+public class Stage19QueryCacheTest {
+	private static Bible	kjv;
+	private static Bible	esv;
+
+	@BeforeClass
+	public static void readFiles() {
+		kjv = BibleFactory.createBible(BibleIO.readBible(new File("kjv.atv")));
+		esv = BibleFactory.createBible(BibleIO.readBible(new File("esv.atv")));
+	}
+
+	@Test(timeout = 10000)
+	public void testRepeatedQueriesAreHits() {
+		BibleReaderModel model = new BibleReaderModel();
+		model.addBible(kjv);
+		QueryCache cache = model.getQueryCache();
+
+		ReferenceList lord = model.getReferencesContaining("lord");
+		ReferenceList passage = model.getReferencesForPassage("Ruth 1");
+		assertEquals(0, cache.getHits());
+		assertEquals(2, cache.getMisses());
+
+		assertEquals(lord, model.getReferencesContaining("LORD"));
+		assertEquals(passage, model.getReferencesForPassage("Ruth 1"));
+		assertEquals(2, cache.getHits());
+		assertEquals(2, cache.getMisses());
+		assertEquals(0.5, cache.getHitRate(), 1e-9);
+
+		// A different kind of query for the same text isn't the same query.
+		model.getReferencesContainingWord("lord");
+		assertEquals(3, cache.getMisses());
+		assertEquals(3, cache.size());
+	}
+
+	@Test(timeout = 10000)
+	public void testPassagesAreKeptAsGiven() {
+		BibleReaderModel model = new BibleReaderModel();
+		model.addBible(kjv);
+		QueryCache cache = model.getQueryCache();
+
+		// White space can change what a reference means, so each of these is looked up rather than taken from the
+		// cache, and gets the same answer as it does with an empty cache.
+		String[] references = { "Ruth 1", " Ruth 1 ", "Ruth 1\n", "Ruth\n1", "Ruth 1:1-3", "Ruth 1:1-3\r" };
+		for (int i = 0; i < references.length; i++) {
+			ReferenceList found = model.getReferencesForPassage(references[i]);
+			assertEquals(0, cache.getHits());
+			assertEquals(i + 1, cache.getMisses());
+			BibleReaderModel fresh = new BibleReaderModel();
+			fresh.addBible(kjv);
+			assertEquals(references[i], fresh.getReferencesForPassage(references[i]), found);
+		}
+		// Asking again in exactly the same way is a hit.
+		model.getReferencesForPassage("Ruth 1\n");
+		assertEquals(1, cache.getHits());
+	}
+
+	@Test(timeout = 10000)
+	public void testChangingResultsDoesNotChangeTheCache() {
+		BibleReaderModel model = new BibleReaderModel();
+		model.addBible(kjv);
+		ReferenceList results = model.getReferencesContainingAllWords("the lord");
+		int size = results.size();
+		assertTrue(size > 0);
+		results.clear();
+		results = model.getReferencesContainingAllWords("The   LORD");
+		assertEquals(size, results.size());
+		results.remove(0);
+		assertEquals(size, model.getReferencesContainingAllWords("the lord").size());
+	}
+
+	@Test(timeout = 10000)
+	public void testAddingAVersionClearsTheCache() {
+		BibleReaderModel model = new BibleReaderModel();
+		model.addBible(kjv);
+		ReferenceList before = model.getReferencesForPassage("Jude 2");
+		model.addBible(esv);
+		assertEquals(0, model.getQueryCache().size());
+
+		BibleReaderModel both = new BibleReaderModel();
+		both.addBible(kjv);
+		both.addBible(esv);
+		assertEquals(both.getReferencesForPassage("Jude 2"), model.getReferencesForPassage("Jude 2"));
+		assertEquals(both.getReferencesContaining("lord"), model.getReferencesContaining("lord"));
+		assertTrue(before.size() <= both.getReferencesForPassage("Jude 2").size());
+	}
+
+	@Test(timeout = 10000)
+	public void testLeastRecentlyUsedAreEvicted() {
+		BibleReaderModel model = new BibleReaderModel();
+		model.addBible(kjv);
+		QueryCache cache = model.getQueryCache();
+
+		// Just room for two chapters.
+		model.getReferencesForPassage("Ruth 1");
+		model.getReferencesForPassage("Ruth 2");
+		long size = cache.getSizeInBytes();
+		cache.setMaximumSizeInBytes(size);
+		assertEquals(2, cache.size());
+		assertEquals(0, cache.getEvictions());
+
+		model.getReferencesForPassage("Ruth 1");
+		assertEquals(1, cache.getHits());
+		// Much bigger than the cache, so it isn't kept at all.
+		model.getReferencesForPassage("Genesis");
+		assertEquals(0, cache.getEvictions());
+		assertEquals(2, cache.size());
+
+		// Ruth 1 was used more recently than Ruth 2, so Ruth 2 goes first.
+		model.getReferencesForPassage("Ruth 3");
+		assertTrue(cache.getEvictions() > 0);
+		assertTrue(cache.getSizeInBytes() <= size);
+		long misses = cache.getMisses();
+		model.getReferencesForPassage("Ruth 2");
+		assertEquals(misses + 1, cache.getMisses());
+
+		cache.setMaximumSizeInBytes(0);
+		assertEquals(0, cache.size());
+		assertEquals(0, cache.getSizeInBytes());
+	}
+}
@@ -0,0 +1,159 @@
+package Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Random;
+import java.util.regex.Matcher;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import bibleReader.BibleIO;
+import bibleReader.model.BibleFactory;
+import bibleReader.model.BibleReaderModel;
+import bibleReader.model.BookOfBible;
+import bibleReader.model.ReferenceList;
+
+/**
+ * Tests that getReferencesForPassage understands exactly the references it did when it matched them against
+ * bookPattern and the chapter and verse patterns, as well as several passages at once, and that BookOfBible finds the
+ * same books without making Strings.
+ *
+ * @author Logan
+ */
+public class Stage20PassageParserTest {
+	private static BibleReaderModel	model;
+
+	@BeforeClass
+	public static void readFile() {
+		model = new BibleReaderModel();
+		model.addBible(BibleFactory.createBible(BibleIO.readBible(new File("kjv.atv"))));
+	}
+
+	@Test(timeout = 10000)
+	public void testReferences() {
+		String[] references = { "John 3:16", "John 3:16-18", "John 3-4", "John 3", "John", "1 John 2:3", "1John2",
+				"I Kings 3", "Isaiah 53:1-54:2", "Ps 1-3:4", "Song of Solomon 2:3", "  John 3 : 16 - 18  ", "Jude 2",
+				"Mal 4:2-6", "Ruth 1:3-2:4", "ruth 1", "RUTH 1:1", "2 kings 3:1-4", "Ephesians 3:4-5:6", "John 3:16:1",
+				"John 3-4-5", "John:3", "3 John", "II Kings 3", "III John", "12:3", "", "   ", "Zz 1",
+				"John 99999999999" };
+		for (String reference : references) {
+			assertEquals(reference, oldReferencesForPassage(reference), newReferencesForPassage(reference));
+		}
+	}
+
+	@Test(timeout = 20000)
+	public void testRandomReferences() {
+		String[] pieces = { "John", "ruth", "1", "2", "3", "I", "II", "Kings", "Song of Solomon", "Gen", "Isaiah", "_",
+				"x", "Jn", " ", "\t", "\n", "\u2028", ":", "-", "0", "16", "007", "99999999999", "." };
+		Random random = new Random(20);
+		for (int i = 0; i < 20000; i++) {
+			StringBuilder reference = new StringBuilder();
+			for (int j = random.nextInt(7); j >= 0; j--) {
+				reference.append(pieces[random.nextInt(pieces.length)]);
+			}
+			String text = reference.toString();
+			assertEquals(text, oldReferencesForPassage(text), newReferencesForPassage(text));
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void testSeveralPassages() {
+		ReferenceList romans = model.getReferencesForPassage("Rom 3:23; 6:23; 5:8; 10:9-10");
+		assertEquals(union("Rom 3:23", "Rom 6:23", "Rom 5:8", "Rom 10:9-10"), romans);
+		assertTrue(romans.size() > 1);
+		// A bare number is a verse after a verse, and a chapter otherwise.
+		assertEquals(union("John 3:16", "John 3:18-20", "John 4:1"), model.getReferencesForPassage("John 3:16, 18-20, 4:1"));
+		assertEquals(union("John 3", "John 5-6"), model.getReferencesForPassage("John 3; 5-6"));
+		assertEquals(union("Ruth", "Ruth 2"), model.getReferencesForPassage("Ruth; 2"));
+		assertEquals(union("John 3:16", "John 3:20-4:2"), model.getReferencesForPassage("John 3:16, 20-4:2"));
+		assertEquals(union("John 3:16-4:2", "John 4:5"), model.getReferencesForPassage("John 3:16-4:2, 5"));
+		// A new book can be given at any point.
+		assertEquals(union("John 3:16", "1 John 2:3", "1 John 2:5", "Jude 2"),
+				model.getReferencesForPassage("John 3:16; 1 John 2:3, 5; Jude 2"));
+		// Overlapping passages are only listed once, and empty ones are ignored.
+		assertEquals(model.getReferencesForPassage("Ruth 1"), model.getReferencesForPassage("Ruth 1; 1:1-5; 1:3;;"));
+
+		assertEquals(0, model.getReferencesForPassage("John 3:16; x").size());
+		assertEquals(0, model.getReferencesForPassage("Zz 3:16; 4").size());
+		assertEquals(0, model.getReferencesForPassage("3:16; John 3").size());
+		assertEquals(0, model.getReferencesForPassage(";").size());
+		// Without a space after it, a separator is just part of an invalid reference.
+		assertEquals(0, model.getReferencesForPassage("John 3;16").size());
+		assertEquals(0, model.getReferencesForPassage("Ephesians 5:2,4").size());
+	}
+
+	@Test
+	public void testBookAbbreviations() {
+		assertEquals(BookOfBible.John1, BookOfBible.getBookOfBible("1 John"));
+		assertEquals(BookOfBible.John1, BookOfBible.getBookOfBible(" 1\tjOhN "));
+		assertEquals(BookOfBible.SongOfSolomon, BookOfBible.getBookOfBible("Song of Solomon"));
+		assertEquals(BookOfBible.Genesis, BookOfBible.getBookOfBible("x Gen y", 1, 6));
+		assertEquals(null, BookOfBible.getBookOfBible("Genx", 0, 4));
+		assertEquals(null, BookOfBible.getBookOfBible("Genesis!"));
+		assertEquals(null, BookOfBible.getBookOfBible(""));
+		for (BookOfBible book : BookOfBible.values()) {
+			if (book != BookOfBible.Dummy) {
+				assertEquals(book, BookOfBible.getBookOfBible(book.toString()));
+				assertEquals(book, BookOfBible.getBookOfBible(book.toString().toUpperCase()));
+			}
+		}
+	}
+
+	private static ReferenceList union(String... passages) {
+		ReferenceList[] lists = new ReferenceList[passages.length];
+		for (int i = 0; i < passages.length; i++) {
+			lists[i] = model.getReferencesForPassage(passages[i]);
+		}
+		return ReferenceList.union(lists);
+	}
+
+	/**
+	 * getReferencesForPassage without the cache, or its exception.
+	 */
+	private static Object newReferencesForPassage(String reference) {
+		model.getQueryCache().clear();
+		try {
+			return model.getReferencesForPassage(reference);
+		} catch (RuntimeException e) {
+			return e.getClass();
+		}
+	}
+
+	/**
+	 * What getReferencesForPassage used to do, or its exception.
+	 */
+	private static Object oldReferencesForPassage(String reference) {
+		try {
+			Matcher m = BibleReaderModel.bookPattern.matcher(reference);
+			if (!m.matches()) {
+				return new ReferenceList();
+			}
+			BookOfBible book = BookOfBible.getBookOfBible(m.group(1));
+			String theRest = m.group(2);
+			if (theRest.length() == 0) {
+				return model.getBookReferences(book);
+			} else if ((m = BibleReaderModel.cvcvPattern.matcher(theRest)).matches()) {
+				return model.getPassageReferences(book, Integer.parseInt(m.group(1)), Integer.parseInt(m.group(2)),
+						Integer.parseInt(m.group(3)), Integer.parseInt(m.group(4)));
+			} else if ((m = BibleReaderModel.ccPattern.matcher(theRest)).matches()) {
+				return model.getChapterReferences(book, Integer.parseInt(m.group(1)), Integer.parseInt(m.group(2)));
+			} else if ((m = BibleReaderModel.cPattern.matcher(theRest)).matches()) {
+				return model.getChapterReferences(book, Integer.parseInt(m.group(1)));
+			} else if ((m = BibleReaderModel.cvvPattern.matcher(theRest)).matches()) {
+				return model.getPassageReferences(book, Integer.parseInt(m.group(1)), Integer.parseInt(m.group(2)),
+						Integer.parseInt(m.group(3)));
+			} else if ((m = BibleReaderModel.vPattern.matcher(theRest)).matches()) {
+				return model.getVerseReferences(book, Integer.parseInt(m.group(1)), Integer.parseInt(m.group(2)));
+			} else if ((m = BibleReaderModel.ccvPattern.matcher(theRest)).matches()) {
+				return model.getPassageReferences(book, Integer.parseInt(m.group(1)), 1, Integer.parseInt(m.group(2)),
+						Integer.parseInt(m.group(3)));
+			}
+			return new ReferenceList();
+		} catch (RuntimeException e) {
+			return e.getClass();
+		}
+	}
+}
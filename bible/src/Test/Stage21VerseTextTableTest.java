@@ -0,0 +1,121 @@
+package Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.util.Collections;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import bibleReader.BibleIO;
+import bibleReader.model.ArrayListBible;
+import bibleReader.model.Bible;
+import bibleReader.model.BibleReaderModel;
+import bibleReader.model.BookOfBible;
+import bibleReader.model.LazyBible;
+import bibleReader.model.PackedBible;
+import bibleReader.model.Reference;
+import bibleReader.model.ReferenceList;
+import bibleReader.model.TreeMapBible;
+import bibleReader.model.VerseList;
+
+/**
+ * Tests for Bible.getVerseTexts and MultiBibleModel.getTexts, which look up the text of many references at once.
+ *
+ * @author Logan
+ */
+public class Stage21VerseTextTableTest {
+	private static VerseList	kjvVerses;
+	private static Bible[]		bibles;
+
+	@BeforeClass
+	public static void readFile() {
+		kjvVerses = BibleIO.readBible(new File("kjv.atv"));
+		bibles = new Bible[] { new ArrayListBible(kjvVerses), new TreeMapBible(kjvVerses), new PackedBible(kjvVerses),
+				BibleIO.openBible(new File("kjv.atv")) };
+	}
+
+	/**
+	 * @return what getVerseTexts should return, found one reference at a time.
+	 */
+	private static String[] oneAtATime(Bible bible, ReferenceList references) {
+		String[] texts = new String[references.size()];
+		for (int i = 0; i < texts.length; i++) {
+			Reference ref = references.get(i);
+			if (ref != null && ref.getBookOfBible() != null && ref.getBookOfBible() != BookOfBible.Dummy) {
+				texts[i] = bible.getVerseText(ref);
+			}
+		}
+		return texts;
+	}
+
+	private static void assertSameTexts(ReferenceList references) {
+		for (Bible bible : bibles) {
+			assertArrayEquals(bible.getClass().getSimpleName(), oneAtATime(bible, references),
+					bible.getVerseTexts(references));
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void testPassagesAndSearches() {
+		Bible kjv = bibles[0];
+		assertSameTexts(kjv.getReferencesForChapters(BookOfBible.Genesis, 1, 3));
+		assertSameTexts(kjv.getReferencesForPassage(BookOfBible.John, 3, 16, 18));
+		assertSameTexts(kjv.getReferencesContaining("lord"));
+		assertSameTexts(kjv.getReferencesForBook(BookOfBible.Revelation));
+		assertSameTexts(new ReferenceList());
+	}
+
+	@Test(timeout = 10000)
+	public void testReferencesNotInTheBible() {
+		ReferenceList references = new ReferenceList();
+		references.add(new Reference(BookOfBible.Genesis, 0, 5));
+		references.add(new Reference(BookOfBible.Genesis, 1, 1));
+		references.add(new Reference(BookOfBible.Genesis, 1, 99));
+		references.add(new Reference(BookOfBible.Genesis, 2, 1));
+		references.add(new Reference(BookOfBible.Genesis, 2, 1));
+		references.add(new Reference(null, 3, 16));
+		references.add(new Reference(BookOfBible.John, 3, 16));
+		references.add(new Reference(BookOfBible.John, 3, 5000));
+		references.add(new Reference(BookOfBible.Revelation, 22, 21));
+		references.add(new Reference(BookOfBible.Dummy, 1, 1));
+		assertSameTexts(references);
+		String[] texts = bibles[2].getVerseTexts(references);
+		assertNull(texts[0]);
+		assertEquals(kjvVerses.get(0).getText(), texts[1]);
+		assertEquals(texts[3], texts[4]);
+		assertNull(texts[9]);
+	}
+
+	@Test(timeout = 10000)
+	public void testReferencesOutOfOrder() {
+		ReferenceList references = bibles[0].getReferencesForChapters(BookOfBible.Ruth, 1, 2);
+		Collections.reverse(references);
+		assertSameTexts(references);
+		Collections.shuffle(references);
+		assertSameTexts(references);
+	}
+
+	@Test(timeout = 10000)
+	public void testModelTable() {
+		BibleReaderModel model = new BibleReaderModel();
+		model.addBible(new ArrayListBible(kjvVerses));
+		model.addBible(new PackedBible(BibleIO.readBible(new File("asv.xmv"))));
+
+		ReferenceList references = model.getReferencesForPassage("Psalms 23");
+		String[] versions = { "ASV", "XYZ", "KJV" };
+		String[][] texts = model.getTexts(versions, references);
+		assertEquals(versions.length, texts.length);
+		for (int v = 0; v < versions.length; v++) {
+			assertEquals(references.size(), texts[v].length);
+			for (int i = 0; i < references.size(); i++) {
+				Bible bible = model.getBible(versions[v]);
+				String expected = bible == null ? null : bible.getVerseText(references.get(i));
+				assertEquals(expected, texts[v][i]);
+			}
+		}
+	}
+}
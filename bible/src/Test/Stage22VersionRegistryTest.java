@@ -0,0 +1,119 @@
+package Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import bibleReader.model.ArrayListBible;
+import bibleReader.model.Bible;
+import bibleReader.model.BibleReaderModel;
+import bibleReader.model.BookOfBible;
+import bibleReader.model.Reference;
+import bibleReader.model.Verse;
+import bibleReader.model.VerseList;
+
+/**
+ * Tests for how BibleReaderModel keeps track of its versions: getVersions, getNumberOfVersions and getBible.
+ *
+ * @author Logan
+ */
+public class Stage22VersionRegistryTest {
+	private BibleReaderModel	model;
+
+	@Before
+	public void setUp() {
+		model = new BibleReaderModel();
+	}
+
+	private static Bible bible(String version, String text) {
+		VerseList verses = new VerseList(version, version + " Bible");
+		verses.add(new Verse(new Reference(BookOfBible.Genesis, 1, 1), text));
+		return new ArrayListBible(verses);
+	}
+
+	@Test(timeout = 1000)
+	public void testEmptyModel() {
+		assertEquals(0, model.getNumberOfVersions());
+		assertEquals(0, model.getVersions().length);
+		assertNull(model.getBible("KJV"));
+		assertNull(model.getBible(null));
+	}
+
+	@Test(timeout = 1000)
+	public void testVersionsInOrder() {
+		Bible kjv = bible("KJV", "In the beginning");
+		Bible asv = bible("ASV", "In the beginning");
+		Bible esv = bible("ESV", "In the beginning");
+		model.addBible(kjv);
+		model.addBible(asv);
+		model.addBible(null);
+		model.addBible(esv);
+
+		assertEquals(3, model.getNumberOfVersions());
+		assertArrayEquals(new String[] { "ASV", "ESV", "KJV" }, model.getVersions());
+		assertSame(kjv, model.getBible("KJV"));
+		assertSame(asv, model.getBible("ASV"));
+		assertSame(esv, model.getBible("ESV"));
+		assertNull(model.getBible("kjv"));
+
+		// Changing the array that is returned doesn't change the model.
+		model.getVersions()[0] = "XYZ";
+		assertArrayEquals(new String[] { "ASV", "ESV", "KJV" }, model.getVersions());
+	}
+
+	@Test(timeout = 1000)
+	public void testSameVersionTwice() {
+		Bible first = bible("KJV", "In the beginning");
+		Bible second = bible("KJV", "At first");
+		model.addBible(first);
+		model.addBible(second);
+		assertEquals(2, model.getNumberOfVersions());
+		assertArrayEquals(new String[] { "KJV", "KJV" }, model.getVersions());
+		assertSame(first, model.getBible("KJV"));
+		// Both are still searched.
+		assertEquals(1, model.getReferencesContainingWord("first").size());
+	}
+
+	@Test(timeout = 10000)
+	public void testAddingWhileReading() throws InterruptedException {
+		final int perThread = 50;
+		Thread[] adders = new Thread[4];
+		for (int t = 0; t < adders.length; t++) {
+			final int thread = t;
+			adders[t] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (int i = 0; i < perThread; i++) {
+						model.addBible(bible("V" + thread + "-" + i, "In the beginning"));
+					}
+				}
+			});
+			adders[t].start();
+		}
+		// Reading while the others add must never see a half-made list.
+		boolean done = false;
+		while (!done) {
+			String[] versions = model.getVersions();
+			for (String version : versions) {
+				assertEquals(version, model.getBible(version).getVersion());
+			}
+			done = true;
+			for (Thread adder : adders) {
+				done &= !adder.isAlive();
+			}
+		}
+		for (Thread adder : adders) {
+			adder.join();
+		}
+		assertEquals(adders.length * perThread, model.getNumberOfVersions());
+		for (int t = 0; t < adders.length; t++) {
+			for (int i = 0; i < perThread; i++) {
+				assertEquals("V" + t + "-" + i, model.getBible("V" + t + "-" + i).getVersion());
+			}
+		}
+	}
+}
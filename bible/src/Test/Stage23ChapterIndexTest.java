@@ -0,0 +1,117 @@
+package Test;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import bibleReader.model.ArrayListBible;
+import bibleReader.model.Bible;
+import bibleReader.model.BookOfBible;
+import bibleReader.model.PackedBible;
+import bibleReader.model.Reference;
+import bibleReader.model.ReferenceList;
+import bibleReader.model.TreeMapBible;
+import bibleReader.model.Verse;
+import bibleReader.model.VerseList;
+
+/**
+ * Tests for the chapter index the Bibles use for chapters, books and last chapter and verse numbers, including chapter
+ * and verse numbers too big to pack into a Reference (which the readers accept).
+ *
+ * @author Logan
+ */
+public class Stage23ChapterIndexTest {
+
+	private static VerseList verses(Verse... verses) {
+		VerseList list = new VerseList("XYZ", "Test");
+		for (Verse verse : verses) {
+			list.add(verse);
+		}
+		return list;
+	}
+
+	private static ReferenceList references(Reference... refs) {
+		ReferenceList list = new ReferenceList();
+		for (Reference ref : refs) {
+			list.add(ref);
+		}
+		return list;
+	}
+
+	@Test(timeout = 1000)
+	public void testChaptersWithGaps() {
+		VerseList verses = verses(new Verse(BookOfBible.Genesis, 1, 1, "a"), new Verse(BookOfBible.Genesis, 1, 2, "b"),
+				new Verse(BookOfBible.Genesis, 1, 5, "c"), new Verse(BookOfBible.Genesis, 3, 1, "d"), new Verse(
+						BookOfBible.Exodus, 2, 7, "e"), new Verse(BookOfBible.Revelation, 22, 21, "f"));
+		Bible[] bibles = { new ArrayListBible(verses), new TreeMapBible(verses), new PackedBible(verses) };
+		for (Bible bible : bibles) {
+			String name = bible.getClass().getSimpleName();
+			assertEquals(name, 5, bible.getLastVerseNumber(BookOfBible.Genesis, 1));
+			assertEquals(name, -1, bible.getLastVerseNumber(BookOfBible.Genesis, 2));
+			assertEquals(name, 3, bible.getLastChapterNumber(BookOfBible.Genesis));
+			assertEquals(name, 2, bible.getLastChapterNumber(BookOfBible.Exodus));
+			assertEquals(name, -1, bible.getLastChapterNumber(BookOfBible.Leviticus));
+			assertEquals(name, 22, bible.getLastChapterNumber(BookOfBible.Revelation));
+			assertEquals(name, 3, bible.getChapter(BookOfBible.Genesis, 1).size());
+			assertEquals(name, 0, bible.getChapter(BookOfBible.Genesis, 2).size());
+			assertEquals(name, 0, bible.getChapter(BookOfBible.Genesis, 4).size());
+			assertEquals(name, references(new Reference(BookOfBible.Exodus, 2, 7)), bible.getReferencesForBook(
+					BookOfBible.Exodus));
+			assertEquals(name, 0, bible.getReferencesForBook(BookOfBible.Numbers).size());
+		}
+	}
+
+	@Test(timeout = 1000)
+	public void testNumbersTooBigToPack() {
+		Reference big = new Reference(BookOfBible.Genesis, 5000, 2);
+		Reference bigVerse = new Reference(BookOfBible.Genesis, 2, 123456789);
+		VerseList verses = verses(new Verse(BookOfBible.Genesis, 1, 1, "a"), new Verse(BookOfBible.Genesis, 2, 1, "b"),
+				new Verse(bigVerse, "c"), new Verse(BookOfBible.Genesis, Reference.MAX_PACKED, 1, "d"), new Verse(
+						big, "e"), new Verse(BookOfBible.Exodus, 1, 1, "f"));
+		Bible[] bibles = { new ArrayListBible(verses), new TreeMapBible(verses) };
+		for (Bible bible : bibles) {
+			String name = bible.getClass().getSimpleName();
+			assertEquals(name, 5000, bible.getLastChapterNumber(BookOfBible.Genesis));
+			assertEquals(name, 2, bible.getLastVerseNumber(BookOfBible.Genesis, 5000));
+			assertEquals(name, 123456789, bible.getLastVerseNumber(BookOfBible.Genesis, 2));
+			assertEquals(name, 1, bible.getLastVerseNumber(BookOfBible.Genesis, Reference.MAX_PACKED));
+			assertEquals(name, -1, bible.getLastVerseNumber(BookOfBible.Genesis, 4999));
+			assertEquals(name, references(new Reference(BookOfBible.Genesis, Reference.MAX_PACKED, 1)), bible
+					.getReferencesForChapter(BookOfBible.Genesis, Reference.MAX_PACKED));
+			assertEquals(name, references(big), bible.getReferencesForChapter(BookOfBible.Genesis, 5000));
+			assertEquals(name, 1, bible.getChapter(BookOfBible.Genesis, 5000).size());
+			assertEquals(name, 2, bible.getChapter(BookOfBible.Genesis, 2).size());
+			assertEquals(name, 5, bible.getBook(BookOfBible.Genesis).size());
+			assertEquals(name, 1, bible.getBook(BookOfBible.Exodus).size());
+		}
+	}
+
+	@Test(timeout = 1000)
+	public void testNegativeNumbers() {
+		Reference negative = new Reference(BookOfBible.Exodus, -2, -3);
+		VerseList verses = verses(new Verse(BookOfBible.Genesis, 1, 1, "a"), new Verse(BookOfBible.Genesis, 2, 1, "b"),
+				new Verse(negative, "c"), new Verse(BookOfBible.Exodus, 0, 5, "d"), new Verse(BookOfBible.Exodus, 1, 1,
+						"e"));
+		Bible[] bibles = { new ArrayListBible(verses), new TreeMapBible(verses) };
+		for (Bible bible : bibles) {
+			String name = bible.getClass().getSimpleName();
+			assertEquals(name, 2, bible.getBook(BookOfBible.Genesis).size());
+			assertEquals(name, 3, bible.getBook(BookOfBible.Exodus).size());
+			assertEquals(name, negative, bible.getBook(BookOfBible.Exodus).get(0).getReference());
+			assertEquals(name, 3, bible.getReferencesForBook(BookOfBible.Exodus).size());
+		}
+	}
+
+	@Test(timeout = 1000)
+	public void testVersesWithoutABook() {
+		VerseList verses = verses(new Verse(null, 1, 1, "no book"), new Verse(BookOfBible.Genesis, 1, 1, "a"),
+				new Verse(BookOfBible.Genesis, 1, 2, "b"));
+		Bible[] bibles = { new ArrayListBible(verses), new TreeMapBible(verses), new PackedBible(verses) };
+		for (Bible bible : bibles) {
+			String name = bible.getClass().getSimpleName();
+			assertEquals(name, 2, bible.getNumberOfVerses());
+			assertEquals(name, 2, bible.getLastVerseNumber(BookOfBible.Genesis, 1));
+			assertEquals(name, "a", bible.getVerseText(new Reference(BookOfBible.Genesis, 1, 1)));
+		}
+	}
+}
@@ -0,0 +1,125 @@
+package Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import bibleReader.model.ArrayListBible;
+import bibleReader.model.Bible;
+import bibleReader.model.BookOfBible;
+import bibleReader.model.Reference;
+import bibleReader.model.ReferenceList;
+import bibleReader.model.TreeMapBible;
+import bibleReader.model.Verse;
+import bibleReader.model.VerseList;
+
+/**
+ * Tests for what ArrayListBible returns for passages at the edges: chapters with missing verses, one-verse chapters,
+ * passages that start at a verse that isn't there, and null arguments. Where TreeMapBible gives the same answer, it is
+ * checked too.
+ *
+ * @author Logan
+ */
+public class Stage24ArrayListBibleEdgeCasesTest {
+	private ArrayListBible	bible;
+	private TreeMapBible	treeMapBible;
+
+	@Before
+	public void setUp() {
+		VerseList verses = new VerseList("XYZ", "Test");
+		// Exodus 3 is missing verse 1, Exodus 4 has one verse and Jude 1 is followed by Revelation 1.
+		verses.add(new Verse(BookOfBible.Exodus, 3, 2, "a"));
+		verses.add(new Verse(BookOfBible.Exodus, 3, 3, "b"));
+		verses.add(new Verse(BookOfBible.Exodus, 3, 5, "c"));
+		verses.add(new Verse(BookOfBible.Exodus, 4, 1, "d"));
+		verses.add(new Verse(BookOfBible.Jude, 1, 1, "e"));
+		verses.add(new Verse(BookOfBible.Jude, 1, 2, "f"));
+		verses.add(new Verse(BookOfBible.Revelation, 1, 1, "g"));
+		verses.add(new Verse(BookOfBible.Revelation, 5, 2, "h"));
+		bible = new ArrayListBible(verses);
+		treeMapBible = new TreeMapBible(verses);
+	}
+
+	private static ReferenceList references(BookOfBible book, int chapter, int... verses) {
+		ReferenceList list = new ReferenceList();
+		for (int verse : verses) {
+			list.add(new Reference(book, chapter, verse));
+		}
+		return list;
+	}
+
+	private void assertBoth(Object expected, Object fromArrayListBible, Object fromTreeMapBible) {
+		assertEquals(expected, fromArrayListBible);
+		assertEquals(expected, fromTreeMapBible);
+	}
+
+	@Test
+	public void testPassageOfOneVerseIsEmpty() {
+		assertBoth(new ReferenceList(), bible.getReferencesForPassage(BookOfBible.Exodus, 3, 2, 2), treeMapBible
+				.getReferencesForPassage(BookOfBible.Exodus, 3, 2, 2));
+		Reference ref = new Reference(BookOfBible.Exodus, 3, 3);
+		assertBoth(new ReferenceList(), bible.getReferencesInclusive(ref, ref), treeMapBible.getReferencesInclusive(
+				ref, ref));
+		assertBoth(0, bible.getPassage(BookOfBible.Exodus, 3, 2, 2).size(), treeMapBible.getPassage(BookOfBible.Exodus,
+				3, 2, 2).size());
+		assertBoth(0, bible.getVersesInclusive(ref, ref).size(), treeMapBible.getVersesInclusive(ref, ref).size());
+	}
+
+	@Test
+	public void testPassageStartingAtAMissingVerse() {
+		Reference start = new Reference(BookOfBible.Revelation, 3, 3);
+		Reference end = new Reference(BookOfBible.Revelation, 5, 2);
+		// Not just the last verse.
+		assertBoth(new ReferenceList(), bible.getReferencesInclusive(start, end), treeMapBible
+				.getReferencesInclusive(start, end));
+		assertBoth(new ReferenceList(), bible.getReferencesForPassage(BookOfBible.Exodus, 3, 1, 3), treeMapBible
+				.getReferencesForPassage(BookOfBible.Exodus, 3, 1, 3));
+	}
+
+	@Test
+	public void testChaptersWithMissingVerses() {
+		// Every verse that is there, even though verse 1 and verse 4 are missing.
+		assertBoth(references(BookOfBible.Exodus, 3, 2, 3, 5), bible.getReferencesForChapter(BookOfBible.Exodus, 3),
+				treeMapBible.getReferencesForChapter(BookOfBible.Exodus, 3));
+		assertBoth(5, bible.getLastVerseNumber(BookOfBible.Exodus, 3), treeMapBible.getLastVerseNumber(
+				BookOfBible.Exodus, 3));
+		// A chapter with a single verse.
+		assertBoth(references(BookOfBible.Exodus, 4, 1), bible.getReferencesForChapter(BookOfBible.Exodus, 4),
+				treeMapBible.getReferencesForChapter(BookOfBible.Exodus, 4));
+		assertEquals(4, bible.getReferencesForChapters(BookOfBible.Exodus, 3, 4).size());
+		// Chapters that aren't there.
+		assertBoth(new ReferenceList(), bible.getReferencesForChapter(BookOfBible.Exodus, 6), treeMapBible
+				.getReferencesForChapter(BookOfBible.Exodus, 6));
+		assertEquals(new ReferenceList(), bible.getReferencesForChapters(BookOfBible.Revelation, 1, 5));
+	}
+
+	@Test
+	public void testChapterStopsAtTheEndOfTheBook() {
+		// Revelation 1 comes right after Jude 1, but isn't part of it.
+		assertEquals(2, bible.getChapter(BookOfBible.Jude, 1).size());
+		assertEquals(2, treeMapBible.getChapter(BookOfBible.Jude, 1).size());
+		assertEquals(2, bible.getChapters(BookOfBible.Jude, 1, 1).size());
+		// The last chapter of the Bible.
+		assertEquals(1, bible.getChapter(BookOfBible.Revelation, 5).size());
+	}
+
+	@Test
+	public void testNullArguments() {
+		Reference noBook = new Reference(null, 1, 1);
+		Reference ref = new Reference(BookOfBible.Exodus, 3, 2);
+		Bible[] bibles = { bible, treeMapBible };
+		for (Bible b : bibles) {
+			assertEquals(0, b.getReferencesForPassage(null, 1, 1, 2).size());
+			assertEquals(0, b.getPassage(null, 1, 1, 2, 2).size());
+		}
+		assertFalse(bible.isValid(noBook));
+		assertNull(bible.getVerseText(noBook));
+		assertEquals(-1, bible.getLastChapterNumber(null));
+		assertEquals(0, bible.getReferencesInclusive(noBook, ref).size());
+		assertEquals(0, bible.getVersesInclusive(noBook, ref).size());
+		assertEquals(0, bible.getVersesExclusive(ref, noBook).size());
+	}
+}
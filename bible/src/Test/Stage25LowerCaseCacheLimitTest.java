@@ -0,0 +1,82 @@
+package Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import bibleReader.BibleIO;
+import bibleReader.model.Bible;
+import bibleReader.model.BibleFactory;
+import bibleReader.model.BibleFactory.BibleType;
+import bibleReader.model.VerseList;
+
+/**
+ * Tests for BibleFactory.setLowerCaseCacheLimit: a Bible only keeps a lower-cased copy of its text when the copy fits
+ * in the limit, and searches find the same verses either way.
+ *
+ * @author Logan
+ */
+public class Stage25LowerCaseCacheLimitTest {
+	private static final String[]	PHRASES	= { "the LORD", "Jesus wept", "jEsUs", "ye", "a", "", "  ", "xyzzy",
+			"sheep and", "goat." };
+
+	private static VerseList		kjvVerses;
+	private long					originalLimit;
+
+	@BeforeClass
+	public static void readFile() {
+		kjvVerses = BibleIO.readBible(new File("kjv.atv"));
+	}
+
+	@Before
+	public void setUp() {
+		originalLimit = BibleFactory.getLowerCaseCacheLimit();
+	}
+
+	@After
+	public void tearDown() {
+		BibleFactory.setLowerCaseCacheLimit(originalLimit);
+	}
+
+	/**
+	 * @return a Bible of the given type made with the given limit, searched once so its index is built.
+	 */
+	private static Bible bible(BibleType type, long limit) {
+		BibleFactory.setLowerCaseCacheLimit(limit);
+		Bible bible = BibleFactory.createBible(kjvVerses, type);
+		bible.getReferencesContaining("the");
+		return bible;
+	}
+
+	@Test(timeout = 20000)
+	public void testCopyOnlyKeptWithinTheLimit() {
+		for (BibleType type : BibleType.values()) {
+			long size = BibleFactory.getLowerCaseCacheSize(bible(type, Long.MAX_VALUE));
+			assertTrue(type.toString(), size > 0);
+			assertEquals(type.toString(), size, BibleFactory.getLowerCaseCacheSize(bible(type, size)));
+			assertEquals(type.toString(), 0, BibleFactory.getLowerCaseCacheSize(bible(type, 1000)));
+			assertEquals(type.toString(), 0, BibleFactory.getLowerCaseCacheSize(bible(type, 0)));
+		}
+	}
+
+	@Test(timeout = 20000)
+	public void testSameResultsWithoutTheCopy() {
+		for (BibleType type : BibleType.values()) {
+			Bible withCopy = bible(type, Long.MAX_VALUE);
+			Bible small = bible(type, 1000);
+			Bible none = bible(type, 0);
+			for (String phrase : PHRASES) {
+				String message = type + " \"" + phrase + "\"";
+				assertEquals(message, withCopy.getReferencesContaining(phrase), small.getReferencesContaining(phrase));
+				assertEquals(message, withCopy.getReferencesContaining(phrase), none.getReferencesContaining(phrase));
+				assertEquals(message, withCopy.getVersesContaining(phrase), none.getVersesContaining(phrase));
+			}
+		}
+	}
+}
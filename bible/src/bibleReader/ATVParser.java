@@ -0,0 +1,185 @@
+package bibleReader;
+
+import bibleReader.model.BookOfBible;
+import bibleReader.model.VerseSink;
+
+/**
+ * Parses the verse lines of an ATV file (BOOK@CHAPTER:VERSE@TEXT) by scanning
+ * each line once, without regular expressions or splitting it into pieces.
+ * The only String made for a verse is its text.
+ *
+ * The lines are accepted and rejected exactly as readATV used to with
+ * line.split("@") and split(":"): a line must have three pieces separated by
+ * '@' (ignoring '@'s at the end of the line) and a known book, and a verse
+ * whose chapter and verse aren't two pieces separated by ':' is skipped.
+ *
+ * Consecutive lines are nearly always from the same book, so the book of the
+ * last line is remembered and only looked up again when the abbreviation
+ * changes. A parser is not thread safe; use one for each thread.
+ *
+ * @author Logan
+ */
+class ATVParser {
+	// The abbreviation of the book of the last line, and that book.
+	private String lastAbbreviation;
+	private BookOfBible lastBook;
+
+	/**
+	 * Parse the first line of an ATV file, which gives the version and title
+	 * (see readATV), and give them to the sink.
+	 *
+	 * @param firstLine
+	 *            The first line (without the line terminator).
+	 * @param sink
+	 *            The sink the version and title are given to.
+	 */
+	static void parseFirstLine(String firstLine, VerseSink sink) {
+		if (firstLine.length() > 0) {
+
+			// Get the version and title.
+			String[] splitOnColon = firstLine.split(": ");
+
+			if (splitOnColon.length == 2) {
+				String version = splitOnColon[0];
+				String title = splitOnColon[1];
+
+				sink.setVersion(version, title);
+			} else {
+				sink.setVersion(firstLine, "");
+			}
+		} else {
+			sink.setVersion("unkown", "");
+		}
+	}
+
+	/**
+	 * Parse a verse line and give the verse to the sink.
+	 *
+	 * @param line
+	 *            The line (without the line terminator).
+	 * @param sink
+	 *            The sink the verse is given to.
+	 * @return true if the line was parsed (or skipped), false if the line is
+	 *         corrupt and the file should be rejected.
+	 */
+	boolean parseLine(String line, VerseSink sink) {
+		return parseLine(line, 0, line.length(), sink);
+	}
+
+	/**
+	 * Parse a verse line held in part of a string and give the verse to the
+	 * sink.
+	 *
+	 * @param text
+	 *            The string holding the line.
+	 * @param start
+	 *            Where the line starts.
+	 * @param end
+	 *            Where the line ends (not counting the line terminator).
+	 * @param sink
+	 *            The sink the verse is given to.
+	 * @return true if the line was parsed (or skipped), false if the line is
+	 *         corrupt and the file should be rejected.
+	 */
+	boolean parseLine(String text, int start, int end, VerseSink sink) {
+		// split drops the empty pieces at the end, so '@'s at the end of the
+		// line don't count.
+		while (end > start && text.charAt(end - 1) == '@') {
+			end--;
+		}
+		int firstAt = indexOf(text, '@', start, end);
+		if (firstAt < 0) {
+			return false;
+		}
+		int secondAt = indexOf(text, '@', firstAt + 1, end);
+		if (secondAt < 0 || indexOf(text, '@', secondAt + 1, end) >= 0) {
+			return false;
+		}
+
+		BookOfBible book = bookOf(text, start, firstAt);
+		// Make sure that the book of bible is not null. If it is it means that
+		// the file is somehow corrupted.
+		if (book == null) {
+			return false;
+		}
+
+		// The chapter and verse, again ignoring ':'s at the end.
+		int numbersEnd = secondAt;
+		while (numbersEnd > firstAt + 1 && text.charAt(numbersEnd - 1) == ':') {
+			numbersEnd--;
+		}
+		int colon = indexOf(text, ':', firstAt + 1, numbersEnd);
+		if (colon < 0 || indexOf(text, ':', colon + 1, numbersEnd) >= 0) {
+			// Not a chapter and a verse, so the verse is skipped.
+			return true;
+		}
+		try {
+			int verse = parseInt(text, colon + 1, numbersEnd);
+			int chapter = parseInt(text, firstAt + 1, colon);
+			sink.addVerse(book, chapter, verse,
+					text.substring(secondAt + 1, end));
+		} catch (NumberFormatException e) {
+			e.printStackTrace();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return the book whose abbreviation is text[start, end), or null if
+	 *         there isn't one.
+	 */
+	private BookOfBible bookOf(String text, int start, int end) {
+		int length = end - start;
+		if (lastAbbreviation != null && lastAbbreviation.length() == length
+				&& text.regionMatches(start, lastAbbreviation, 0, length)) {
+			return lastBook;
+		}
+		String abbreviation = text.substring(start, end);
+		BookOfBible book = BookOfBible.getBookOfBible(abbreviation);
+		if (book != null) {
+			lastAbbreviation = abbreviation;
+			lastBook = book;
+		}
+		return book;
+	}
+
+	/**
+	 * @return the first index of c in text[from, to), or -1 if it isn't there.
+	 */
+	private static int indexOf(String text, char c, int from, int to) {
+		for (int i = from; i < to; i++) {
+			if (text.charAt(i) == c) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Parse text[start, end) as Integer.parseInt would.
+	 *
+	 * @throws NumberFormatException
+	 *             if it isn't a number.
+	 */
+	private static int parseInt(String text, int start, int end) {
+		// Chapter and verse numbers are a few plain digits, which can be added
+		// up directly. Anything else is left to Integer.parseInt.
+		if (start < end && end - start <= 9) {
+			int value = 0;
+			int i = start;
+			while (i < end) {
+				char c = text.charAt(i);
+				if (c < '0' || c > '9') {
+					break;
+				}
+				value = 10 * value + (c - '0');
+				i++;
+			}
+			if (i == end) {
+				return value;
+			}
+		}
+		return Integer.parseInt(text.substring(start, end));
+	}
+}
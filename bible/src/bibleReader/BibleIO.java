@@ -1,18 +1,35 @@
 package bibleReader;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ForkJoinPool;
 
 import bibleReader.model.Bible;
+import bibleReader.model.BibleFactory;
+import bibleReader.model.BibleFactory.BibleType;
+import bibleReader.model.BibleSource;
 import bibleReader.model.BookOfBible;
+import bibleReader.model.Concordance;
+import bibleReader.model.LazyBible;
+import bibleReader.model.PackedBible;
 import bibleReader.model.Reference;
 import bibleReader.model.Verse;
 import bibleReader.model.VerseList;
+import bibleReader.model.VerseSink;
 
 /**
  * A utility class that has useful methods to read/write Bibles and Verses.
@@ -21,25 +38,65 @@ import bibleReader.model.VerseList;
  */
 public class BibleIO {
 
+	// Whether large ATV files are parsed on the common fork-join pool.
+	private static volatile boolean parallelReading = Runtime.getRuntime()
+			.availableProcessors() > 1;
+
 	/**
 	 * Read in a file and create a Bible object from it and return it.
 	 * 
 	 * @param bibleFile
 	 * @return
 	 */
-	public static VerseList readBible(File bibleFile) { // Get the extension of
-														// the file
+	public static VerseList readBible(File bibleFile) {
+		VerseListSink sink = new VerseListSink();
+		if (!streamBible(bibleFile, sink)) {
+			return null;
+		}
+		return sink.list;
+	}
+
+	/**
+	 * Read in a file and hand each of its verses to the given sinks as it is
+	 * read, so that (for instance) a Bible and its concordance can be built in
+	 * one pass over the file without making a VerseList of it first.
+	 * 
+	 * @param bibleFile
+	 *            The file containing a Bible, with .atv, .xmv or .bbin
+	 *            extension.
+	 * @param sinks
+	 *            The sinks the verses are given to, in the order listed.
+	 * @return true if the whole file was read. If it is false, the sinks may
+	 *         have been given some of the verses before the error was found,
+	 *         and what they built should be thrown away.
+	 */
+	public static boolean streamBible(File bibleFile, VerseSink... sinks) {
+		VerseSink sink = sinks.length == 1 ? sinks[0] : new SplitSink(sinks);
+
+		// Get the extension of the file
 		String name = bibleFile.getName();
 		String extension = name.substring(name.lastIndexOf('.') + 1,
 				name.length());
 
 		// Call the read method based on the file type.
 		if ("atv".equals(extension.toLowerCase())) {
-			return readATV(bibleFile);
+			return readATV(bibleFile, sink);
 		} else if ("xmv".equals(extension.toLowerCase())) {
-			return readXMV(bibleFile);
+			return readXMV(bibleFile, sink);
+		} else if ("bbin".equals(extension.toLowerCase())) {
+			Bible bible = readBinaryBible(bibleFile);
+			if (bible == null) {
+				return false;
+			}
+			sink.setVersion(bible.getVersion(), bible.getTitle());
+			for (Verse verse : bible.getAllVerses()) {
+				Reference r = verse.getReference();
+				sink.addVerse(r.getBookOfBible(), r.getChapter(),
+						r.getVerse(), verse.getText());
+			}
+			return true;
 		} else {
-			return null;
+			return false;
 		}
 	}
 
@@ -49,10 +106,11 @@ public class BibleIO {
 	 * 
 	 * @param bibleFile
 	 *            The file containing a Bible with .atv extension.
-	 * @return A Bible object constructed from the file bibleFile, or null if
-	 *         there was an error reading the file.
+	 * @param sink
+	 *            The sink the version and verses are given to.
+	 * @return true, or false if there was an error reading the file.
 	 */
-	private static VerseList readATV(File bibleFile) {
+	private static boolean readATV(File bibleFile, VerseSink sink) {
 		// The ATV format
 		//
 		// The first line is a summary of what is in the file.
@@ -76,7 +134,12 @@ public class BibleIO {
 		// Ge@1:19@And the evening and the morning were the fourth day.
 		//
 
-		VerseList verseListToReturn = null;
+		Charset charset = Charset.defaultCharset();
+		if (parallelReading
+				&& bibleFile.length() >= ParallelATVReader.MINIMUM_SIZE
+				&& ParallelATVReader.canRead(charset)) {
+			return readATVInParallel(bibleFile, charset, sink);
+		}
 
 		try {
 			BufferedReader buffReader = new BufferedReader(new FileReader(
@@ -84,80 +147,83 @@ public class BibleIO {
 
 			String firstLine = buffReader.readLine();
 
-			if (firstLine.length() > 0) {
-
-				// Get the version and title.
-				String[] splitOnColon = firstLine.split(": ");
-
-				if (splitOnColon.length == 2) {
-					String version = splitOnColon[0];
-					String title = splitOnColon[1];
-
-					// Create the verselist.
-					verseListToReturn = new VerseList(version, title);
-				} else {
-					verseListToReturn = new VerseList(firstLine, "");
-				}
-			} else {
-				verseListToReturn = new VerseList("unkown", "");
-			}
+			ATVParser.parseFirstLine(firstLine, sink);
 
-			// Instead of creating new variables every time, we will reuse
-			// these.
-			BookOfBible bookOfBible;
-			int book;
-			int chapter;
-			String text;
+			// The parser remembers the book of the last line, since the next
+			// line is nearly always from the same book.
+			ATVParser parser = new ATVParser();
 
 			while (buffReader.ready()) {
 				String line = buffReader.readLine();
 
-				String[] atSplit = line.split("@");
-
-				// Add the verses.
-				if (atSplit.length == 3) {
-					bookOfBible = BookOfBible.getBookOfBible(atSplit[0]);
-					// Make sure that the book of bible is not null.
-					// If it is it means that the file is somehow corrupted
-					// And we can return null
-					if (bookOfBible == null) {
-						buffReader.close();
-						return null;
-					}
-
-					String[] bookAndChapter = atSplit[1].split(":");
-					text = atSplit[2];
-
-					try {
-						if (bookAndChapter.length == 2) {
-							chapter = Integer.parseInt(bookAndChapter[1]);
-							book = Integer.parseInt(bookAndChapter[0]);
-
-							verseListToReturn.add(new Verse(bookOfBible, book,
-									chapter, text));
-						}
-					} catch (NumberFormatException e) {
-						e.printStackTrace();
-						buffReader.close();
-						return null;
-					}
-				} else {
+				// Add the verse. If the line is corrupt, so is the file.
+				if (!parser.parseLine(line, sink)) {
 					buffReader.close();
-					return null;
+					return false;
 				}
 			} // End of main loop.
 
 			buffReader.close();
-			return verseListToReturn;
+			return true;
 
 		} catch (FileNotFoundException e) {
-			return null;
+			return false;
 
 		} catch (IOException e) {
-			return null;
+			return false;
 		}
 	}
 
+	/**
+	 * Read in a Bible that is saved in the "ATV" format by memory-mapping the
+	 * file and parsing it on the common fork-join pool. The result is the same
+	 * as reading it one line at a time.
+	 * 
+	 * @param bibleFile
+	 *            The file containing a Bible with .atv extension.
+	 * @param charset
+	 *            The charset the file is in.
+	 * @param sink
+	 *            The sink the version and verses are given to.
+	 * @return true, or false if there was an error reading the file.
+	 */
+	private static boolean readATVInParallel(File bibleFile, Charset charset,
+			VerseSink sink) {
+		try {
+			RandomAccessFile raf = new RandomAccessFile(bibleFile, "r");
+			try {
+				FileChannel channel = raf.getChannel();
+				MappedByteBuffer buffer = channel.map(
+						FileChannel.MapMode.READ_ONLY, 0, channel.size());
+				return ParallelATVReader.read(buffer, charset, sink,
+						ForkJoinPool.commonPool());
+			} finally {
+				raf.close();
+			}
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * @return true if large ATV files are parsed on several threads.
+	 */
+	public static boolean isParallelReading() {
+		return parallelReading;
+	}
+
+	/**
+	 * @param parallel
+	 *            true if ATV files of a megabyte or more should be parsed on
+	 *            the threads of the common fork-join pool, false if every file
+	 *            should be read one line at a time on the calling thread. The
+	 *            default is to parse in parallel when there is more than one
+	 *            processor.
+	 */
+	public static void setParallelReading(boolean parallel) {
+		parallelReading = parallel;
+	}
+
 	/**
 	 * Read in the Bible that is stored in the XMV format. This format uses xml
 	 * style tags.
@@ -168,10 +234,11 @@ public class BibleIO {
 	 * 
 	 * @param bibleFile
 	 *            The file containing a Bible with .xmv extension.
-	 * @return A Bible object constructed from the file bibleFile, or null if
-	 *         there was an error reading the file.
+	 * @param sink
+	 *            The sink the version and verses are given to.
+	 * @return true, or false if there was an error reading the file.
 	 */
-	private static VerseList readXMV(File bibleFile) {
+	private static boolean readXMV(File bibleFile, VerseSink sink) {
 		// The XMV format
 		//
 		// The first line of the file is a summary of what is in the
@@ -209,37 +276,14 @@ public class BibleIO {
 
 			if (line == null) {
 				buffReader.close();
-				return null;
-			}
-
-			// Declare the list that we will eventually return.
-			VerseList list = null;
-
-			// Get the information about the file from its first line.
-			if (line.length() > 0) {
-				if (line.startsWith("<Version") && line.length() > 9) {
-
-					String firstLineNoTag = line.trim().substring(9,
-							line.length());
-					// I personally think it should be line.length() -1
-					// to get rid of the closing bracket, but the tests did
-					String[] td = firstLineNoTag.split(": ");
-					if (td.length == 2) {
-						list = new VerseList(td[0].trim(), td[1].trim());
-					}
-				} else {
-					// The first line was not in the normal format.
-					list = new VerseList("line", "");
-				}
-			} else {
-				// The first line was blank
-				list = new VerseList("unknown", "");
+				return false;
 			}
 
-			// If we're here and the list is still null, we cannot go on
-			if (list == null) {
+			// Get the information about the file from its first line. We
+			// cannot go on without the version.
+			if (!parseXMVFirstLine(line, sink)) {
 				buffReader.close();
-				return null;
+				return false;
 			}
 
 			while (line != null) {
@@ -259,7 +303,7 @@ public class BibleIO {
 					// Make sure that we did not get a null book
 					if (currentBook == null) {
 						buffReader.close();
-						return null;
+						return false;
 					}
 				}
 
@@ -272,7 +316,7 @@ public class BibleIO {
 					} catch (NumberFormatException e) {
 						e.printStackTrace();
 						buffReader.close();
-						return null;
+						return false;
 					}
 				}
 
@@ -282,13 +326,13 @@ public class BibleIO {
 						String[] splitOnArrow = line.split(">");
 						int verseNumber = Integer.parseInt(splitOnArrow[0]
 								.substring(verseMatch.length()).trim());
-						list.add(new Verse(new Reference(currentBook,
-								currentChapter, verseNumber), splitOnArrow[1]));
+						sink.addVerse(currentBook, currentChapter, verseNumber,
+								splitOnArrow[1]);
 
 					} catch (NumberFormatException e) {
 						e.printStackTrace();
 						buffReader.close();
-						return null;
+						return false;
 					}
 				}
 
@@ -298,13 +342,238 @@ public class BibleIO {
 
 			buffReader.close();
 
-			return list;
+			return true;
+
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Get the version and title from the first line of an XMV file.
+	 * 
+	 * @param line
+	 *            The first line.
+	 * @param sink
+	 *            The sink the version and title are given to.
+	 * @return true, or false if the line has no version.
+	 */
+	private static boolean parseXMVFirstLine(String line, VerseSink sink) {
+		if (line.length() > 0) {
+			if (line.startsWith("<Version") && line.length() > 9) {
+
+				String firstLineNoTag = line.trim().substring(9, line.length());
+				// I personally think it should be line.length() -1
+				// to get rid of the closing bracket, but the tests did
+				String[] td = firstLineNoTag.split(": ");
+				if (td.length == 2) {
+					sink.setVersion(td[0].trim(), td[1].trim());
+				} else {
+					return false;
+				}
+			} else {
+				// The first line was not in the normal format.
+				sink.setVersion("line", "");
+			}
+		} else {
+			// The first line was blank
+			sink.setVersion("unknown", "");
+		}
+		return true;
+	}
+
+	/**
+	 * Register a Bible in a file without reading it yet. Only the first line
+	 * (or header) of the file is read now, to get the version and title; the
+	 * verses are read the first time they are needed. The Bible may be dropped
+	 * again if memory runs low, in which case it is read again when needed
+	 * (see LazyBible). Its concordance is kept next to the file (see
+	 * loadConcordance). The verses are kept in the implementation
+	 * BibleFactory.createBible uses by default.
+	 * 
+	 * @param bibleFile
+	 *            The file containing a Bible, with .atv, .xmv or .bbin
+	 *            extension.
+	 * @return The Bible, or null if the file can't be read.
+	 */
+	public static LazyBible openBible(File bibleFile) {
+		return openBible(bibleFile, BibleFactory.getDefaultType());
+	}
+
+	/**
+	 * Register a Bible in a file without reading it yet, as openBible(File)
+	 * does, keeping its verses in the given implementation once they are
+	 * read. A .bbin file is always read as a PackedBible, since that is the
+	 * only implementation that can be served from it.
+	 * 
+	 * @param bibleFile
+	 *            The file containing a Bible, with .atv, .xmv or .bbin
+	 *            extension.
+	 * @param type
+	 *            The implementation to keep the verses of a .atv or .xmv file
+	 *            in.
+	 * @return The Bible, or null if the file can't be read.
+	 */
+	public static LazyBible openBible(final File bibleFile,
+			final BibleType type) {
+		VersionSink header = new VersionSink();
+		if (!readHeader(bibleFile, header)) {
+			return null;
+		}
+		return new LazyBible(header.version, header.title, new BibleSource() {
+			@Override
+			public Bible load() {
+				if (bibleFile.getName().toLowerCase().endsWith(".bbin")) {
+					return readBinaryBible(bibleFile);
+				}
+				if (type == BibleType.PACKED) {
+					// Read straight into it, without a VerseList.
+					PackedBible.Builder builder = new PackedBible.Builder();
+					return streamBible(bibleFile, builder) ? builder.build()
+							: null;
+				}
+				VerseList verses = readBible(bibleFile);
+				return verses == null ? null : BibleFactory.createBible(
+						verses, type);
+			}
+
+			@Override
+			public Concordance loadConcordance(Bible bible) {
+				return BibleIO.loadConcordance(bibleFile, bible);
+			}
+		});
+	}
+
+	/**
+	 * Get the concordance of a Bible read from a file. If a good one was saved
+	 * next to the file (see getConcordanceFile) it is memory-mapped from
+	 * there. Otherwise it is built and saved there, so the next time it can be
+	 * mapped instead of built.
+	 * 
+	 * @param bibleFile
+	 *            The file the Bible was read from.
+	 * @param bible
+	 *            The Bible.
+	 * @return The concordance.
+	 */
+	public static Concordance loadConcordance(File bibleFile, Bible bible) {
+		File file = getConcordanceFile(bibleFile);
+		Concordance concordance = BibleFactory.readConcordance(bible, file);
+		if (concordance == null) {
+			concordance = BibleFactory.createConcordance(bible);
+			// If it can't be saved (e.g. the folder is read-only), it is just
+			// built again next time.
+			writeConcordance(file, concordance);
+		}
+		return concordance;
+	}
+
+	/**
+	 * Read just the version and title of a Bible from its file.
+	 * 
+	 * @param bibleFile
+	 *            The file containing a Bible.
+	 * @param sink
+	 *            The sink the version and title are given to.
+	 * @return true, or false if they couldn't be read.
+	 */
+	private static boolean readHeader(File bibleFile, VerseSink sink) {
+		String name = bibleFile.getName().toLowerCase();
+		if (name.endsWith(".bbin")) {
+			Bible bible = readBinaryBible(bibleFile);
+			if (bible == null) {
+				return false;
+			}
+			sink.setVersion(bible.getVersion(), bible.getTitle());
+			return true;
+		} else if (!name.endsWith(".atv") && !name.endsWith(".xmv")) {
+			return false;
+		}
+		try {
+			BufferedReader buffReader = new BufferedReader(new FileReader(
+					bibleFile));
+			try {
+				String firstLine = buffReader.readLine();
+				if (firstLine == null) {
+					return false;
+				} else if (name.endsWith(".atv")) {
+					ATVParser.parseFirstLine(firstLine, sink);
+					return true;
+				} else {
+					return parseXMVFirstLine(firstLine, sink);
+				}
+			} finally {
+				buffReader.close();
+			}
+		} catch (IOException e) {
+			return false;
+		}
+	}
 
+	/**
+	 * Read in a Bible saved by writeBibleBinary. The file is memory-mapped and
+	 * the Bible is served straight from it, so nothing but the references is
+	 * read until verses are asked for, and processes that open the same file
+	 * share its pages.
+	 * 
+	 * @param bibleFile
+	 *            The file containing a Bible with .bbin extension.
+	 * @return The Bible in the file, or null if there was an error reading the
+	 *         file or it isn't in the current format.
+	 */
+	public static Bible readBinaryBible(File bibleFile) {
+		try {
+			RandomAccessFile raf = new RandomAccessFile(bibleFile, "r");
+			try {
+				FileChannel channel = raf.getChannel();
+				MappedByteBuffer buffer = channel.map(
+						FileChannel.MapMode.READ_ONLY, 0, channel.size());
+				// The mapping stays valid after the file is closed.
+				return PackedBible.read(buffer);
+			} finally {
+				raf.close();
+			}
 		} catch (IOException e) {
 			return null;
 		}
 	}
 
+	/**
+	 * Write out the Bible in the binary format read by readBinaryBible
+	 * (usually with the .bbin extension).
+	 * 
+	 * @param file
+	 *            The file that the Bible should be written to.
+	 * @param bible
+	 *            The Bible that will be written to the file.
+	 * @return true if the file was written.
+	 */
+	public static boolean writeBibleBinary(File file, Bible bible) {
+		PackedBible packed = bible instanceof PackedBible ? (PackedBible) bible
+				: new PackedBible(bible.getAllVerses());
+		// As with concordances, write to a temporary file and then move it
+		// over the old one, so nobody ever maps a half-written file.
+		File temporary = null;
+		try {
+			temporary = temporaryFileNextTo(file);
+			OutputStream out = new BufferedOutputStream(new FileOutputStream(
+					temporary));
+			try {
+				packed.write(out);
+			} finally {
+				out.close();
+			}
+			moveOver(temporary, file);
+		} catch (IOException e) {
+			e.printStackTrace();
+			if (temporary != null) {
+				temporary.delete();
+			}
+			return false;
+		}
+		return true;
+	}
+
 	/**
 	 * Write out the Bible in the ATV format.
 	 * 
@@ -372,6 +641,83 @@ public class BibleIO {
 		}
 	}
 
+	/**
+	 * @param bibleFile
+	 *            The file a Bible is read from.
+	 * @return The file its concordance is saved in, which is next to it with
+	 *         ".cnc" added to the name (e.g. kjv.atv.cnc).
+	 */
+	public static File getConcordanceFile(File bibleFile) {
+		return new File(bibleFile.getPath() + ".cnc");
+	}
+
+	/**
+	 * Save a concordance in the binary format BibleFactory.createConcordance
+	 * can memory-map. The file starts with a version number and checksums, so
+	 * a file that is out of date or damaged is ignored rather than used.
+	 * 
+	 * @param file
+	 *            The file to write to. It is usually
+	 *            getConcordanceFile(bibleFile).
+	 * @param concordance
+	 *            The concordance to save.
+	 * @return true if the file was written.
+	 */
+	public static boolean writeConcordance(File file, Concordance concordance) {
+		// Write to a temporary file and then move it over the old one, so
+		// nobody ever maps a half-written file (or finds none at all).
+		File temporary = null;
+		try {
+			temporary = temporaryFileNextTo(file);
+			OutputStream out = new BufferedOutputStream(new FileOutputStream(
+					temporary));
+			try {
+				concordance.write(out);
+			} finally {
+				out.close();
+			}
+			moveOver(temporary, file);
+		} catch (IOException e) {
+			e.printStackTrace();
+			if (temporary != null) {
+				temporary.delete();
+			}
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @param file
+	 *            The file that is about to be written.
+	 * @return A new, empty file in the same folder, with a name no other
+	 *         writer is using, to write to before moving it over file.
+	 * @throws IOException
+	 *             If the file can't be made.
+	 */
+	private static File temporaryFileNextTo(File file) throws IOException {
+		// The prefix has to be at least three characters long.
+		return File.createTempFile("." + file.getName() + ".", ".tmp", file
+				.getAbsoluteFile().getParentFile());
+	}
+
+	/**
+	 * Replace file with temporary in one step, so that anyone opening file
+	 * finds either the old one or the new one.
+	 * 
+	 * @param temporary
+	 *            A file in the same folder as file (see temporaryFileNextTo).
+	 * @param file
+	 *            The file to replace, which need not exist.
+	 * @throws IOException
+	 *             If it can't be moved.
+	 */
+	private static void moveOver(File temporary, File file) throws IOException {
+		Files.move(temporary.toPath(), file.toPath(),
+				StandardCopyOption.ATOMIC_MOVE,
+				StandardCopyOption.REPLACE_EXISTING);
+	}
+
 	/**
 	 * Write the string out to the given file. It is presumed that the string is
 	 * an HTML rendering of some verses, but really it can be anything.
@@ -389,4 +735,68 @@ public class BibleIO {
 			e.printStackTrace();
 		}
 	}
+
+	/**
+	 * A sink that collects the verses into a VerseList, for readBible.
+	 */
+	private static class VerseListSink implements VerseSink {
+		private VerseList list;
+
+		@Override
+		public void setVersion(String version, String title) {
+			list = new VerseList(version, title);
+		}
+
+		@Override
+		public void addVerse(BookOfBible book, int chapter, int verse,
+				String text) {
+			list.add(new Verse(book, chapter, verse, text));
+		}
+	}
+
+	/**
+	 * A sink that hands everything it is given on to several other sinks.
+	 */
+	private static class SplitSink implements VerseSink {
+		private VerseSink[] sinks;
+
+		SplitSink(VerseSink[] sinks) {
+			this.sinks = sinks;
+		}
+
+		@Override
+		public void setVersion(String version, String title) {
+			for (VerseSink sink : sinks) {
+				sink.setVersion(version, title);
+			}
+		}
+
+		@Override
+		public void addVerse(BookOfBible book, int chapter, int verse,
+				String text) {
+			for (VerseSink sink : sinks) {
+				sink.addVerse(book, chapter, verse, text);
+			}
+		}
+	}
+
+	/**
+	 * A sink that only keeps the version and title, for openBible.
+	 */
+	private static class VersionSink implements VerseSink {
+		private String version;
+		private String title;
+
+		@Override
+		public void setVersion(String version, String title) {
+			this.version = version;
+			this.title = title;
+		}
+
+		@Override
+		public void addVerse(BookOfBible book, int chapter, int verse,
+				String text) {
+			// Only the version is wanted.
+		}
+	}
 }
@@ -9,10 +9,13 @@ import java.awt.event.ActionListener;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.io.File;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
 
 import javax.swing.JButton;
 import javax.swing.JFileChooser;
 import javax.swing.JFrame;
+import javax.swing.JLabel;
 import javax.swing.JMenu;
 import javax.swing.JMenuBar;
 import javax.swing.JMenuItem;
@@ -20,14 +23,16 @@ import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JTextField;
 import javax.swing.LookAndFeel;
+import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
 import javax.swing.UIManager;
 import javax.swing.UIManager.LookAndFeelInfo;
 
-import bibleReader.model.ArrayListBible;
 import bibleReader.model.Bible;
+import bibleReader.model.BibleFactory.BibleType;
 import bibleReader.model.BibleReaderModel;
+import bibleReader.model.LazyBible;
 import bibleReader.model.ResultType;
-import bibleReader.model.VerseList;
 
 /**
  * The main class for the Bible Reader Application.
@@ -48,6 +53,11 @@ public class BibleReaderApp extends JFrame {
 	private ResultView resultView;
 
 	private JTextField searchTextField;
+	// Shows which versions are still being read.
+	private JLabel statusLabel;
+	// The names of the files being read. Only used on the event dispatch
+	// thread.
+	private ArrayList<String> loading = new ArrayList<String>();
 
 	/**
 	 * Default constructor. We may want to replace this with a different one.
@@ -58,20 +68,6 @@ public class BibleReaderApp extends JFrame {
 
 		model = new BibleReaderModel(); // For now call the default constructor.
 										// This might change.
-		File kjvFile = new File("kjv.atv");
-		VerseList verses = BibleIO.readBible(kjvFile);
-		Bible kjv = new ArrayListBible(verses);
-		model.addBible(kjv);
-
-		File asvFile = new File("asv.xmv");
-		VerseList verses1 = BibleIO.readBible(asvFile);
-		Bible asv = new ArrayListBible(verses1);
-		model.addBible(asv);
-
-		File esvFile = new File("esv.atv");
-		VerseList verses3 = BibleIO.readBible(esvFile);
-		Bible esv = new ArrayListBible(verses3);
-		model.addBible(esv);
 
 		setupGUI();
 		pack();
@@ -81,6 +77,86 @@ public class BibleReaderApp extends JFrame {
 		// So the application exits when you click the "x".
 		setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 		setVisible(true);
+
+		// Show the window right away and read the versions in the background.
+		// Each one shows up as soon as it has been read.
+		SwingUtilities.invokeLater(new Runnable() {
+			@Override
+			public void run() {
+				loadVersion(new File("kjv.atv"));
+				loadVersion(new File("asv.xmv"));
+				loadVersion(new File("esv.atv"));
+			}
+		});
+	}
+
+	/**
+	 * Read a version from a file on a background thread, and add it to the
+	 * model once it has been read. Several versions can be read at once. This
+	 * must be called on the event dispatch thread.
+	 * 
+	 * @param file
+	 *            The file containing the version.
+	 */
+	private void loadVersion(final File file) {
+		loading.add(file.getName());
+		updateStatus();
+		new SwingWorker<Bible, Void>() {
+			@Override
+			protected Bible doInBackground() {
+				// Read the verses now rather than on the first search, so a
+				// file that can't be read is reported here. Its concordance is
+				// mapped from (or saved to) the file next to it when it is
+				// first needed. The verses are kept in an ArrayListBible, as
+				// they always have been here.
+				LazyBible bible = BibleIO.openBible(file,
+						BibleType.ARRAY_LIST);
+				return bible == null || bible.getNumberOfVerses() == 0 ? null
+						: bible;
+			}
+
+			@Override
+			protected void done() {
+				loading.remove(file.getName());
+				updateStatus();
+				Bible bible;
+				try {
+					bible = get();
+				} catch (InterruptedException e) {
+					bible = null;
+				} catch (ExecutionException e) {
+					e.printStackTrace();
+					bible = null;
+				}
+				if (bible == null) {
+					JOptionPane.showMessageDialog(BibleReaderApp.this,
+							file.getName() + " is not compatable");
+				} else if (model.getBible(bible.getVersion()) != null) {
+					// Make sure that the bible is not already stored.
+					JOptionPane.showMessageDialog(BibleReaderApp.this,
+							"This file has already been added!");
+				} else {
+					model.addBible(bible);
+					// Now update the display.
+					resultView.displayResults();
+				}
+			}
+		}.execute();
+	}
+
+	/**
+	 * Show which versions are still being read.
+	 */
+	private void updateStatus() {
+		if (loading.isEmpty()) {
+			statusLabel.setText("");
+		} else {
+			StringBuilder text = new StringBuilder("Loading");
+			for (String name : loading) {
+				text.append(' ').append(name);
+			}
+			statusLabel.setText(text.toString() + "...");
+		}
 	}
 	
 	// Method that can be used to enhance the look of your application.
@@ -145,22 +221,9 @@ public class BibleReaderApp extends JFrame {
 					return;
 				}
 				File selectedFile = fileChooser.getSelectedFile();
-				VerseList newVerses = BibleIO.readBible(selectedFile);
-				if (newVerses != null) {
-
-					// Make sure that the bile is not already stored.
-					if (model.getBible(newVerses.getVersion()) != null) {
-						JOptionPane.showMessageDialog(BibleReaderApp.this,
-								"This file has already been added!");
-					} else {
-						model.addBible(new ArrayListBible(newVerses));
-						// Now update the display.
-						BibleReaderApp.this.resultView.displayResults();
-					}
-				} else {
-					JOptionPane.showMessageDialog(BibleReaderApp.this,
-							"This file is not compatable");
-				}
+				// The version is added (or a problem is reported) once it has
+				// been read.
+				loadVersion(selectedFile);
 			}
 		});
 
@@ -227,6 +290,10 @@ public class BibleReaderApp extends JFrame {
 		inputpanel.add(searchButton);
 		inputpanel.add(passageButton);
 
+		statusLabel = new JLabel();
+		statusLabel.setName("StatusLabel");
+		inputpanel.add(statusLabel);
+
 		// here we will add the results view
 
 		// Add the two panels to the main frame.
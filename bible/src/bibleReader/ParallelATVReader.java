@@ -0,0 +1,249 @@
+package bibleReader;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import bibleReader.model.BookOfBible;
+import bibleReader.model.VerseSink;
+
+/**
+ * Reads an ATV file held in a buffer (usually the file memory-mapped) on the
+ * threads of a fork-join pool. The verse lines are split at line breaks into
+ * chunks, each chunk is decoded and parsed by its own ATVParser, and then the
+ * verses of the chunks are given to the sink in the order they are in the
+ * file, on the calling thread.
+ *
+ * The result is the same as reading the file with readATV: the lines are
+ * split the way BufferedReader.readLine splits them, and if any line is
+ * corrupt the whole file is rejected. The one difference is that nothing is
+ * given to the sink (apart from the version) when the file is rejected.
+ *
+ * @author Logan
+ */
+class ParallelATVReader {
+	/**
+	 * Files smaller than this are read faster on one thread.
+	 */
+	static final int MINIMUM_SIZE = 1 << 20;
+	// Chunks are at least this many bytes.
+	private static final int MINIMUM_CHUNK_SIZE = 1 << 18;
+	// How many chunks to make for each thread of the pool, so that a slow
+	// chunk doesn't hold the others up.
+	private static final int CHUNKS_PER_THREAD = 4;
+
+	/**
+	 * @param charset
+	 *            the charset a file is in.
+	 * @return true if a file in the charset can be split into lines by looking
+	 *         for the bytes of '\n', so it can be read by read.
+	 */
+	static boolean canRead(Charset charset) {
+		return "UTF-8".equals(charset.name())
+				|| charset.newEncoder().maxBytesPerChar() == 1;
+	}
+
+	/**
+	 * Read an ATV file.
+	 *
+	 * @param buffer
+	 *            the contents of the file.
+	 * @param charset
+	 *            the charset of the file (canRead must be true for it).
+	 * @param sink
+	 *            the sink the version and verses are given to.
+	 * @param pool
+	 *            the pool the chunks are parsed in.
+	 * @return true, or false if there was an error reading the file.
+	 */
+	static boolean read(ByteBuffer buffer, Charset charset, VerseSink sink,
+			ForkJoinPool pool) {
+		int size = buffer.limit();
+		if (size == 0) {
+			// There is no first line, just as readLine would return null.
+			return false;
+		}
+
+		// The first line gives the version.
+		int end = 0;
+		while (end < size && !isLineBreak(buffer.get(end))) {
+			end++;
+		}
+		ATVParser.parseFirstLine(decode(buffer, charset, 0, end), sink);
+		int start = skipLineBreak(buffer, end);
+
+		// Split the rest just after line breaks, into chunks of about the same
+		// size.
+		int length = size - start;
+		int chunks = Math.max(1, Math.min(length / MINIMUM_CHUNK_SIZE,
+				CHUNKS_PER_THREAD * pool.getParallelism()));
+		int[] bounds = new int[chunks + 1];
+		bounds[0] = start;
+		int count = 1;
+		for (int i = 1; i < chunks; i++) {
+			int bound = start + (int) ((long) length * i / chunks);
+			while (bound < size && buffer.get(bound - 1) != '\n') {
+				bound++;
+			}
+			if (bound > bounds[count - 1] && bound < size) {
+				bounds[count++] = bound;
+			}
+		}
+		bounds[count++] = size;
+		bounds = Arrays.copyOf(bounds, count);
+
+		Chunk[] parsed = new Chunk[count - 1];
+		pool.invoke(new ChunkTask(buffer, charset, bounds, parsed, 0,
+				parsed.length, new AtomicBoolean()));
+
+		for (Chunk chunk : parsed) {
+			if (chunk.failed) {
+				return false;
+			}
+		}
+		for (Chunk chunk : parsed) {
+			chunk.sendTo(sink);
+		}
+		return true;
+	}
+
+	// ---------------------------------------------------------------------------------------------
+	// Private helper methods
+
+	private static boolean isLineBreak(byte b) {
+		return b == '\n' || b == '\r';
+	}
+
+	/**
+	 * @return where the next line starts, given where the line break at the
+	 *         end of a line is. A "\r\n" is a single line break.
+	 */
+	private static int skipLineBreak(ByteBuffer buffer, int i) {
+		if (i < buffer.limit() && buffer.get(i) == '\r') {
+			i++;
+			if (i < buffer.limit() && buffer.get(i) == '\n') {
+				i++;
+			}
+		} else if (i < buffer.limit() && buffer.get(i) == '\n') {
+			i++;
+		}
+		return i;
+	}
+
+	private static String decode(ByteBuffer buffer, Charset charset, int start,
+			int end) {
+		ByteBuffer slice = buffer.duplicate();
+		slice.limit(end);
+		slice.position(start);
+		return charset.decode(slice).toString();
+	}
+
+	/**
+	 * The verses parsed from a chunk of the file, kept until they can be given
+	 * to the sink in order.
+	 */
+	private static class Chunk implements VerseSink {
+		private boolean failed;
+		private int size;
+		private BookOfBible[] books = new BookOfBible[256];
+		private int[] chapters = new int[256];
+		private int[] verses = new int[256];
+		private String[] texts = new String[256];
+
+		@Override
+		public void setVersion(String version, String title) {
+			// Only the first line has the version.
+		}
+
+		@Override
+		public void addVerse(BookOfBible book, int chapter, int verse,
+				String text) {
+			if (size == books.length) {
+				books = Arrays.copyOf(books, 2 * size);
+				chapters = Arrays.copyOf(chapters, 2 * size);
+				verses = Arrays.copyOf(verses, 2 * size);
+				texts = Arrays.copyOf(texts, 2 * size);
+			}
+			books[size] = book;
+			chapters[size] = chapter;
+			verses[size] = verse;
+			texts[size] = text;
+			size++;
+		}
+
+		void sendTo(VerseSink sink) {
+			for (int i = 0; i < size; i++) {
+				sink.addVerse(books[i], chapters[i], verses[i], texts[i]);
+			}
+		}
+	}
+
+	/**
+	 * Parses the chunks from first up to last, splitting the range in half
+	 * until there is one chunk left.
+	 */
+	private static class ChunkTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private ByteBuffer buffer;
+		private Charset charset;
+		private int[] bounds;
+		private Chunk[] parsed;
+		private int first;
+		private int last;
+		// Set as soon as any chunk finds a corrupt line, so the rest can stop.
+		private AtomicBoolean failed;
+
+		ChunkTask(ByteBuffer buffer, Charset charset, int[] bounds,
+				Chunk[] parsed, int first, int last, AtomicBoolean failed) {
+			this.buffer = buffer;
+			this.charset = charset;
+			this.bounds = bounds;
+			this.parsed = parsed;
+			this.first = first;
+			this.last = last;
+			this.failed = failed;
+		}
+
+		@Override
+		protected void compute() {
+			if (last - first > 1) {
+				int middle = (first + last) / 2;
+				invokeAll(new ChunkTask(buffer, charset, bounds, parsed, first,
+						middle, failed), new ChunkTask(buffer, charset, bounds,
+						parsed, middle, last, failed));
+				return;
+			}
+			Chunk chunk = new Chunk();
+			parsed[first] = chunk;
+			String text = decode(buffer, charset, bounds[first],
+					bounds[first + 1]);
+			ATVParser parser = new ATVParser();
+			// Split the chunk into lines as readLine would: at "\n", "\r" or
+			// "\r\n".
+			int start = 0;
+			while (start < text.length() && !failed.get()) {
+				int end = start;
+				while (end < text.length() && text.charAt(end) != '\n'
+						&& text.charAt(end) != '\r') {
+					end++;
+				}
+				if (!parser.parseLine(text, start, end, chunk)) {
+					chunk.failed = true;
+					failed.set(true);
+					return;
+				}
+				start = end + 1;
+				if (end + 1 < text.length() && text.charAt(end) == '\r'
+						&& text.charAt(end + 1) == '\n') {
+					start++;
+				}
+			}
+			// Another chunk failed, so the file is rejected anyway.
+			chunk.failed = failed.get();
+		}
+	}
+}
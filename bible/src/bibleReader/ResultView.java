@@ -5,7 +5,6 @@ import java.awt.FlowLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.util.ArrayList;
-import java.util.TreeSet;
 
 import javax.swing.JButton;
 import javax.swing.JEditorPane;
@@ -159,13 +158,8 @@ public class ResultView extends JPanel {
 		StringBuffer buffer = new StringBuffer();
 		buffer.append("<html>");
 
-		int numVersions = model.getNumberOfVersions();
-		String[] versions = new String[model.getNumberOfVersions()];
-		TreeSet<String> set = new TreeSet<String>();
-		for (String s : model.getVersions()) {
-			set.add(s);
-		}
-		versions = (String[]) set.toArray(new String[numVersions]);
+		// The versions are already in alphabetical order.
+		String[] versions = model.getVersions();
 
 		// Create a legend for the data.
 		if (list.size() > 0) {
@@ -176,16 +170,18 @@ public class ResultView extends JPanel {
 			buffer.append("</tr>");
 		}
 
+		// Get the text of every verse in every version at once.
+		String[][] texts = model.getTexts(versions, list);
+
 		// Now parse the data and enter it into the editorPane.
-		for (Reference reference : list) {
+		for (int i = 0; i < list.size(); i++) {
 			// Add the reference to the table column
-			buffer.append("<tr> <td>" + reference.toString() + "</td>");
+			buffer.append("<tr> <td>" + list.get(i).toString() + "</td>");
 
 			// Now loop through the actual versions.
 
-			for (String version : versions) {
-				String verseText = model.getBible(version).getVerseText(
-						reference);
+			for (int j = 0; j < versions.length; j++) {
+				String verseText = texts[j][i];
 				if (verseText == null) {
 					verseText = "";
 
@@ -262,13 +258,9 @@ public class ResultView extends JPanel {
 
 		StringBuffer buf = new StringBuffer();
 
-		int numVersions = model.getNumberOfVersions();
-		String[] versions = new String[model.getNumberOfVersions()];
-		TreeSet<String> set = new TreeSet<String>();
-		for (String s : model.getVersions()) {
-			set.add(s);
-		}
-		versions = (String[]) set.toArray(new String[numVersions]);
+		// The versions are already in alphabetical order.
+		String[] versions = model.getVersions();
+		int numVersions = versions.length;
 
 		buf.append("<table>");
 
@@ -286,11 +278,13 @@ public class ResultView extends JPanel {
 		}
 		buf.append("</tr>");
 		// Display the Verse Text for each reference for each version
+		String[][] texts = model.getTexts(versions, list);
 		buf.append("<tr valign=top>");
 		for (int j = 0; j < numVersions; j++) {
 			buf.append("<td>");
-			for (Reference r : list) {
-				if (model.getBible(versions[j]).getVerseText(r) != null) {
+			for (int k = 0; k < size; k++) {
+				Reference r = list.get(k);
+				if (texts[j][k] != null) {
 
 					if (r.getVerse() == 1) {
 						if (!list.get(0).equals(r)) {
@@ -304,7 +298,7 @@ public class ResultView extends JPanel {
 						buf.append(r.getVerse());
 						buf.append("</sup>");
 					}
-					buf.append(model.getBible(versions[j]).getVerseText(r));
+					buf.append(texts[j][k]);
 				}
 			}
 			buf.append("</td>");
@@ -1,6 +1,9 @@
 package bibleReader.model;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.RandomAccess;
 
 /**
  * A class that stores a version of the Bible.
@@ -13,10 +16,20 @@ public class ArrayListBible implements Bible {
 	// The Fields
 	private String version;
 	private String title;
+	// The verses, sorted by reference.
 	private ArrayList<Verse> theVerses;
+	// A read-only view of the references of theVerses, for binary searching.
+	private ReferenceView theReferences;
+	// Where each book and chapter starts. The ordinal of a verse is its index in theVerses.
+	private ChapterIndex index;
+	// The index used for phrase searches. It is built the first time it is needed.
+	private TrigramIndex searchIndex;
+	// The checksums of the verses, for checking saved concordances.
+	private VerseChecksums checksums;
 
 	/**
-	 * Create a new Bible with the given verses.
+	 * Create a new Bible with the given verses. Verses without a book (which
+	 * can't be put in order or looked up) are left out.
 	 * 
 	 * @param version
 	 *            the version of the Bible (e.g. ESV, KJV, ASV, NIV).
@@ -26,12 +39,23 @@ public class ArrayListBible implements Bible {
 	public ArrayListBible(VerseList verses) {
 		version = verses.getVersion();
 		title = verses.getDescription();
-		theVerses = new ArrayList<Verse>(verses);
+		theVerses = new ArrayList<Verse>(verses.size());
+		for (Verse verse : verses) {
+			if (verse.getReference().getBookOfBible() != null)
+				theVerses.add(verse);
+		}
 
-		// Add dummy book.
-		Verse dummy = new Verse(new Reference(
-				BookOfBible.getBookOfBible("dummy"), 1, 1), "dummy");
-		theVerses.add(dummy);
+		// Everything below relies on the verses being in order. They
+		// almost always are already, so only sort if we have to.
+		for (int i = 1; i < theVerses.size(); i++) {
+			if (theVerses.get(i - 1).compareTo(theVerses.get(i)) > 0) {
+				Collections.sort(theVerses);
+				break;
+			}
+		}
+		theReferences = new ReferenceView();
+		index = buildIndex();
+		checksums = VerseChecksums.of(theVerses);
 	}
 
 	@Override
@@ -51,29 +75,23 @@ public class ArrayListBible implements Bible {
 
 	@Override
 	public boolean isValid(Reference ref) {
-		for (Verse verse : theVerses) {
-			if (verse.getReference().equals(ref))
-				return true;
-		}
-		return false;
+		return indexOf(ref) >= 0;
 	}
 
 	@Override
 	public String getVerseText(Reference r) {
-		for (Verse verse : theVerses) {
-			if (verse.getReference().equals(r))
-				return verse.getText();
-		}
-		return null;
+		int i = indexOf(r);
+		if (i < 0)
+			return null;
+		return theVerses.get(i).getText();
 	}
 
 	@Override
 	public Verse getVerse(Reference r) {
-		for (Verse verse : theVerses) {
-			if (verse.getReference().equals(r))
-				return verse;
-		}
-		return null;
+		int i = indexOf(r);
+		if (i < 0)
+			return null;
+		return theVerses.get(i);
 	}
 
 	@Override
@@ -96,47 +114,26 @@ public class ArrayListBible implements Bible {
 
 	@Override
 	public VerseList getAllVerses() {
-		// Remove the dummy book.
-		theVerses.remove(theVerses.size() - 1);
-		VerseList verseListToReturn = new VerseList(version, title);
-		verseListToReturn.addAll(theVerses);
-		theVerses
-				.add(new Verse(new Reference(BookOfBible.Dummy, 1, 1), "dummy"));
-		return verseListToReturn;
+		return new VerseList(version, title, theVerses);
 	}
 
 	@Override
 	public VerseList getVersesContaining(String phrase) {
-		phrase = phrase.toLowerCase();
-
 		VerseList verseListToReturn = new VerseList(version, title);
 
-		// First check that the string is valid, ie make sure it is not empty.
-		if (phrase.length() < 1)
-			return verseListToReturn;
-
-		// Find verses that contain this string and add them to the VerseList.
-		for (Verse verse : theVerses) {
-			if (verse.getText().toLowerCase().contains(phrase)) {
-				verseListToReturn.add(verse);
-			}
+		// The index takes care of ignoring case and of empty phrases.
+		for (int i : getSearchIndex().search(phrase)) {
+			verseListToReturn.add(theVerses.get(i));
 		}
 		return verseListToReturn;
 	}
 
 	@Override
 	public ReferenceList getReferencesContaining(String phrase) {
-		ReferenceList referenceListToReturn = new ReferenceList();
-		phrase = phrase.toLowerCase();
-		// First check that the string is valid, ie make sure it is not empty.
-		if (phrase.length() < 1)
-			return referenceListToReturn;
-
-		// Find verses that contain this string and add them to the VerseList.
-		for (Verse verse : theVerses) {
-			if (verse.getText().toLowerCase().contains(phrase)) {
-				referenceListToReturn.add(verse.getReference());
-			}
+		int[] matches = getSearchIndex().search(phrase);
+		ReferenceList referenceListToReturn = new ReferenceList(matches.length);
+		for (int i : matches) {
+			referenceListToReturn.add(theVerses.get(i).getReference());
 		}
 		return referenceListToReturn;
 	}
@@ -159,165 +156,86 @@ public class ArrayListBible implements Bible {
 	}
 
 	@Override
-	public int getLastVerseNumber(BookOfBible book, int chapter) {
-		int count = 0;
-		boolean counting = false;
-		for (Verse v : theVerses) {
-			Reference r = v.getReference();
-			if (book == r.getBookOfBible() && chapter == r.getChapter()) {
-				counting = true;
-			}
-			if (counting) {
-				if (!(book == r.getBookOfBible() && chapter == r.getChapter()))
-					return count;
-				else
-					count++;
+	public String[] getVerseTexts(ReferenceList references) {
+		String[] found = new String[references.size()];
+		// Each reference in order can only be at or after the one before it,
+		// so only search the verses from that one on.
+		int from = 0;
+		Reference previous = null;
+		for (int i = 0; i < found.length; i++) {
+			Reference r = references.get(i);
+			if (r == null || r.getBookOfBible() == null)
+				continue;
+			if (previous != null && r.compareTo(previous) < 0)
+				// Out of order, so start again from the beginning.
+				from = 0;
+			previous = r;
+			int j = Collections.binarySearch(
+					theReferences.subList(from, theVerses.size()), r);
+			if (j >= 0) {
+				found[i] = theVerses.get(from + j).getText();
+				from += j;
+			} else {
+				from += -(j + 1);
 			}
-
 		}
-		return -1;
+		return found;
+	}
 
+	@Override
+	public int getLastVerseNumber(BookOfBible book, int chapter) {
+		return index.getLastVerseNumber(book, chapter);
 	}
 
 	@Override
 	public int getLastChapterNumber(BookOfBible book) {
-		for (int i = 0; i < theVerses.size(); i++) {
-			if (book == theVerses.get(i).getReference().getBookOfBible()) {
-				if (theVerses.get(i + 1).getReference().getBookOfBible() != book) {
-					return theVerses.get(i).getReference().getChapter();
-				}
-			}
-		}
-		return -1;
+		return index.getLastChapterNumber(book);
 	}
 
 	@Override
 	public ReferenceList getReferencesInclusive(Reference firstVerse,
 			Reference lastVerse) {
-
-		// Make sure that this is a valid search before searching
-		if (firstVerse == null || lastVerse == null
-				|| firstVerse.getBookOfBible() == null
-				|| lastVerse.getBookOfBible() == null)
+		// Both ends of the passage have to be in this Bible, and (as in
+		// TreeMapBible) a passage that starts and ends at the same verse is
+		// empty.
+		int first = indexOf(firstVerse);
+		int last = indexOf(lastVerse);
+		if (first < 0 || last <= first)
 			return new ReferenceList();
-
-		if (firstVerse.compareTo(lastVerse) > 0) {
-			return new ReferenceList();
-		}
-		// Create the reference list we want to return.
-		ReferenceList list = new ReferenceList();
-
-		boolean recording = false;
-
-		for (Verse v : theVerses) {
-			Reference r = v.getReference();
-
-			if (r.equals(firstVerse))
-				recording = true;
-
-			// If this reference equals the last verse, we should return the
-			// list.
-			// Last verse was already added outside of the loop,
-			// so it does not need to be added.
-			else if (r.equals(lastVerse)) {
-				list.add(r);
-				return list;
-			}
-
-			if (recording)
-				list.add(r);
-		}
-		// If the last verse was never hit, we will an empty reference list
-		return new ReferenceList();
-
+		return referencesBetween(first, last + 1);
 	}
 
 	@Override
 	public ReferenceList getReferencesExclusive(Reference firstVerse,
 			Reference lastVerse) {
-
-		// Make sure that this is a valid search before searching
-		if (firstVerse == null || lastVerse == null
-				|| firstVerse.getBookOfBible() == null
-				|| lastVerse.getBookOfBible() == null)
+		int first = indexOf(firstVerse);
+		int last = indexOf(lastVerse);
+		if (first < 0 || last < 0)
 			return new ReferenceList();
-
-		if (firstVerse.compareTo(lastVerse) > 0) {
-			return new ReferenceList();
-		}
-		// Create the reference list we want to return.
-		ReferenceList list = new ReferenceList();
-
-		boolean recording = false;
-
-		for (Verse v : theVerses) {
-
-			// If this reference equals the first reference, we need to start
-			// recording.
-			if (v.getReference().equals(firstVerse))
-				recording = true;
-
-			else if (v.getReference().equals(lastVerse))
-				return list;
-
-			if (recording)
-				list.add(v.getReference());
-		}
-		// If the last verse was never hit, we will an empty reference list
-		return new ReferenceList();
-
+		return referencesBetween(first, last);
 	}
 
 	@Override
 	public ReferenceList getReferencesForBook(BookOfBible book) {
 		if (book == null)
 			return new ReferenceList();
-
-		boolean recording = false;
-		ReferenceList list = new ReferenceList();
-
-		for (Verse v : theVerses) {
-			Reference r = v.getReference();
-			BookOfBible b = r.getBookOfBible();
-
-			if (b == book && !recording) {
-				recording = true;
-			} else if (recording && b != book) {
-				return list;
-			}
-			if (recording) {
-				list.add(r);
-			}
-		}
-		// If the book was never found, then the list will be empty.
-		return list;
+		return referencesBetween(index.getBookStart(book),
+				index.getBookEnd(book));
 	}
 
 	@Override
 	public ReferenceList getReferencesForChapter(BookOfBible book, int chapter) {
-		if (book == null)
-			return new ReferenceList();
-
-		return getReferencesInclusive(new Reference(book, chapter, 1),
-				new Reference(book, chapter, getLastVerseNumber(book, chapter)));
+		return referencesBetween(index.getChapterStart(book, chapter),
+				index.getChapterEnd(book, chapter));
 	}
 
 	@Override
 	public ReferenceList getReferencesForChapters(BookOfBible book,
 			int chapter1, int chapter2) {
-
-		ReferenceList list = new ReferenceList();
-
-		for (int i = chapter1; i <= chapter2; i++) {
-			ReferenceList l = getReferencesForChapter(book, i);
-
-			if (l.isEmpty())
-				return new ReferenceList();
-			else
-				list.addAll(l);
-		}
-
-		return list;
+		if (!hasChapters(book, chapter1, chapter2))
+			return new ReferenceList();
+		return referencesBetween(index.getChapterStart(book, chapter1),
+				index.getChapterEnd(book, chapter2));
 	}
 
 	@Override
@@ -341,183 +259,46 @@ public class ArrayListBible implements Bible {
 	@Override
 	public VerseList getVersesInclusive(Reference firstVerse,
 			Reference lastVerse) {
-		VerseList list = new VerseList(version, title);
-
-		if (firstVerse.compareTo(lastVerse) > 0)
-			return list;
-
-		if (!isValid(firstVerse) || !isValid(lastVerse))
-			return list;
-
-		int index1 = 0;
-		int size = theVerses.size();
-		int originalSize = size;
-		int searchIndex = size / 2;
-		int compareToIndex;
-
-		boolean keepGoing = true;
-
-		while (keepGoing) {
-			compareToIndex = theVerses.get(searchIndex).getReference()
-					.compareTo(firstVerse);
-
-			if (compareToIndex > 0) {
-				// The size should be cut in half.
-				size = size / 2;
-				// Create the new search index.
-				if (size == 0)
-					searchIndex--;
-				else
-					searchIndex = searchIndex - (size / 2);
-			} else if (compareToIndex < 0) {
-				// The size should be cut in half
-				size = size / 2;
-				// Create the new search index.
-				if (size == 0)
-					searchIndex++;
-				else
-					searchIndex = searchIndex - (size / 2);
-			} else if (compareToIndex == 0) {
-				index1 = searchIndex;
-				keepGoing = false;
-			} else
-				keepGoing = true;
-		}
-		for (int i = index1; i < originalSize; i++) {
-			Verse v = theVerses.get(i);
-			if (v.getReference().equals(lastVerse)) {
-				list.add(v);
-				return list;
-			} else {
-				list.add(v);
-			}
-		}
-		return list;
-
+		// Both ends of the passage have to be in this Bible, and a passage
+		// that starts and ends at the same verse is empty (see
+		// getReferencesInclusive).
+		int first = indexOf(firstVerse);
+		int last = indexOf(lastVerse);
+		if (first < 0 || last <= first)
+			return new VerseList(version, title);
+		return versesBetween(first, last + 1);
 	}
 
 	@Override
 	public VerseList getVersesExclusive(Reference firstVerse,
 			Reference lastVerse) {
-		VerseList list = new VerseList(version, title);
-
-		if (firstVerse.compareTo(lastVerse) > 0)
-			return list;
-
-		if (!isValid(firstVerse) || !isValid(lastVerse))
-			return list;
-
-		int index1 = 0;
-
-		int size = theVerses.size();
-		int originalSize = size;
-		int searchIndex = size / 2;
-		int compareToIndex;
-
-		boolean keepGoing = true;
-
-		while (keepGoing) {
-			// See if the verse we want is on the left or right side of the
-			// size;
-			compareToIndex = theVerses.get(searchIndex).getReference()
-					.compareTo(firstVerse);
-
-			// If this is positive, then the reference of the search index is
-			// after the first verse ie. first verse comes first.
-			// this means that we can elimate the second half
-			if (compareToIndex > 0) {
-				// The size should be cut in half.
-				size = size / 2;
-				// Create the new search index.
-				if (size == 0)
-					searchIndex--;
-				else
-					searchIndex = searchIndex - (size / 2);
-			}
-			// This one is harder. The reference of the search index is
-			// before the first verse.
-			// this means we can elimate the first half.
-			else if (compareToIndex < 0) {
-				// The size should be cut in half
-				size = size / 2;
-				// Create the new search index.
-				if (size == 0)
-					searchIndex++;
-				else
-					searchIndex = searchIndex - (size / 2);
-			} else if (compareToIndex == 0) {
-				index1 = searchIndex;
-				keepGoing = false;
-			} else
-				keepGoing = true;
-		}
-		for (int i = index1; i < originalSize; i++) {
-			Verse v = theVerses.get(i);
-			if (v.getReference().equals(lastVerse)) {
-				return list;
-			} else {
-				list.add(v);
-			}
-		}
-		return list;
+		int first = indexOf(firstVerse);
+		int last = indexOf(lastVerse);
+		if (first < 0 || last < 0)
+			return new VerseList(version, title);
+		return versesBetween(first, last);
 	}
 
 	@Override
 	public VerseList getBook(BookOfBible book) {
-
 		if (book == null)
 			return new VerseList(version, title);
-		boolean recording = false;
-
-		VerseList list = new VerseList(version, title);
-
-		for (Verse v : theVerses) {
-			Reference r = v.getReference();
-			BookOfBible b = r.getBookOfBible();
-
-			if (b == book && !recording)
-				recording = true;
-
-			else if (recording && b != book)
-				return list;
-
-			if (recording)
-				list.add(v);
-		}
-		// If the book was never found, then the list will be empty.
-		return list;
+		return versesBetween(index.getBookStart(book), index.getBookEnd(book));
 	}
 
 	@Override
 	public VerseList getChapter(BookOfBible book, int chapter) {
-		VerseList list = new VerseList(version, title);
-		boolean record = false;
-		for (int i = 0; i < theVerses.size(); i++) {
-			Verse v = theVerses.get(i);
-			Reference r = v.getReference();
-			int c = r.getChapter();
-			if (r.getBookOfBible() == book && c == chapter)
-				record = true;
-			if (record && c != chapter)
-				return list;
-			if (record)
-				list.add(v);
-		}
-		return new VerseList(version, title);
+		return versesBetween(index.getChapterStart(book, chapter),
+				index.getChapterEnd(book, chapter));
 	}
 
 	@Override
 	public VerseList getChapters(BookOfBible book, int chapter1, int chapter2) {
-		VerseList list = new VerseList(version, title);
-		for (int i = chapter1; i <= chapter2; i++) {
-			VerseList l = getChapter(book, i);
-			// If any of the chapters are not valid, then the passage search
-			if (l.isEmpty())
-				return new VerseList(version, title);
-			else
-				list.addAll(l);
-		}
-		return list;
+		// If any of the chapters are not valid, then the passage is invalid.
+		if (!hasChapters(book, chapter1, chapter2))
+			return new VerseList(version, title);
+		return versesBetween(index.getChapterStart(book, chapter1),
+				index.getChapterEnd(book, chapter2));
 	}
 
 	@Override
@@ -535,4 +316,114 @@ public class ArrayListBible implements Bible {
 		Reference end = new Reference(book, chapter2, verse2);
 		return getVersesInclusive(start, end);
 	}
+
+	// ---------------------------------------------------------------------------------------------
+	// Private helper methods
+	// ---------------------------------------------------------------------------------------------
+
+	/**
+	 * Find a verse with a binary search over the (sorted) references.
+	 * 
+	 * @param ref
+	 *            The reference to look for.
+	 * @return the index of the verse in theVerses, or -1 if it isn't in this
+	 *         Bible.
+	 */
+	private int indexOf(Reference ref) {
+		if (ref == null || ref.getBookOfBible() == null)
+			return -1;
+		int i = Collections.binarySearch(theReferences, ref);
+		return i < 0 ? -1 : i;
+	}
+
+	/**
+	 * @return the checksums of the verses, worked out when the Bible was made.
+	 */
+	VerseChecksums getChecksums() {
+		return checksums;
+	}
+
+	/**
+	 * @return roughly how many bytes the search index's lower-cased copy of the text uses, building the index if it
+	 *         hasn't been. 0 means the index lower-cases verses as it searches.
+	 */
+	synchronized long getLowerCaseCacheSize() {
+		return getSearchIndex().getLowerCaseCacheSize();
+	}
+
+	/**
+	 * @return the search index, building it if this is the first search.
+	 */
+	private synchronized TrigramIndex getSearchIndex() {
+		if (searchIndex == null) {
+			String[] texts = new String[theVerses.size()];
+			for (int i = 0; i < texts.length; i++) {
+				texts[i] = theVerses.get(i).getText();
+			}
+			searchIndex = new TrigramIndex(texts);
+		}
+		return searchIndex;
+	}
+
+	/**
+	 * Build the chapter index. The verses must already be in order.
+	 * 
+	 * @return the index.
+	 */
+	private ChapterIndex buildIndex() {
+		return new ChapterIndex(theReferences);
+	}
+
+	/**
+	 * @return true if every chapter from chapter1 to chapter2 is in this Bible
+	 *         (and there is at least one).
+	 */
+	private boolean hasChapters(BookOfBible book, int chapter1, int chapter2) {
+		if (chapter1 > chapter2)
+			return false;
+		for (int chapter = chapter1; chapter <= chapter2; chapter++) {
+			if (index.getVerseCount(book, chapter) == 0)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return the references of the verses with index from (inclusive) to to
+	 *         (exclusive), or an empty list if the range is empty.
+	 */
+	private ReferenceList referencesBetween(int from, int to) {
+		ReferenceList list = new ReferenceList(Math.max(0, to - from));
+		for (int i = from; i < to; i++) {
+			list.add(theVerses.get(i).getReference());
+		}
+		return list;
+	}
+
+	/**
+	 * @return the verses with index from (inclusive) to to (exclusive), or an
+	 *         empty list if the range is empty.
+	 */
+	private VerseList versesBetween(int from, int to) {
+		if (to <= from)
+			return new VerseList(version, title);
+		return new VerseList(version, title, theVerses.subList(from, to));
+	}
+
+	/**
+	 * A list of the references of theVerses, backed by theVerses. It is
+	 * RandomAccess so that Collections.binarySearch uses indexed access.
+	 */
+	private class ReferenceView extends AbstractList<Reference> implements
+			RandomAccess {
+		@Override
+		public Reference get(int i) {
+			return theVerses.get(i).getReference();
+		}
+
+		@Override
+		public int size() {
+			return theVerses.size();
+		}
+	}
 }
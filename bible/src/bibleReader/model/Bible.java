@@ -93,6 +93,15 @@ public interface Bible {
 	 */
 	public abstract VerseList getVerses(ReferenceList references);
 
+	/**
+	 * @param references a ReferenceList of references whose text is being requested. They don't have to be in order,
+	 *            but a list in order (as the model's searches and passages are) can be looked up in a single pass.
+	 * @return an array with each element being the text of the verse with that Reference from this Bible, or null if
+	 *         the particular Reference does not occur in this Bible. Like getVerses, the array is the same size as the
+	 *         references parameter, with the items from each corresponding.
+	 */
+	public abstract String[] getVerseTexts(ReferenceList references);
+
 	/**
 	 * @param book The book.
 	 * @param chapter The chapter.
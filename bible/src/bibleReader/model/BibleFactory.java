@@ -1,18 +1,163 @@
 package bibleReader.model;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ForkJoinPool;
+
 /**
  * A class that allows us to choose one of the Bible implementations as the default one.
- * 
+ *
  * @author Logan
  *
  */
 public class BibleFactory {
 
+	/**
+	 * The Bible implementations that the factory knows how to create.
+	 */
+	public enum BibleType {
+		ARRAY_LIST, TREE_MAP, PACKED
+	}
+
+	// Volatile since Bibles are made on background threads (see BibleReaderApp.loadVersion).
+	private static volatile BibleType defaultType = BibleType.TREE_MAP;
+
+	// Whether createConcordance builds concordances on the common fork-join pool.
+	private static volatile boolean parallelConcordance = Runtime.getRuntime().availableProcessors() > 1;
+
+	// The most memory (in bytes) a Bible may spend on a lower-cased copy of its text for searching.
+	private static volatile long lowerCaseCacheLimit = Long.MAX_VALUE;
+
 	public static Bible createBible(VerseList verses) {
-		//return new ArrayListBible(verses);
-		return new TreeMapBible(verses);
+		return createBible(verses, defaultType);
+	}
+
+	public static Bible createBible(VerseList verses, BibleType type) {
+		switch (type) {
+		case ARRAY_LIST:
+			return new ArrayListBible(verses);
+		case PACKED:
+			return new PackedBible(verses);
+		default:
+			return new TreeMapBible(verses);
+		}
+	}
+
+	/**
+	 * @return the implementation that createBible(VerseList) uses.
+	 */
+	public static BibleType getDefaultType() {
+		return defaultType;
+	}
+
+	/**
+	 * @param type the implementation that createBible(VerseList) should use from now on.
+	 */
+	public static void setDefaultType(BibleType type) {
+		defaultType = type;
+	}
+
+	/**
+	 * @return the most memory (in bytes) one Bible may use to keep a lower-cased copy of its text.
+	 */
+	public static long getLowerCaseCacheLimit() {
+		return lowerCaseCacheLimit;
+	}
+
+	/**
+	 * Searches are faster when a Bible keeps a lower-cased copy of its text (about twice as many bytes as it has
+	 * characters), but on a small machine that memory may matter more. A Bible whose copy would take more than limit
+	 * bytes lower-cases each verse as it searches instead. Use 0 to never keep a copy. This applies to indexes built
+	 * after the call, which happens the first time each Bible is searched.
+	 *
+	 * @param limit the most memory (in bytes) one Bible may use to keep a lower-cased copy of its text.
+	 */
+	public static void setLowerCaseCacheLimit(long limit) {
+		lowerCaseCacheLimit = limit;
 	}
+
+	/**
+	 * Builds the Bible's search index if it hasn't been searched yet.
+	 *
+	 * @param bible the Bible.
+	 * @return roughly how many bytes the Bible uses for its lower-cased copy of its text, or 0 if it doesn't keep one
+	 *         (or isn't one of the implementations createBible makes).
+	 */
+	public static long getLowerCaseCacheSize(Bible bible) {
+		if (bible instanceof ArrayListBible) {
+			return ((ArrayListBible) bible).getLowerCaseCacheSize();
+		} else if (bible instanceof TreeMapBible) {
+			return ((TreeMapBible) bible).getLowerCaseCacheSize();
+		} else if (bible instanceof PackedBible) {
+			return ((PackedBible) bible).getLowerCaseCacheSize();
+		}
+		return 0;
+	}
+
 	public static Concordance createConcordance(Bible bible) {
+		if (parallelConcordance) {
+			return new Concordance(bible, ForkJoinPool.commonPool());
+		}
 		return new Concordance(bible);
 	}
+
+	/**
+	 * Create a concordance for the Bible, using the one saved in the given file (see BibleIO.writeConcordance) if
+	 * there is a good one. If there isn't (see readConcordance), the concordance is built from the Bible as usual.
+	 *
+	 * @param bible the Bible.
+	 * @param file the file the concordance may have been saved in.
+	 * @return the concordance.
+	 */
+	public static Concordance createConcordance(Bible bible, File file) {
+		Concordance concordance = readConcordance(bible, file);
+		return concordance != null ? concordance : createConcordance(bible);
+	}
+
+	/**
+	 * Read a concordance for the Bible saved in the given file (see BibleIO.writeConcordance). The file is
+	 * memory-mapped rather than read, and lookups are served straight from the mapped pages.
+	 *
+	 * @param bible the Bible.
+	 * @param file the file the concordance may have been saved in.
+	 * @return the concordance, or null if the file is missing, damaged, in an old format or was saved for different
+	 *         verses.
+	 */
+	public static Concordance readConcordance(Bible bible, File file) {
+		if (file != null && file.isFile()) {
+			try {
+				RandomAccessFile raf = new RandomAccessFile(file, "r");
+				try {
+					FileChannel channel = raf.getChannel();
+					MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+					return Concordance.read(bible, buffer);
+				} finally {
+					// The mapping stays valid after the file is closed.
+					raf.close();
+				}
+			} catch (IOException e) {
+				// Treat it as missing.
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return true if createConcordance splits the work of building a concordance between several threads.
+	 */
+	public static boolean isParallelConcordance() {
+		return parallelConcordance;
+	}
+
+	/**
+	 * @param parallel true if createConcordance should split the work of building a concordance between the threads
+	 *            of the common fork-join pool, false if it should build it on the calling thread. The default is to
+	 *            build in parallel when there is more than one processor.
+	 */
+	public static void setParallelConcordance(boolean parallel) {
+		parallelConcordance = parallel;
+	}
 }
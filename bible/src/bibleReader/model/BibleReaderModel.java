@@ -2,9 +2,14 @@ package bibleReader.model;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.TreeSet;
-import java.util.regex.Matcher;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.regex.Pattern;
 
 /**
@@ -15,75 +20,139 @@ import java.util.regex.Pattern;
  */
 public class BibleReaderModel implements MultiBibleModel {
 
-	private ArrayList<Bible> theBibles;
-	private HashMap<Bible, Concordance> hm;
+	// The Bibles in the model. A new registry replaces it whenever a Bible is
+	// added, so reading it never needs a lock.
+	private volatile Registry theBibles;
+	// The concordance of each Bible, which is built in the background when the
+	// Bible is added. Until it is done, searches read the verses instead.
+	private HashMap<Bible, Future<Concordance>> hm;
+	// The results of recent searches and passages.
+	private QueryCache cache;
+
+	// The thread concordances are built on. Each build still uses the
+	// fork-join pool (see BibleFactory.createConcordance), so one thread is
+	// enough, and it keeps several new versions from competing for it.
+	private static final ExecutorService indexer = Executors
+			.newSingleThreadExecutor(daemonThreads("Concordance builder"));
+
+	// The threads that search the versions of a model at the same time. They
+	// are shared by every model, and only kept while there is work for them.
+	private static final ExecutorService searcher = Executors
+			.newCachedThreadPool(daemonThreads("Version search"));
+
+	// Whether searches look in all of the versions at once.
+	private static volatile boolean parallelSearching = Runtime.getRuntime()
+			.availableProcessors() > 1;
+
+	// The forms of passage references. getReferencesForPassage parses them with
+	// PassageParser, which accepts exactly what these patterns match, in one
+	// pass and without the regular expression engine.
 	public static final String number = "\\s*(\\d+)\\s*";
 
-	public static Pattern bookPattern = Pattern
+	public static final Pattern bookPattern = Pattern
 			.compile("\\s*((?:1|2|3|I|II|III)\\s*\\w+|(?:\\s*[a-zA-Z]+)+)\\s*(.*)");
 
 	// ---------------------------------------------------------------------------------------------------------
 	// Two examples of patterns that are valid. More are needed.
 	// This one matches things like "3:4-7:3"
-	public static Pattern cvcvPattern = Pattern.compile(number + ":" + number
-			+ "-" + number + ":" + number);
+	public static final Pattern cvcvPattern = Pattern.compile(number + ":"
+			+ number + "-" + number + ":" + number);
 	// This one matches things like "3-5"
-	public static Pattern ccPattern = Pattern.compile(number + "-" + number);
+	public static final Pattern ccPattern = Pattern.compile(number + "-"
+			+ number);
 	// This one matches single chapters
-	public static Pattern cPattern = Pattern.compile(number);
+	public static final Pattern cPattern = Pattern.compile(number);
 	// This one matches Book 12 : 1 - 4
-	public static Pattern cvvPattern = Pattern.compile(number + ":" + number
-			+ "-" + number);
+	public static final Pattern cvvPattern = Pattern.compile(number + ":"
+			+ number + "-" + number);
 	// This one matches the format of a single verse
-	public static Pattern vPattern = Pattern.compile(number + ":" + number);
+	public static final Pattern vPattern = Pattern.compile(number + ":"
+			+ number);
 	// This one matches "chaper-chapter : verse"
-	public static Pattern ccvPattern = Pattern.compile(number + "-" + number
-			+ ":" + number);
+	public static final Pattern ccvPattern = Pattern.compile(number + "-"
+			+ number + ":" + number);
 
 	/**
 	 * Default constructor. You probably need to instantiate objects and do
 	 * other assorted things to set up the model.
 	 */
 	public BibleReaderModel() {
-		theBibles = new ArrayList<Bible>();
-		hm = new HashMap<Bible, Concordance>();
-		for (Bible bible : theBibles) {
-			Concordance c = BibleFactory.createConcordance(bible);
-			hm.put(bible, c);
-		}
+		theBibles = Registry.EMPTY;
+		hm = new HashMap<Bible, Future<Concordance>>();
+		cache = new QueryCache();
+	}
+
+	/**
+	 * @return true if searches look in each of the versions of a model on a
+	 *         thread of its own.
+	 */
+	public static boolean isParallelSearching() {
+		return parallelSearching;
+	}
+
+	/**
+	 * @param parallel
+	 *            true if searches should look in each of the versions of a
+	 *            model on a thread of its own, so a search takes as long as
+	 *            the slowest version rather than all of them together; false if
+	 *            they should look in one version after another. The default is
+	 *            to search in parallel when there is more than one processor.
+	 */
+	public static void setParallelSearching(boolean parallel) {
+		parallelSearching = parallel;
 	}
 
 	@Override
 	public String[] getVersions() {
-		String[] versions = new String[theBibles.size()];
-		for (int i = 0; i < versions.length; i++) {
-			versions[i] = theBibles.get(i).getVersion();
-		}
-		Arrays.sort(versions);
-		return versions;
+		// They are already in order, but the caller may change the array.
+		return theBibles.versions.clone();
 	}
 
 	@Override
 	public int getNumberOfVersions() {
-		return getVersions().length;
+		return theBibles.bibles.length;
 	}
 
 	@Override
 	public void addBible(Bible bible) {
 		if (bible != null) {
-			hm.put(bible, hm.get(bible));
-			theBibles.add(bible);
+			synchronized (this) {
+				theBibles = theBibles.with(bible);
+			}
+			// Searches may find more now.
+			cache.clear();
+			// Start building the concordance now, without waiting for it. A
+			// LazyBible isn't read until it is used, so its concordance waits
+			// until then too.
+			if (!(bible instanceof LazyBible)) {
+				getConcordance(bible);
+			}
 		}
 	}
 
+	/**
+	 * @param version
+	 *            a version in the model.
+	 * @return true if the concordance of the version has been built, so word
+	 *         searches in it no longer read every verse. Asking doesn't start
+	 *         building it.
+	 */
+	public boolean isConcordanceReady(String version) {
+		Bible bible = getBible(version);
+		return bible != null && getBuiltConcordance(bible) != null;
+	}
+
+	/**
+	 * @return the cache of the results of recent searches and passages, which
+	 *         has the numbers of hits, misses and evictions.
+	 */
+	public QueryCache getQueryCache() {
+		return cache;
+	}
+
 	@Override
 	public Bible getBible(String version) {
-		for (Bible bible : theBibles) {
-			if (bible.getVersion().equals(version)) {
-				return bible;
-			}
-		}
-		return null;
+		return theBibles.byVersion.get(version);
 	}
 
 	@Override
@@ -95,8 +164,6 @@ public class BibleReaderModel implements MultiBibleModel {
 
 	}
 
-	// TODO Implement me: Stage 7
-
 	@Override
 	public String getText(String version, Reference reference) {
 		Bible bible = getBible(version);
@@ -109,128 +176,478 @@ public class BibleReaderModel implements MultiBibleModel {
 	}
 
 	@Override
-	public ReferenceList getReferencesContaining(String words) {
-		TreeSet<Reference> list = new TreeSet<Reference>();
-		for (Bible bible : theBibles) {
-			list.addAll(bible.getReferencesContaining(words));
+	public String[][] getTexts(String[] versions, ReferenceList references) {
+		String[][] texts = new String[versions.length][];
+		for (int v = 0; v < versions.length; v++) {
+			Bible bible = getBible(versions[v]);
+			if (bible == null) {
+				texts[v] = new String[references.size()];
+			} else {
+				texts[v] = bible.getVerseTexts(references);
+			}
 		}
-		
-		return new ReferenceList(list);
+		return texts;
 	}
 
 	@Override
-	public ReferenceList getReferencesContainingWord(String word) {
-		TreeSet<Reference> list = new TreeSet<Reference>();
-		if (!word.equals("")) {
-			for (Concordance c : hm.values()) {
-				list.addAll(c.getReferencesContaining(word));
-			}
+	public ReferenceList getReferencesContaining(final String words) {
+		// The search ignores case.
+		QueryCache.Key key = new QueryCache.Key(ResultType.SEARCH,
+				"getReferencesContaining", words.toLowerCase());
+		ReferenceList found = cache.get(key);
+		if (found == null) {
+			int generation = cache.getGeneration();
+			found = search(new VersionSearch() {
+				@Override
+				public ReferenceList search(Bible bible) {
+					return bible.getReferencesContaining(words);
+				}
+			});
+			cache.put(key, found, generation);
+		}
+		return found;
+	}
+
+	@Override
+	public ReferenceList getReferencesContainingWord(final String word) {
+		if (word.equals("")) {
+			return new ReferenceList();
 		}
-		return new ReferenceList(list);
+		QueryCache.Key key = new QueryCache.Key(ResultType.SEARCH,
+				"getReferencesContainingWord", word.toLowerCase().trim());
+		ReferenceList found = cache.get(key);
+		if (found == null) {
+			int generation = cache.getGeneration();
+			found = search(new VersionSearch() {
+				@Override
+				public ReferenceList search(Bible bible) {
+					Concordance concordance = getConcordance(bible);
+					if (concordance != null) {
+						return concordance.getReferencesContaining(word);
+					}
+					return scan(bible, word);
+				}
+			});
+			cache.put(key, found, generation);
+		}
+		return found;
 	}
 
 	@Override
 	public ReferenceList getReferencesContainingAllWords(String words) {
-		return new ReferenceList();
+		final ArrayList<String> wordList = Concordance.extractWords(words);
+		if (wordList.isEmpty()) {
+			return new ReferenceList();
+		}
+		// The words are all that matter, not how they were typed.
+		QueryCache.Key key = new QueryCache.Key(ResultType.SEARCH,
+				"getReferencesContainingAllWords", wordList.toString());
+		ReferenceList found = cache.get(key);
+		if (found == null) {
+			int generation = cache.getGeneration();
+			// A verse counts if it has all of the words in at least one
+			// version.
+			found = search(new VersionSearch() {
+				@Override
+				public ReferenceList search(Bible bible) {
+					Concordance concordance = getConcordance(bible);
+					if (concordance != null) {
+						return concordance.getReferencesContainingAll(wordList);
+					}
+					return scan(bible, wordList, new ArrayList<String>());
+				}
+			});
+			cache.put(key, found, generation);
+		}
+		return found;
 	}
 
 	@Override
 	public ReferenceList getReferencesContainingAllWordsAndPhrases(String words) {
-		return new ReferenceList();
+		final ArrayList<String> wordList = new ArrayList<String>();
+		final ArrayList<String> phrases = new ArrayList<String>();
+		// Every other piece between double quotes is a phrase.
+		String[] pieces = words.split("\"", -1);
+		for (int i = 0; i < pieces.length; i++) {
+			if (i % 2 == 0) {
+				wordList.addAll(Concordance.extractWords(pieces[i]));
+			} else if (!Concordance.extractWords(pieces[i]).isEmpty()) {
+				phrases.add(pieces[i].trim());
+			}
+		}
+		if (wordList.isEmpty() && phrases.isEmpty()) {
+			return new ReferenceList();
+		}
+		// Punctuation in a phrase matters, but case doesn't.
+		QueryCache.Key key = new QueryCache.Key(ResultType.SEARCH,
+				"getReferencesContainingAllWordsAndPhrases", words.toLowerCase());
+		ReferenceList found = cache.get(key);
+		if (found == null) {
+			int generation = cache.getGeneration();
+			found = findWordsAndPhrases(wordList, phrases);
+			cache.put(key, found, generation);
+		}
+		return found;
+	}
+
+	private ReferenceList findWordsAndPhrases(final ArrayList<String> wordList,
+			final ArrayList<String> phrases) {
+		// The concordance only looks at the words of a phrase, so if a phrase
+		// has punctuation in it, the verses found are checked for the phrase
+		// itself. Those phrases are picked out (and lower-cased) once here
+		// rather than for every verse of every version.
+		final ArrayList<String> punctuated = new ArrayList<String>();
+		for (String phrase : phrases) {
+			if (hasPunctuation(phrase)) {
+				punctuated.add(phrase.toLowerCase());
+			}
+		}
+		return search(new VersionSearch() {
+			@Override
+			public ReferenceList search(Bible bible) {
+				Concordance concordance = getConcordance(bible);
+				ReferenceList found = concordance != null ? concordance
+						.getReferencesContainingAll(wordList, phrases) : scan(
+						bible, wordList, phrases);
+				if (punctuated.isEmpty()) {
+					return found;
+				}
+				ReferenceList list = new ReferenceList(found.size());
+				for (Reference ref : found) {
+					if (containsAll(bible.getVerseText(ref).toLowerCase(),
+							punctuated)) {
+						list.add(ref);
+					}
+				}
+				return list;
+			}
+		});
+	}
+
+	/**
+	 * @return true if the phrase has punctuation (.,;:!?) in it.
+	 */
+	private static boolean hasPunctuation(String phrase) {
+		for (int i = 0; i < phrase.length(); i++) {
+			if (".,;:!?".indexOf(phrase.charAt(i)) >= 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return true if text contains every one of the phrases.
+	 */
+	private static boolean containsAll(String text, ArrayList<String> phrases) {
+		for (String phrase : phrases) {
+			if (!text.contains(phrase)) {
+				return false;
+			}
+		}
+		return true;
 	}
 
 	@Override
 	public ReferenceList getReferencesForPassage(String reference) {
+		// The reference is used exactly as given, since white space can matter
+		// to PassageParser (a line break can make "John 3" something else).
+		// So "John 3", " John 3" and "john 3" are kept separately.
+		QueryCache.Key key = new QueryCache.Key(ResultType.PASSAGE,
+				"getReferencesForPassage", reference);
+		ReferenceList found = cache.get(key);
+		if (found == null) {
+			int generation = cache.getGeneration();
+			found = findPassage(reference);
+			cache.put(key, found, generation);
+		}
+		return found;
+	}
 
-		String theRest = null;
-		String book = null;
-		int chapter1, chapter2, verse1, verse2;
-
-		// First, split the input into the book and the rest, if possible.
-		Matcher m = bookPattern.matcher(reference);
-
-		// Now see if it matches.
-		if (m.matches()) {
-			// It matches. Good.
-			book = m.group(1);
-			theRest = m.group(2);
-			// Now we need to parse theRest to see what format it is.
-			// Notice that I have omitted some of the cases.
-			// You should think about whether or not the order the
-			// possibilities occurs matters if you use this and add more cases.
-
-			// "Book"
-			if (theRest.length() == 0) {
-				// It looks like they want a whole book.
-				// So now you need to do something about it.
-
-				// Return the a reference list of an entire book
-
-				return getBookReferences(BookOfBible.getBookOfBible(book));
-
-				// Book 1 : 1 - 2 : 2 - Works
-			} else if ((m = cvcvPattern.matcher(theRest)).matches()) {
-				chapter1 = Integer.parseInt(m.group(1));
-				verse1 = Integer.parseInt(m.group(2));
-				chapter2 = Integer.parseInt(m.group(3));
-				verse2 = Integer.parseInt(m.group(4));
-				// They want something of the form book
-				// chapter1:verse1-chapter2:verse2
-				// So now you need to do something about it.
-
-				return getPassageReferences(BookOfBible.getBookOfBible(book),
-						chapter1, verse1, chapter2, verse2);
-
-				// Single chapter
-			} else if ((m = ccPattern.matcher(theRest)).matches()) {
-				chapter1 = Integer.parseInt(m.group(1));
-				chapter2 = Integer.parseInt(m.group(2));
-				// They want something of the form book chapter1-chapter2
-				// So now you need to do something about it.
-				return getChapterReferences(BookOfBible.getBookOfBible(book),
-						chapter1, chapter2);
-
-			} else if ((m = cPattern.matcher(theRest)).matches()) {
-				chapter1 = Integer.parseInt(m.group(1));
-				// They want something of the form book chapter1-chapter2
-				// So now you need to do something about it.
-				return getChapterReferences(BookOfBible.getBookOfBible(book),
-						chapter1);
-			} else if ((m = cvvPattern.matcher(theRest)).matches()) {
-				chapter1 = Integer.parseInt(m.group(1));
-				verse1 = Integer.parseInt(m.group(2));
-				verse2 = Integer.parseInt(m.group(3));
-
-				return getPassageReferences(BookOfBible.getBookOfBible(book),
-						chapter1, verse1, verse2);
-
-			} else if ((m = vPattern.matcher(theRest)).matches()) {
-				chapter1 = Integer.parseInt(m.group(1));
-				verse1 = Integer.parseInt(m.group(2));
-
-				return getVerseReferences(BookOfBible.getBookOfBible(book),
-						chapter1, verse1);
-			} else if ((m = ccvPattern.matcher(theRest)).matches()) {
-				chapter1 = Integer.parseInt(m.group(1));
-				chapter2 = Integer.parseInt(m.group(2));
-				verse2 = Integer.parseInt(m.group(3));
-
-				return getPassageReferences(BookOfBible.getBookOfBible(book),
-						chapter1, 1, chapter2, verse2);
+	private ReferenceList findPassage(String reference) {
+		final ArrayList<PassageParser> passages = PassageParser
+				.parseAll(reference);
+		if (passages == null) {
+			// It isn't one of the forms we know.
+			return new ReferenceList();
+		}
+		boolean oneVerse = passages.size() == 1
+				&& passages.get(0).getForm() == PassageParser.Form.VERSE;
+		// Every passage is looked up in a version before going on to the next
+		// version, so there is one search of the versions however many
+		// passages there are.
+		return search(new VersionSearch() {
+			@Override
+			public ReferenceList search(Bible bible) {
+				if (passages.size() == 1) {
+					return passages.get(0).getReferences(bible);
+				}
+				ReferenceList[] found = new ReferenceList[passages.size()];
+				for (int i = 0; i < found.length; i++) {
+					found[i] = passages.get(i).getReferences(bible);
+				}
+				return ReferenceList.union(found);
 			}
+		}, parallelSearching && !oneVerse);
+	}
 
-			else {
-				// They want something else that I haven't taken into account
-				// yet
+	/**
+	 * A search that is done in each version of the model in turn (or at once).
+	 */
+	private interface VersionSearch {
+		/**
+		 * @return the references found in the given version, in order.
+		 */
+		ReferenceList search(Bible bible);
+	}
 
-				// For test purposes
-				return new ReferenceList();
+	/**
+	 * The Bibles in a model at some point. It is never changed once it is made
+	 * ({@link #with(Bible)} makes a new one with another Bible), so it can be
+	 * read from any thread without locking, and everything the model looks up
+	 * about its versions is worked out once rather than on every call.
+	 */
+	private static final class Registry {
+		static final Registry EMPTY = new Registry(new Bible[0]);
+
+		// In the order they were added. Searches must not change it.
+		final Bible[] bibles;
+		// The versions of the Bibles, in alphabetical order.
+		final String[] versions;
+		// The Bible with each version. If more than one has the same version,
+		// the first one added.
+		final HashMap<String, Bible> byVersion;
+
+		private Registry(Bible[] bibles) {
+			this.bibles = bibles;
+			versions = new String[bibles.length];
+			byVersion = new HashMap<String, Bible>();
+			for (int i = 0; i < bibles.length; i++) {
+				versions[i] = bibles[i].getVersion();
+				if (!byVersion.containsKey(versions[i])) {
+					byVersion.put(versions[i], bibles[i]);
+				}
 			}
-		} else {
-			// It doesn't match the overall format of "BOOK Stuff".
+			Arrays.sort(versions);
+		}
 
-			return new ReferenceList();
+		/**
+		 * @return a registry with the Bibles in this one and the given one.
+		 */
+		Registry with(Bible bible) {
+			Bible[] more = Arrays.copyOf(bibles, bibles.length + 1);
+			more[bibles.length] = bible;
+			return new Registry(more);
+		}
+	}
+
+	private ReferenceList search(VersionSearch search) {
+		return search(search, parallelSearching);
+	}
+
+	/**
+	 * Do a search in every version and combine what is found in each.
+	 * 
+	 * @param search
+	 *            the search.
+	 * @param parallel
+	 *            true to search each version on a thread of its own. The first
+	 *            version is searched on the calling thread, since it would
+	 *            otherwise just wait. Use false for a search as quick as
+	 *            looking up one verse, which takes less time than handing it
+	 *            to another thread.
+	 * @return the references found in any of the versions, in order and
+	 *         without duplicates (see ReferenceList.union).
+	 */
+	private ReferenceList search(final VersionSearch search, boolean parallel) {
+		Bible[] bibles = theBibles.bibles;
+		ReferenceList[] found = new ReferenceList[bibles.length];
+		if (!parallel || bibles.length < 2) {
+			for (int i = 0; i < bibles.length; i++) {
+				found[i] = search.search(bibles[i]);
+			}
+			return ReferenceList.union(found);
+		}
+		ArrayList<Future<ReferenceList>> futures = new ArrayList<Future<ReferenceList>>();
+		for (int i = 1; i < bibles.length; i++) {
+			final Bible bible = bibles[i];
+			futures.add(searcher.submit(new Callable<ReferenceList>() {
+				@Override
+				public ReferenceList call() {
+					return search.search(bible);
+				}
+			}));
+		}
+		found[0] = search.search(bibles[0]);
+		for (int i = 1; i < bibles.length; i++) {
+			found[i] = waitFor(futures.get(i - 1));
+		}
+		return ReferenceList.union(found);
+	}
+
+	/**
+	 * Wait for a search of one version to finish, even if this thread is
+	 * interrupted (it is interrupted again afterwards), since searches are
+	 * quick and the results of every version are needed.
+	 */
+	private static ReferenceList waitFor(Future<ReferenceList> future) {
+		boolean interrupted = false;
+		try {
+			while (true) {
+				try {
+					return future.get();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				} catch (ExecutionException e) {
+					// Throw whatever the search threw, as if it were done here.
+					Throwable cause = e.getCause();
+					if (cause instanceof RuntimeException) {
+						throw (RuntimeException) cause;
+					}
+					if (cause instanceof Error) {
+						throw (Error) cause;
+					}
+					throw new RuntimeException(cause);
+				}
+			}
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private static ThreadFactory daemonThreads(final String name) {
+		return new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, name);
+				// Don't keep the application running just for these.
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+	}
+
+	/**
+	 * Get the concordance for a Bible if it is ready. If it isn't, start
+	 * building it in the background (unless that has already been done), but
+	 * don't wait for it.
+	 * 
+	 * @param bible
+	 *            one of the Bibles in the model.
+	 * @return the concordance for the Bible, or null if it isn't ready yet (or
+	 *         couldn't be built).
+	 */
+	private synchronized Concordance getConcordance(final Bible bible) {
+		Concordance concordance = getBuiltConcordance(bible);
+		Future<Concordance> future = hm.get(bible);
+		if (bible instanceof LazyBible) {
+			// It is kept with the Bible, so both can be dropped together, and
+			// it is built again if they were. If it couldn't be built, it
+			// isn't tried again until the Bible has been read again.
+			final LazyBible lazy = (LazyBible) bible;
+			if (concordance == null && (future == null || future.isDone())
+					&& !lazy.hasConcordanceFailed()) {
+				hm.put(bible, indexer.submit(new Callable<Concordance>() {
+					@Override
+					public Concordance call() {
+						lazy.getConcordance();
+						// Don't keep it here as well.
+						return null;
+					}
+				}));
+			}
+		} else if (future == null) {
+			hm.put(bible, indexer.submit(new Callable<Concordance>() {
+				@Override
+				public Concordance call() {
+					return BibleFactory.createConcordance(bible);
+				}
+			}));
+		}
+		return concordance;
+	}
+
+	/**
+	 * Get the concordance for a Bible if it has been built, without starting
+	 * to build it. This never waits for a LazyBible to be read, so the model
+	 * isn't locked while one is.
+	 * 
+	 * @param bible
+	 *            one of the Bibles in the model.
+	 * @return the concordance for the Bible, or null if it isn't ready yet (or
+	 *         couldn't be built).
+	 */
+	private synchronized Concordance getBuiltConcordance(Bible bible) {
+		if (bible instanceof LazyBible) {
+			return ((LazyBible) bible).getConcordanceIfBuilt();
+		}
+		Future<Concordance> future = hm.get(bible);
+		if (future == null || !future.isDone()) {
+			return null;
+		}
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			return null;
+		} catch (ExecutionException e) {
+			// Keep reading the verses instead.
+			return null;
+		}
+	}
+
+	/**
+	 * Find the verses of a Bible that contain a word by reading all of them,
+	 * for when its concordance isn't ready. The same verses are found as with
+	 * the concordance.
+	 */
+	private static ReferenceList scan(Bible bible, String word) {
+		String lowerCaseWord = word.toLowerCase().trim();
+		ReferenceList list = new ReferenceList();
+		for (Verse verse : bible.getAllVerses()) {
+			if (ConcordanceBuilder.containsWord(verse.getText(), lowerCaseWord)) {
+				list.add(verse.getReference());
+			}
+		}
+		return list;
+	}
+
+	/**
+	 * Find the verses of a Bible that contain all of the words and phrases by
+	 * reading all of them, for when its concordance isn't ready. The same
+	 * verses are found as with Concordance.getReferencesContainingAll.
+	 */
+	private static ReferenceList scan(Bible bible, ArrayList<String> words,
+			ArrayList<String> phrases) {
+		ArrayList<ArrayList<String>> wanted = new ArrayList<ArrayList<String>>();
+		for (String word : words) {
+			ArrayList<String> single = new ArrayList<String>();
+			single.add(word.toLowerCase().trim());
+			wanted.add(single);
+		}
+		for (String phrase : phrases) {
+			ArrayList<String> wordsOfPhrase = Concordance.extractWords(phrase);
+			if (!wordsOfPhrase.isEmpty()) {
+				wanted.add(wordsOfPhrase);
+			}
+		}
+		ReferenceList list = new ReferenceList();
+		if (wanted.isEmpty()) {
+			return list;
 		}
+		for (Verse verse : bible.getAllVerses()) {
+			ArrayList<String> verseWords = Concordance.extractWords(verse
+					.getText());
+			boolean found = true;
+			for (int i = 0; i < wanted.size() && found; i++) {
+				found = Collections.indexOfSubList(verseWords, wanted.get(i)) >= 0;
+			}
+			if (found) {
+				list.add(verse.getReference());
+			}
+		}
+		return list;
 	}
 
 	// -----------------------------------------------------------------------------
@@ -263,96 +680,86 @@ public class BibleReaderModel implements MultiBibleModel {
 	// -----------------------------------------------------------------------------
 
 	@Override
-	public ReferenceList getVerseReferences(BookOfBible book, int chapter,
-			int verse) {
-		TreeSet<Reference> referenceSet = new TreeSet<Reference>();
-
-		for (Bible bible : theBibles) {
-			Verse v = bible.getVerse(book, chapter, verse);
-			if (v != null)
-				referenceSet.add(v.getReference());
-
-		}
-
-		return new ReferenceList(referenceSet);
+	public ReferenceList getVerseReferences(final BookOfBible book,
+			final int chapter, final int verse) {
+		return search(new VersionSearch() {
+			@Override
+			public ReferenceList search(Bible bible) {
+				ReferenceList list = new ReferenceList(1);
+				Verse v = bible.getVerse(book, chapter, verse);
+				if (v != null)
+					list.add(v.getReference());
+				return list;
+			}
+		}, false);
 	}
 
 	@Override
-	public ReferenceList getPassageReferences(Reference startVerse,
-			Reference endVerse) {
-
-		TreeSet<Reference> referenceSet = new TreeSet<Reference>();
-
-		for (Bible bible : theBibles) {
-			referenceSet.addAll(bible.getReferencesInclusive(startVerse,
-					endVerse));
-		}
-
-		return new ReferenceList(referenceSet);
+	public ReferenceList getPassageReferences(final Reference startVerse,
+			final Reference endVerse) {
+		return search(new VersionSearch() {
+			@Override
+			public ReferenceList search(Bible bible) {
+				return bible.getReferencesInclusive(startVerse, endVerse);
+			}
+		});
 	}
 
 	@Override
-	public ReferenceList getBookReferences(BookOfBible book) {
-		TreeSet<Reference> referenceSet = new TreeSet<Reference>();
-
-		for (Bible bible : theBibles) {
-			referenceSet.addAll(bible.getReferencesForBook(book));
-		}
-
-		return new ReferenceList(referenceSet);
+	public ReferenceList getBookReferences(final BookOfBible book) {
+		return search(new VersionSearch() {
+			@Override
+			public ReferenceList search(Bible bible) {
+				return bible.getReferencesForBook(book);
+			}
+		});
 	}
 
 	@Override
-	public ReferenceList getChapterReferences(BookOfBible book, int chapter) {
-		TreeSet<Reference> referenceSet = new TreeSet<Reference>();
-
-		for (Bible bible : theBibles) {
-			referenceSet.addAll(bible.getReferencesForChapter(book, chapter));
-		}
-
-		return new ReferenceList(referenceSet);
+	public ReferenceList getChapterReferences(final BookOfBible book,
+			final int chapter) {
+		return search(new VersionSearch() {
+			@Override
+			public ReferenceList search(Bible bible) {
+				return bible.getReferencesForChapter(book, chapter);
+			}
+		});
 	}
 
 	@Override
-	public ReferenceList getChapterReferences(BookOfBible book, int chapter1,
-			int chapter2) {
-		// TODO Implement me: Stage 7
-		TreeSet<Reference> referenceSet = new TreeSet<Reference>();
-
-		for (Bible bible : theBibles) {
-			referenceSet.addAll(bible.getReferencesForChapters(book, chapter1,
-					chapter2));
-		}
-
-		return new ReferenceList(referenceSet);
+	public ReferenceList getChapterReferences(final BookOfBible book,
+			final int chapter1, final int chapter2) {
+		return search(new VersionSearch() {
+			@Override
+			public ReferenceList search(Bible bible) {
+				return bible.getReferencesForChapters(book, chapter1, chapter2);
+			}
+		});
 	}
 
 	@Override
-	public ReferenceList getPassageReferences(BookOfBible book, int chapter,
-			int verse1, int verse2) {
-
-		TreeSet<Reference> referenceSet = new TreeSet<Reference>();
-
-		for (Bible bible : theBibles) {
-			referenceSet.addAll(bible.getReferencesForPassage(book, chapter,
-					verse1, verse2));
-		}
-
-		return new ReferenceList(referenceSet);
+	public ReferenceList getPassageReferences(final BookOfBible book,
+			final int chapter, final int verse1, final int verse2) {
+		return search(new VersionSearch() {
+			@Override
+			public ReferenceList search(Bible bible) {
+				return bible.getReferencesForPassage(book, chapter, verse1,
+						verse2);
+			}
+		});
 	}
 
 	@Override
-	public ReferenceList getPassageReferences(BookOfBible book, int chapter1,
-			int verse1, int chapter2, int verse2) {
-		// TODO Implement me: Stage 7
-		TreeSet<Reference> referenceSet = new TreeSet<Reference>();
-
-		for (Bible bible : theBibles) {
-			referenceSet.addAll(bible.getReferencesForPassage(book, chapter1,
-					verse1, chapter2, verse2));
-		}
-
-		return new ReferenceList(referenceSet);
+	public ReferenceList getPassageReferences(final BookOfBible book,
+			final int chapter1, final int verse1, final int chapter2,
+			final int verse2) {
+		return search(new VersionSearch() {
+			@Override
+			public ReferenceList search(Bible bible) {
+				return bible.getReferencesForPassage(book, chapter1, verse1,
+						chapter2, verse2);
+			}
+		});
 	}
 
 	public static ArrayList<String> extractWords(String text) {
@@ -0,0 +1,28 @@
+package bibleReader.model;
+
+/**
+ * Somewhere a version of the Bible can be read from, such as a file. A LazyBible uses one to read its version when it
+ * is first needed, and again if it has been dropped to free memory.
+ *
+ * @author Logan
+ */
+public interface BibleSource {
+
+	/**
+	 * Read the version.
+	 *
+	 * @return the Bible, or null if it could not be read.
+	 */
+	Bible load();
+
+	/**
+	 * Make the concordance of a Bible this source has read. By default it is built from the verses, but a source
+	 * that can save it (see BibleIO.openBible) may read it from there instead.
+	 *
+	 * @param bible the Bible, as returned by load.
+	 * @return the concordance.
+	 */
+	default Concordance loadConcordance(Bible bible) {
+		return BibleFactory.createConcordance(bible);
+	}
+}
@@ -87,9 +87,42 @@ public enum BookOfBible {
 	 * @return The corresponding BookOfBible object, or null if it isn't listed.
 	 */
 	public static BookOfBible getBookOfBible(String abbrev) {
-		String abb = abbrev.toLowerCase().replaceAll("\\s", "");
-		BookOfBible book = theBooks.get(abb);
-		return book;
+		for (int i = 0; i < abbrev.length(); i++) {
+			if (abbrev.charAt(i) >= 128) {
+				// Leave anything beyond ASCII to toLowerCase.
+				String abb = abbrev.toLowerCase().replaceAll("\\s", "");
+				BookOfBible book = theBooks.get(abb);
+				return book;
+			}
+		}
+		return getBookOfBible(abbrev, 0, abbrev.length());
+	}
+
+	/**
+	 * Look up the abbreviation held in part of a string, ignoring case and white space just as getBookOfBible(String)
+	 * does, but by walking down a trie of the abbreviations instead of making a new String.
+	 *
+	 * @param text The string holding the abbreviation.
+	 * @param start Where the abbreviation starts.
+	 * @param end Where the abbreviation ends.
+	 * @return The corresponding BookOfBible object, or null if it isn't listed.
+	 */
+	public static BookOfBible getBookOfBible(CharSequence text, int start, int end) {
+		int node = 0;
+		for (int i = start; i < end; i++) {
+			char c = text.charAt(i);
+			if (c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r') {
+				continue;
+			}
+			if (c >= 'A' && c <= 'Z') {
+				c += 'a' - 'A';
+			}
+			int slot = c >= 'a' && c <= 'z' ? c - 'a' : c >= '0' && c <= '9' ? 26 + c - '0' : -1;
+			if (slot < 0 || (node = trie[node * TRIE_WIDTH + slot]) == 0) {
+				return null;
+			}
+		}
+		return trieBooks[node];
 	}
 
 	/*
@@ -98,6 +131,15 @@ public enum BookOfBible {
 	 */
 	private static TreeMap<String, BookOfBible>	theBooks	= null;
 
+	/*
+	 * The same abbreviations as a trie over the letters and digits (the only characters in them). trie[TRIE_WIDTH * n
+	 * + slot] is the node reached from node n by the character in that slot, or 0 if there isn't one (node 0 is the
+	 * root, which nothing leads back to), and trieBooks[n] is the book whose abbreviation ends at node n.
+	 */
+	private static final int					TRIE_WIDTH	= 36;
+	private static int[]						trie;
+	private static BookOfBible[]				trieBooks;
+
 	static {
 		theBooks = new TreeMap<String, BookOfBible>();
 		theBooks.clear();
@@ -267,5 +309,25 @@ public enum BookOfBible {
 		theBooks.put("rev", Revelation);
 		theBooks.put("rv", Revelation);
 		theBooks.put("revelation", Revelation);
+
+		int size = 1;
+		for (String abb : theBooks.keySet()) {
+			size += abb.length();
+		}
+		trie = new int[size * TRIE_WIDTH];
+		trieBooks = new BookOfBible[size];
+		int nodes = 1;
+		for (String abb : theBooks.keySet()) {
+			int node = 0;
+			for (int i = 0; i < abb.length(); i++) {
+				char c = abb.charAt(i);
+				int slot = c >= 'a' ? c - 'a' : 26 + c - '0';
+				if (trie[node * TRIE_WIDTH + slot] == 0) {
+					trie[node * TRIE_WIDTH + slot] = nodes++;
+				}
+				node = trie[node * TRIE_WIDTH + slot];
+			}
+			trieBooks[node] = theBooks.get(abb);
+		}
 	}
 }
@@ -0,0 +1,265 @@
+package bibleReader.model;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * An index from book and chapter to the verses of that chapter for one version of the Bible. It is built once from
+ * the sorted references of the version, where the position of a reference in that sorted order is the ordinal of the
+ * verse. After that, every question about where a book or chapter starts, how many verses it has, or what its last
+ * chapter and verse numbers are is answered with a couple of array lookups.
+ *
+ * Chapters numbered from 0 to Reference.MAX_PACKED have a slot in the arrays. The readers accept any chapter number,
+ * so the few chapters outside that range are kept in a separate sorted table and found with a binary search.
+ *
+ * @author Logan
+ */
+class ChapterIndex {
+	private static final int	NUMBER_OF_BOOKS	= BookOfBible.values().length;
+
+	// bookFirst[b] is the ordinal of the first verse at or after book b, so book b is [bookFirst[b], bookFirst[b+1]).
+	private int[]				bookFirst;
+	// The highest chapter number of each book. Only meaningful if the book is present.
+	private int[]				lastChapter;
+	// Chapter c of book b lives at slot chapterBase[b] + c of the arrays below, if 0 <= c <= chapterSlots[b] - 1.
+	private int[]				chapterBase;
+	private int[]				chapterSlots;
+	// The ordinal of the first verse of each chapter, or -1 if the chapter isn't present.
+	private int[]				chapterFirst;
+	// The number of verses stored for each chapter.
+	private int[]				chapterCount;
+	// The highest verse number of each chapter. This differs from the count if some verses are missing.
+	private int[]				chapterLastVerse;
+
+	// The chapters that don't have a slot, in order: the key (see overflowKey) and then the same as the slots above.
+	private long[]				overflowKey;
+	private int[]				overflowFirst;
+	private int[]				overflowCount;
+	private int[]				overflowLastVerse;
+
+	/**
+	 * Build the index from packed references.
+	 *
+	 * @param keys the packed references of the verses, in strictly increasing order.
+	 * @param size the number of keys to use, starting at index 0.
+	 */
+	ChapterIndex(int[] keys, int size) {
+		int[] books = new int[size];
+		int[] chapters = new int[size];
+		int[] verses = new int[size];
+		for (int i = 0; i < size; i++) {
+			books[i] = Reference.getBookOfBible(keys[i]).ordinal();
+			chapters[i] = Reference.getChapter(keys[i]);
+			verses[i] = Reference.getVerse(keys[i]);
+		}
+		build(books, chapters, verses, size);
+	}
+
+	/**
+	 * Build the index from references, which may have chapter and verse numbers too big to pack.
+	 *
+	 * @param references the references of the verses, in increasing order. None may have a null book.
+	 */
+	ChapterIndex(Collection<Reference> references) {
+		int size = references.size();
+		int[] books = new int[size];
+		int[] chapters = new int[size];
+		int[] verses = new int[size];
+		int i = 0;
+		for (Reference ref : references) {
+			books[i] = ref.getBookOfBible().ordinal();
+			chapters[i] = ref.getChapter();
+			verses[i] = ref.getVerse();
+			i++;
+		}
+		build(books, chapters, verses, size);
+	}
+
+	/**
+	 * Fill in the index from the book ordinal, chapter and verse of each verse.
+	 */
+	private void build(int[] books, int[] chapters, int[] verses, int size) {
+		bookFirst = new int[NUMBER_OF_BOOKS + 1];
+		lastChapter = new int[NUMBER_OF_BOOKS];
+		chapterBase = new int[NUMBER_OF_BOOKS];
+		chapterSlots = new int[NUMBER_OF_BOOKS];
+
+		// First pass: where each book starts, how many chapters it has, and how many chapters have no slot.
+		int book = 0;
+		int overflow = 0;
+		for (int i = 0; i < size; i++) {
+			int b = books[i];
+			while (book <= b) {
+				bookFirst[book++] = i;
+			}
+			// The chapters of a book are in order, so the last one seen is the highest.
+			lastChapter[b] = chapters[i];
+			boolean newChapter = i == 0 || books[i - 1] != b || chapters[i - 1] != chapters[i];
+			if (newChapter && !hasSlot(chapters[i])) {
+				overflow++;
+			}
+		}
+		while (book <= NUMBER_OF_BOOKS) {
+			bookFirst[book++] = size;
+		}
+
+		int slots = 0;
+		for (int b = 0; b < NUMBER_OF_BOOKS; b++) {
+			chapterBase[b] = slots;
+			if (bookFirst[b] < bookFirst[b + 1] && lastChapter[b] >= 0) {
+				chapterSlots[b] = Math.min(lastChapter[b], Reference.MAX_PACKED) + 1;
+			}
+			slots += chapterSlots[b];
+		}
+
+		// Second pass: fill in each chapter.
+		chapterFirst = new int[slots];
+		chapterCount = new int[slots];
+		chapterLastVerse = new int[slots];
+		Arrays.fill(chapterFirst, -1);
+		overflowKey = new long[overflow];
+		overflowFirst = new int[overflow];
+		overflowCount = new int[overflow];
+		overflowLastVerse = new int[overflow];
+		int o = -1;
+		for (int i = 0; i < size; i++) {
+			if (hasSlot(chapters[i])) {
+				int slot = chapterBase[books[i]] + chapters[i];
+				if (chapterFirst[slot] < 0) {
+					chapterFirst[slot] = i;
+				}
+				chapterCount[slot]++;
+				chapterLastVerse[slot] = verses[i];
+			} else {
+				long key = overflowKey(books[i], chapters[i]);
+				if (o < 0 || overflowKey[o] != key) {
+					o++;
+					overflowKey[o] = key;
+					overflowFirst[o] = i;
+				}
+				overflowCount[o]++;
+				overflowLastVerse[o] = verses[i];
+			}
+		}
+	}
+
+	/**
+	 * @param book the book.
+	 * @return the ordinal of the first verse of the book. If the book isn't present, this equals getBookEnd(book).
+	 */
+	int getBookStart(BookOfBible book) {
+		return bookFirst[book.ordinal()];
+	}
+
+	/**
+	 * @param book the book.
+	 * @return one more than the ordinal of the last verse of the book.
+	 */
+	int getBookEnd(BookOfBible book) {
+		return bookFirst[book.ordinal() + 1];
+	}
+
+	/**
+	 * @param book the book.
+	 * @return the number of the final chapter of the book, or -1 if the book isn't present.
+	 */
+	int getLastChapterNumber(BookOfBible book) {
+		if (book == null || getBookStart(book) == getBookEnd(book)) {
+			return -1;
+		}
+		return lastChapter[book.ordinal()];
+	}
+
+	/**
+	 * @param book the book.
+	 * @param chapter the chapter.
+	 * @return the number of the final verse of the chapter, or -1 if the chapter isn't present.
+	 */
+	int getLastVerseNumber(BookOfBible book, int chapter) {
+		int slot = slot(book, chapter);
+		if (slot >= 0) {
+			return chapterLastVerse[slot];
+		}
+		int o = overflow(book, chapter);
+		return o < 0 ? -1 : overflowLastVerse[o];
+	}
+
+	/**
+	 * @param book the book.
+	 * @param chapter the chapter.
+	 * @return the ordinal of the first verse of the chapter, or -1 if the chapter isn't present.
+	 */
+	int getChapterStart(BookOfBible book, int chapter) {
+		int slot = slot(book, chapter);
+		if (slot >= 0) {
+			return chapterFirst[slot];
+		}
+		int o = overflow(book, chapter);
+		return o < 0 ? -1 : overflowFirst[o];
+	}
+
+	/**
+	 * @param book the book.
+	 * @param chapter the chapter.
+	 * @return one more than the ordinal of the last verse of the chapter, or -1 if the chapter isn't present.
+	 */
+	int getChapterEnd(BookOfBible book, int chapter) {
+		int slot = slot(book, chapter);
+		if (slot >= 0) {
+			return chapterFirst[slot] + chapterCount[slot];
+		}
+		int o = overflow(book, chapter);
+		return o < 0 ? -1 : overflowFirst[o] + overflowCount[o];
+	}
+
+	/**
+	 * @param book the book.
+	 * @param chapter the chapter.
+	 * @return the number of verses of the chapter that are present.
+	 */
+	int getVerseCount(BookOfBible book, int chapter) {
+		int slot = slot(book, chapter);
+		if (slot >= 0) {
+			return chapterCount[slot];
+		}
+		int o = overflow(book, chapter);
+		return o < 0 ? 0 : overflowCount[o];
+	}
+
+	/**
+	 * @return true if the chapter number can have a slot.
+	 */
+	private static boolean hasSlot(int chapter) {
+		return chapter >= 0 && chapter <= Reference.MAX_PACKED;
+	}
+
+	/**
+	 * @return the slot of the chapter, or -1 if the chapter isn't present or has no slot.
+	 */
+	private int slot(BookOfBible book, int chapter) {
+		if (book == null || chapter < 0 || chapter >= chapterSlots[book.ordinal()]) {
+			return -1;
+		}
+		int slot = chapterBase[book.ordinal()] + chapter;
+		return chapterFirst[slot] < 0 ? -1 : slot;
+	}
+
+	/**
+	 * @return the position of the chapter in the overflow table, or -1 if it isn't there.
+	 */
+	private int overflow(BookOfBible book, int chapter) {
+		if (book == null || overflowKey.length == 0 || hasSlot(chapter)) {
+			return -1;
+		}
+		int o = Arrays.binarySearch(overflowKey, overflowKey(book.ordinal(), chapter));
+		return o < 0 ? -1 : o;
+	}
+
+	/**
+	 * @return a key for the chapter that sorts in the same order as the references in it.
+	 */
+	private static long overflowKey(int book, int chapter) {
+		// Flipping the sign bit makes the chapters sort as unsigned numbers in their signed order.
+		return ((long) book << 32) | ((chapter ^ Integer.MIN_VALUE) & 0xFFFFFFFFL);
+	}
+}
@@ -1,41 +1,203 @@
 package bibleReader.model;
 
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashSet;
-import java.util.Set;
-import java.util.TreeMap;
+import java.util.Comparator;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Concordance is a class which implements a concordance for a Bible. In other
  * words, it allows the easy lookup of all references which contain a given
  * word.
- * 
+ *
  * @author Chuck Cusack, March 2013 (Provided the interface)
- * @author Logan Kragt 
+ * @author Logan Kragt
  */
 public class Concordance {
-	private TreeMap<String, ReferenceList> concordance;
+	// The size of a Reference (and the pointer to it), used when estimating
+	// how much memory the concordance takes.
+	private static final int REFERENCE_SIZE = 32;
+
+	// The saved form of a concordance (see write) starts with this header:
+	// MAGIC, FORMAT_VERSION, the number of verses, a checksum of their
+	// references, a checksum of their text (see VerseChecksums) and the
+	// length of the image.
+	private static final int MAGIC = 0x424E4343;
+	/**
+	 * The version of the saved form written by write. Files written with any
+	 * other version are ignored by read.
+	 */
+	public static final int FORMAT_VERSION = 3;
+	private static final int HEADER_SIZE = 32;
+
+	// references[i] is the reference of the verse with ordinal i.
+	private Reference[] references;
+	// The checksums of the verses the concordance was built from.
+	private VerseChecksums checksums;
+	// The words, with the ordinals of the verses containing each of them and
+	// the positions of the word in those verses, compressed.
+	private ConcordanceImage image;
 
 	/**
 	 * Construct a concordance for the given Bible.
 	 */
 	public Concordance(Bible bible) {
+		this(bible, null);
+	}
 
-		concordance = new TreeMap<String, ReferenceList>();
-		for (Verse v : bible.getAllVerses()) {
-			ArrayList<String> words = extractWords(v.getText());
-			for (String text : words) {
-				String word = text.toLowerCase();
-				if (concordance.containsKey(word)) {
-					if (!concordance.get(word).contains(v.getReference())) {
-						concordance.get(word).add(v.getReference());
-					}
-				} else {
-					concordance.put(word, new ReferenceList());
-					concordance.get(word).add(v.getReference());
-				}
+	/**
+	 * Construct a concordance for the given Bible, building it on the threads
+	 * of the given pool.
+	 *
+	 * @param bible
+	 *            the Bible.
+	 * @param pool
+	 *            the pool to build the concordance in, or null to build it on
+	 *            this thread.
+	 */
+	public Concordance(Bible bible, ForkJoinPool pool) {
+		VerseList verses = bible.getAllVerses();
+		references = new Reference[verses.size()];
+		String[] texts = new String[verses.size()];
+		int ordinal = 0;
+		for (Verse v : verses) {
+			references[ordinal] = v.getReference();
+			texts[ordinal] = v.getText();
+			ordinal++;
+		}
+
+		WordPostings result;
+		if (pool == null) {
+			ConcordanceBuilder builder = new ConcordanceBuilder();
+			for (int i = 0; i < texts.length; i++) {
+				builder.addVerse(i, texts[i]);
 			}
+			result = builder.build();
+		} else {
+			result = ConcordanceBuilder.build(texts, references, pool);
+		}
+		image = ConcordanceImage.encode(result);
+		checksums = VerseChecksums.of(bible);
+	}
+
+	/**
+	 * Create a concordance from an image that was already built.
+	 */
+	private Concordance(Reference[] references, VerseChecksums checksums,
+			ConcordanceImage image) {
+		this.references = references;
+		this.checksums = checksums;
+		this.image = image;
+	}
+
+	/**
+	 * Read a concordance saved by write. The concordance is served straight
+	 * from the buffer, so if it is a MappedByteBuffer the file is only read as
+	 * the pages are needed. Only the header and the ends of the word table
+	 * are checked when it is read: the checksums of the Bible are worked out
+	 * when it is built, so they are compared without reading its verses, and
+	 * the image isn't read through either. (BibleIO.writeConcordance replaces
+	 * a file in one step, so a half-written file is never read.)
+	 *
+	 * @param bible
+	 *            the Bible the concordance was built for.
+	 * @param buffer
+	 *            the saved concordance, starting at position 0.
+	 * @return the concordance, or null if the buffer doesn't hold a
+	 *         concordance for this Bible in the current format (or it is
+	 *         damaged).
+	 */
+	public static Concordance read(Bible bible, ByteBuffer buffer) {
+		if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC
+				|| buffer.getInt(4) != FORMAT_VERSION) {
+			return null;
+		}
+		VerseChecksums checksums = VerseChecksums.of(bible);
+		int length = buffer.getInt(28);
+		if (buffer.getInt(8) != checksums.getCount()
+				|| buffer.getLong(12) != checksums.getReferenceChecksum()
+				|| buffer.getLong(20) != checksums.getTextChecksum()
+				|| length < 0 || length > buffer.capacity() - HEADER_SIZE) {
+			return null;
+		}
+		ByteBuffer slice = buffer.duplicate();
+		slice.position(HEADER_SIZE);
+		slice.limit(HEADER_SIZE + length);
+		slice = slice.slice();
+		if (!ConcordanceImage.isWellFormed(slice)) {
+			return null;
+		}
+		return new Concordance(referencesOf(bible), checksums,
+				new ConcordanceImage(slice));
+	}
+
+	/**
+	 * Save the concordance so that read can load it again without rebuilding
+	 * it. Only the words are saved, not the Bible, so it can only be read back
+	 * for a Bible with the same references and text.
+	 *
+	 * @param out
+	 *            the stream to write to. It is not closed.
+	 * @throws IOException
+	 *             if the stream can't be written to.
+	 */
+	public void write(OutputStream out) throws IOException {
+		ByteBuffer bytes = image.getBuffer().duplicate();
+		bytes.clear();
+
+		DataOutputStream data = new DataOutputStream(out);
+		data.writeInt(MAGIC);
+		data.writeInt(FORMAT_VERSION);
+		data.writeInt(checksums.getCount());
+		data.writeLong(checksums.getReferenceChecksum());
+		data.writeLong(checksums.getTextChecksum());
+		data.writeInt(bytes.remaining());
+		byte[] chunk = new byte[1 << 16];
+		while (bytes.hasRemaining()) {
+			int length = Math.min(chunk.length, bytes.remaining());
+			bytes.get(chunk, 0, length);
+			data.write(chunk, 0, length);
+		}
+		data.flush();
+	}
+
+	/**
+	 * A VerseSink that builds a concordance, so that it can be built in the same
+	 * pass over a file as the Bible (see BibleIO.streamBible). The verses
+	 * should be added in order without repeating a reference, as they are in a
+	 * Bible file. Otherwise the concordance won't match the Bible, and it
+	 * should be made from the Bible instead.
+	 */
+	public static class Builder implements VerseSink {
+		private ArrayList<Reference> references = new ArrayList<Reference>();
+		private ConcordanceBuilder builder = new ConcordanceBuilder();
+		private VerseChecksums.Builder checksums = new VerseChecksums.Builder();
+
+		@Override
+		public void setVersion(String version, String title) {
+			// The concordance doesn't need them.
+		}
+
+		@Override
+		public void addVerse(BookOfBible book, int chapter, int verse, String text) {
+			Reference ref = new Reference(book, chapter, verse);
+			builder.addVerse(references.size(), text);
+			references.add(ref);
+			checksums.add(ref, text);
+		}
+
+		/**
+		 * @return a concordance of the verses added so far.
+		 */
+		public Concordance build() {
+			return new Concordance(
+					references.toArray(new Reference[references.size()]),
+					checksums.build(),
+					ConcordanceImage.encode(builder.build()));
 		}
 	}
 
@@ -43,18 +205,23 @@ public class Concordance {
 	 * Return the list of references to verses that contain the word 'word'
 	 * (ignoring case) in the version of the Bible that this concordance was
 	 * created with.
-	 * 
+	 *
 	 * @param word
 	 *            a single word (no spaces, etc.)
 	 * @return the list of References of verses from this version that contain
 	 *         the word, or an empty list if no verses contain the word.
 	 */
 	public ReferenceList getReferencesContaining(String word) {
-		word = word.toLowerCase().trim();
-		if (concordance.get(word) != null && word != "") {
-			return concordance.get(word);
+		int w = image.find(word.toLowerCase().trim());
+		if (w < 0) {
+			return new ReferenceList();
+		}
+		PostingCursor cursor = new PostingCursor(image, w);
+		ReferenceList list = new ReferenceList(cursor.getCount());
+		while (cursor.next() != PostingCursor.END) {
+			list.add(references[cursor.getOrdinal()]);
 		}
-		return new ReferenceList();
+		return list;
 	}
 
 	/**
@@ -62,34 +229,121 @@ public class Concordance {
 	 * be a single word (with no spaces, etc., but ignoring case), return a
 	 * ReferenceList containing all of the verses that contain <i>all of the
 	 * words</i>.
-	 * 
+	 *
 	 * @param words
 	 *            A list of words.
 	 * @return An ReferenceList containing references to all of the verses that
-	 *         contain all of the given words, or an empty list if
+	 *         contain all of the given words, or an empty list if there are
+	 *         none (or no words were given).
 	 */
 	public ReferenceList getReferencesContainingAll(ArrayList<String> words) {
-		Set<ReferenceList> hash = new HashSet<ReferenceList>();
-		ReferenceList refList = new ReferenceList();
+		return getReferencesContainingAll(words, new ArrayList<String>());
+	}
 
-		for (String word : words) {
-			word = word.toLowerCase();
-		}
+	/**
+	 * Return the references of the verses that contain the given phrase, that
+	 * is, the words of the phrase (as given by extractWords) one right after
+	 * the other.
+	 *
+	 * @param phrase
+	 *            the phrase.
+	 * @return the references of the verses containing the phrase, or an empty
+	 *         list if there are none (or the phrase has no words).
+	 */
+	public ReferenceList getReferencesContainingPhrase(String phrase) {
+		ArrayList<String> phrases = new ArrayList<String>();
+		phrases.add(phrase);
+		return getReferencesContainingAll(new ArrayList<String>(), phrases);
+	}
 
+	/**
+	 * Return the references of the verses that contain all of the given words
+	 * and all of the given phrases. A verse contains a phrase if the words of
+	 * the phrase (as given by extractWords) occur one right after the other in
+	 * the verse.
+	 *
+	 * @param words
+	 *            a list of single words.
+	 * @param phrases
+	 *            a list of phrases.
+	 * @return the references of the verses containing all of them, or an
+	 *         empty list if there are none (or nothing was given to look for).
+	 */
+	public ReferenceList getReferencesContainingAll(ArrayList<String> words,
+			ArrayList<String> phrases) {
+		// One cursor for every word, and one for every word of every phrase.
+		ArrayList<PostingCursor> cursors = new ArrayList<PostingCursor>();
 		for (String word : words) {
+			PostingCursor cursor = cursorFor(word.toLowerCase().trim());
+			if (cursor == null) {
+				// No verse has this word, so no verse has all of them.
+				return new ReferenceList();
+			}
+			cursors.add(cursor);
+		}
+		ArrayList<PostingCursor[]> phraseCursors = new ArrayList<PostingCursor[]>();
+		for (String phrase : phrases) {
+			ArrayList<String> wordsOfPhrase = extractWords(phrase);
+			PostingCursor[] phraseWords = new PostingCursor[wordsOfPhrase.size()];
+			for (int i = 0; i < phraseWords.length; i++) {
+				phraseWords[i] = cursorFor(wordsOfPhrase.get(i));
+				if (phraseWords[i] == null) {
+					return new ReferenceList();
+				}
+				cursors.add(phraseWords[i]);
+			}
+			if (phraseWords.length > 1) {
+				phraseCursors.add(phraseWords);
+			}
+		}
+		if (cursors.isEmpty()) {
+			return new ReferenceList();
+		}
 
-			// this is the first word
-			if (words.size() == 0 && words.indexOf(word) == 0) {
-				refList.addAll(getReferencesContaining(words.get(0)));
-
+		// Walk the rarest word, and move the others up to each of its verses
+		// in turn. Whenever one of them skips past the verse, continue from
+		// where it landed instead.
+		PostingCursor[] all = cursors.toArray(new PostingCursor[cursors.size()]);
+		Arrays.sort(all, new Comparator<PostingCursor>() {
+			@Override
+			public int compare(PostingCursor a, PostingCursor b) {
+				return a.getCount() - b.getCount();
+			}
+		});
+		ReferenceList list = new ReferenceList();
+		int candidate = all[0].next();
+		while (candidate != PostingCursor.END) {
+			int i = 1;
+			while (i < all.length && all[i].advance(candidate) == candidate) {
+				i++;
+			}
+			if (i < all.length) {
+				int next = all[i].getOrdinal();
+				candidate = next == PostingCursor.END ? next : all[0]
+						.advance(next);
 			} else {
-				hash.add(getReferencesContaining(word));
-				refList.retainAll(hash);
+				if (hasPhrases(phraseCursors)) {
+					list.add(references[candidate]);
+				}
+				candidate = all[0].next();
 			}
-
 		}
+		return list;
+	}
+
+	/**
+	 * @return the number of distinct words in the concordance.
+	 */
+	public int getNumberOfWords() {
+		return image.getNumberOfWords();
+	}
 
-		return refList;
+	/**
+	 * @return roughly how many bytes of memory the concordance takes.
+	 */
+	public long getSizeInBytes() {
+		return image.getSizeInBytes() + (long) REFERENCE_SIZE
+				* references.length;
 	}
 
 	public static ArrayList<String> extractWords(String text) {
@@ -101,4 +355,57 @@ public class Concordance {
 		toReturn.remove("");
 		return toReturn;
 	}
+
+	/**
+	 * @return the references of the verses of the Bible, in order.
+	 */
+	private static Reference[] referencesOf(Bible bible) {
+		if (bible instanceof PackedBible) {
+			// Its references can be made without reading any text.
+			return ((PackedBible) bible).getReferences();
+		}
+		VerseList verses = bible.getAllVerses();
+		Reference[] references = new Reference[verses.size()];
+		for (int i = 0; i < references.length; i++) {
+			references[i] = verses.get(i).getReference();
+		}
+		return references;
+	}
+
+	/**
+	 * @return a cursor over the postings of the word, or null if no verse has
+	 *         it.
+	 */
+	private PostingCursor cursorFor(String word) {
+		int w = image.find(word);
+		return w < 0 ? null : new PostingCursor(image, w);
+	}
+
+	/**
+	 * @param phraseCursors
+	 *            the cursors for the words of each phrase, all on the same
+	 *            verse.
+	 * @return true if the words of each phrase occur one right after the
+	 *         other somewhere in the verse.
+	 */
+	private static boolean hasPhrases(ArrayList<PostingCursor[]> phraseCursors) {
+		for (PostingCursor[] cursors : phraseCursors) {
+			for (PostingCursor cursor : cursors) {
+				cursor.readPositions();
+			}
+			boolean found = false;
+			for (int i = 0; i < cursors[0].getNumberOfPositions() && !found; i++) {
+				int start = cursors[0].getPosition(i);
+				int k = 1;
+				while (k < cursors.length && cursors[k].isAt(start + k)) {
+					k++;
+				}
+				found = k == cursors.length;
+			}
+			if (!found) {
+				return false;
+			}
+		}
+		return true;
+	}
 }
\ No newline at end of file
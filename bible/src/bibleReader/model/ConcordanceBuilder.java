@@ -0,0 +1,445 @@
+package bibleReader.model;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Builds the word lists of a Concordance in one pass over the verses.
+ *
+ * Each verse is split into words by a hand-written scanner that produces exactly the words Concordance.extractWords
+ * would (lower-cased, with footnote markers, "'s" and character entities removed, commas deleted, and split on
+ * non-word characters), but without regular expressions and without making a String for every word. Words are looked
+ * up in an open addressing hash table over a shared char pool, and the ordinals of the verses containing each word are
+ * collected in an int[] per word. A word that occurs more than once in a verse is recorded once.
+ *
+ * The positions of each word within each verse (0 for the first word of the verse, 1 for the second, and so on) are
+ * also kept, so that phrases can be found. For each word they are stored as one byte[] with an entry for each of its
+ * postings in turn: the gaps between the positions of the word in that verse, counting the first from -1, written
+ * as variable-length numbers (seven bits per byte, high bit set on all but the last byte), followed by a 0. Since the
+ * gaps are never 0, the 0 marks the end of the entry. A verse rarely has more than 127 words, so most positions take
+ * one byte.
+ *
+ * Verses must be added in increasing order of ordinal.
+ *
+ * @author Logan
+ */
+class ConcordanceBuilder {
+	// When building in parallel, aim for this many shards per thread, but don't make them smaller than this.
+	private static final int	SHARDS_PER_THREAD	= 4;
+	private static final int	MIN_SHARD_SIZE		= 1024;
+
+	// The characters of every distinct word, one after the other.
+	private char[]		pool;
+	private int			poolSize;
+	// The start (in pool), length and hash of the word with each id.
+	private int[]		wordStart;
+	private int[]		wordLength;
+	private int[]		wordHash;
+	private int			numberOfWords;
+	// An open addressing hash table from a word to its id. Empty slots hold -1.
+	private int[]		table;
+
+	// postings[id] holds the ordinals of the verses containing the word, in increasing order.
+	private int[][]		postings;
+	private int[]		sizes;
+	// positions[id] holds the encoded positions of the word (see above), using positionSizes[id] bytes.
+	private byte[][]	positions;
+	private int[]		positionSizes;
+	// The position of the last occurrence of each word in the verse of its last posting.
+	private int[]		lastPosition;
+
+	// The word currently being scanned.
+	private char[]		token;
+	private int			tokenLength;
+	// The position of the next word of the verse being scanned.
+	private int			position;
+
+	ConcordanceBuilder() {
+		pool = new char[1 << 16];
+		wordStart = new int[1 << 12];
+		wordLength = new int[1 << 12];
+		wordHash = new int[1 << 12];
+		postings = new int[1 << 12][];
+		sizes = new int[1 << 12];
+		positions = new byte[1 << 12][];
+		positionSizes = new int[1 << 12];
+		lastPosition = new int[1 << 12];
+		table = new int[1 << 13];
+		Arrays.fill(table, -1);
+		token = new char[32];
+	}
+
+	/**
+	 * Add the words of a verse.
+	 *
+	 * @param ordinal the ordinal of the verse. It must be larger than that of any verse added before.
+	 * @param text the text of the verse.
+	 */
+	void addVerse(int ordinal, String text) {
+		String s = text.toLowerCase();
+		int length = s.length();
+		tokenLength = 0;
+		position = 0;
+		int i = 0;
+		while (i < length) {
+			int removed = removedLength(s, i);
+			if (removed > 0) {
+				i += removed;
+				continue;
+			}
+			char c = s.charAt(i++);
+			if (c == ',') {
+				continue;
+			}
+			if (isWordChar(c)) {
+				if (tokenLength == token.length) {
+					token = Arrays.copyOf(token, 2 * tokenLength);
+				}
+				token[tokenLength++] = c;
+			} else {
+				endWord(ordinal);
+			}
+		}
+		endWord(ordinal);
+	}
+
+	/**
+	 * Check whether a verse has a word, splitting the verse into words exactly as addVerse does, but without building
+	 * anything.
+	 *
+	 * @param text the text of the verse.
+	 * @param word the word, lower-cased.
+	 * @return true if word is one of the words of the verse.
+	 */
+	static boolean containsWord(String text, String word) {
+		if (word.isEmpty()) {
+			return false;
+		}
+		String s = text.toLowerCase();
+		int length = s.length();
+		// How much of the word the current token matches so far, or -1 if it already differs.
+		int matched = 0;
+		int i = 0;
+		while (i < length) {
+			int removed = removedLength(s, i);
+			if (removed > 0) {
+				i += removed;
+				continue;
+			}
+			char c = s.charAt(i++);
+			if (c == ',') {
+				continue;
+			}
+			if (isWordChar(c)) {
+				if (matched >= 0) {
+					matched = matched < word.length() && word.charAt(matched) == c ? matched + 1 : -1;
+				}
+			} else {
+				if (matched == word.length()) {
+					return true;
+				}
+				matched = 0;
+			}
+		}
+		return matched == word.length();
+	}
+
+	/**
+	 * @return the number of distinct words seen so far.
+	 */
+	int getNumberOfWords() {
+		return numberOfWords;
+	}
+
+	/**
+	 * @return every distinct word seen so far, in sorted order, with the ordinals of the verses containing it.
+	 */
+	WordPostings build() {
+		Integer[] ids = sortedIds();
+		String[] words = new String[numberOfWords];
+		int[][] sorted = new int[numberOfWords][];
+		byte[][] sortedPositions = new byte[numberOfWords][];
+		for (int i = 0; i < numberOfWords; i++) {
+			int id = ids[i];
+			words[i] = new String(pool, wordStart[id], wordLength[id]);
+			sorted[i] = Arrays.copyOf(postings[id], sizes[id]);
+			// End the entry of the last posting.
+			writePosition(id, 0);
+			sortedPositions[i] = Arrays.copyOf(positions[id], positionSizes[id]);
+			positionSizes[id]--;
+		}
+		return new WordPostings(words, sorted, sortedPositions);
+	}
+
+	/**
+	 * Build the words of a whole Bible, splitting the work between the threads of a pool. The verses are split into
+	 * shards that each start at the beginning of a book, each shard is built on its own, and the results are merged
+	 * in order, so the postings come out sorted without sorting them.
+	 *
+	 * @param texts the text of every verse, indexed by ordinal.
+	 * @param references the reference of every verse, indexed by ordinal. Only the books are used.
+	 * @param pool the pool to build the shards in.
+	 * @return every distinct word, in sorted order, with the ordinals of the verses containing it.
+	 */
+	static WordPostings build(String[] texts, Reference[] references, ForkJoinPool pool) {
+		int[] bounds = shardBounds(references, pool.getParallelism());
+		return pool.invoke(new ShardTask(texts, bounds, 0, bounds.length - 1));
+	}
+
+	/**
+	 * @return the ordinals where the shards start, followed by the number of verses. Shards only start at the
+	 *         beginning of a book, and are made big enough that there are a few per thread.
+	 */
+	private static int[] shardBounds(Reference[] references, int parallelism) {
+		int target = Math.max(MIN_SHARD_SIZE, references.length / (SHARDS_PER_THREAD * parallelism));
+		int[] bounds = new int[references.length + 1];
+		int size = 1;
+		for (int i = 1; i < references.length; i++) {
+			if (i - bounds[size - 1] >= target
+					&& references[i].getBookOfBible() != references[i - 1].getBookOfBible()) {
+				bounds[size++] = i;
+			}
+		}
+		if (references.length > 0) {
+			bounds[size++] = references.length;
+		}
+		return Arrays.copyOf(bounds, size);
+	}
+
+	/**
+	 * Builds the words of shards first through last - 1, splitting the range in half until it is a single shard.
+	 */
+	private static class ShardTask extends RecursiveTask<WordPostings> {
+		private static final long	serialVersionUID	= 1L;
+
+		private String[]			texts;
+		private int[]				bounds;
+		private int					first;
+		private int					last;
+
+		ShardTask(String[] texts, int[] bounds, int first, int last) {
+			this.texts = texts;
+			this.bounds = bounds;
+			this.first = first;
+			this.last = last;
+		}
+
+		@Override
+		protected WordPostings compute() {
+			if (last - first <= 1) {
+				ConcordanceBuilder builder = new ConcordanceBuilder();
+				if (first < last) {
+					for (int ordinal = bounds[first]; ordinal < bounds[last]; ordinal++) {
+						builder.addVerse(ordinal, texts[ordinal]);
+					}
+				}
+				return builder.build();
+			}
+			int middle = (first + last) / 2;
+			ShardTask left = new ShardTask(texts, bounds, first, middle);
+			left.fork();
+			WordPostings right = new ShardTask(texts, bounds, middle, last).compute();
+			return WordPostings.merge(left.join(), right);
+		}
+	}
+
+	// ---------------------------------------------------------------------------------------------
+	// The scanner
+
+	/**
+	 * Concordance.extractWords removes every match of {@code <sup>[,\w]*?</sup>|'s|&#\w*;} before doing anything else.
+	 *
+	 * @return the length of the match starting at position i of s, or 0 if there isn't one.
+	 */
+	private static int removedLength(String s, int i) {
+		char c = s.charAt(i);
+		if (c == '<' && s.startsWith("<sup>", i)) {
+			for (int j = i + 5; j < s.length(); j++) {
+				if (s.startsWith("</sup>", j)) {
+					return j + 6 - i;
+				}
+				char d = s.charAt(j);
+				if (d != ',' && !isWordChar(d)) {
+					return 0;
+				}
+			}
+		} else if (c == '\'' && i + 1 < s.length() && s.charAt(i + 1) == 's') {
+			return 2;
+		} else if (c == '&' && i + 1 < s.length() && s.charAt(i + 1) == '#') {
+			int j = i + 2;
+			while (j < s.length() && isWordChar(s.charAt(j))) {
+				j++;
+			}
+			if (j < s.length() && s.charAt(j) == ';') {
+				return j + 1 - i;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * @return true if c is matched by \w (without the UNICODE_CHARACTER_CLASS flag).
+	 */
+	private static boolean isWordChar(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '_' || (c >= 'A' && c <= 'Z');
+	}
+
+	/**
+	 * Record the word in token (if there is one) as occurring at the next position of the verse with the given
+	 * ordinal.
+	 */
+	private void endWord(int ordinal) {
+		if (tokenLength == 0) {
+			return;
+		}
+		int id = idForToken();
+		int size = sizes[id];
+		// Verses come in order, so the word is already recorded for this verse exactly when it was the last one.
+		if (size == 0 || postings[id][size - 1] != ordinal) {
+			if (size == postings[id].length) {
+				postings[id] = Arrays.copyOf(postings[id], 2 * size);
+			}
+			postings[id][size] = ordinal;
+			sizes[id] = size + 1;
+			if (size > 0) {
+				// End the entry of the previous posting.
+				writePosition(id, 0);
+			}
+			lastPosition[id] = -1;
+		}
+		writePosition(id, position - lastPosition[id]);
+		lastPosition[id] = position;
+		position++;
+		tokenLength = 0;
+	}
+
+	/**
+	 * Append a variable-length number to the positions of a word.
+	 */
+	private void writePosition(int id, int value) {
+		if (positionSizes[id] + 5 > positions[id].length) {
+			positions[id] = Arrays.copyOf(positions[id], 2 * positions[id].length + 5);
+		}
+		byte[] bytes = positions[id];
+		int size = positionSizes[id];
+		while (value >= 0x80) {
+			bytes[size++] = (byte) (value | 0x80);
+			value >>>= 7;
+		}
+		bytes[size++] = (byte) value;
+		positionSizes[id] = size;
+	}
+
+	// ---------------------------------------------------------------------------------------------
+	// The word table
+
+	/**
+	 * @return the id of the word in token, giving it the next id if it hasn't been seen before.
+	 */
+	private int idForToken() {
+		int hash = 0;
+		for (int i = 0; i < tokenLength; i++) {
+			hash = 31 * hash + token[i];
+		}
+		int mask = table.length - 1;
+		int slot = (hash ^ (hash >>> 16)) & mask;
+		while (table[slot] >= 0) {
+			int id = table[slot];
+			if (wordHash[id] == hash && tokenEquals(id)) {
+				return id;
+			}
+			slot = (slot + 1) & mask;
+		}
+		int id = addWord(hash);
+		table[slot] = id;
+		if (2 * numberOfWords > table.length) {
+			growTable();
+		}
+		return id;
+	}
+
+	private boolean tokenEquals(int id) {
+		if (wordLength[id] != tokenLength) {
+			return false;
+		}
+		int start = wordStart[id];
+		for (int i = 0; i < tokenLength; i++) {
+			if (pool[start + i] != token[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private int addWord(int hash) {
+		int id = numberOfWords++;
+		if (id == wordStart.length) {
+			wordStart = Arrays.copyOf(wordStart, 2 * id);
+			wordLength = Arrays.copyOf(wordLength, 2 * id);
+			wordHash = Arrays.copyOf(wordHash, 2 * id);
+			postings = Arrays.copyOf(postings, 2 * id);
+			sizes = Arrays.copyOf(sizes, 2 * id);
+			positions = Arrays.copyOf(positions, 2 * id);
+			positionSizes = Arrays.copyOf(positionSizes, 2 * id);
+			lastPosition = Arrays.copyOf(lastPosition, 2 * id);
+		}
+		if (poolSize + tokenLength > pool.length) {
+			pool = Arrays.copyOf(pool, Math.max(2 * pool.length, poolSize + tokenLength));
+		}
+		System.arraycopy(token, 0, pool, poolSize, tokenLength);
+		wordStart[id] = poolSize;
+		wordLength[id] = tokenLength;
+		wordHash[id] = hash;
+		poolSize += tokenLength;
+		postings[id] = new int[2];
+		positions[id] = new byte[4];
+		return id;
+	}
+
+	private void growTable() {
+		table = new int[2 * table.length];
+		Arrays.fill(table, -1);
+		int mask = table.length - 1;
+		for (int id = 0; id < numberOfWords; id++) {
+			int slot = (wordHash[id] ^ (wordHash[id] >>> 16)) & mask;
+			while (table[slot] >= 0) {
+				slot = (slot + 1) & mask;
+			}
+			table[slot] = id;
+		}
+	}
+
+	/**
+	 * @return the ids of the words, sorted by the words.
+	 */
+	private Integer[] sortedIds() {
+		Integer[] ids = new Integer[numberOfWords];
+		for (int id = 0; id < numberOfWords; id++) {
+			ids[id] = id;
+		}
+		Arrays.sort(ids, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return compareWords(a, b);
+			}
+		});
+		return ids;
+	}
+
+	/**
+	 * Compare two words the way String.compareTo would.
+	 */
+	private int compareWords(int a, int b) {
+		int length = Math.min(wordLength[a], wordLength[b]);
+		for (int i = 0; i < length; i++) {
+			char x = pool[wordStart[a] + i];
+			char y = pool[wordStart[b] + i];
+			if (x != y) {
+				return x - y;
+			}
+		}
+		return wordLength[a] - wordLength[b];
+	}
+}
@@ -0,0 +1,330 @@
+package bibleReader.model;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * The words, postings and positions of a concordance, compressed into a single ByteBuffer. Nothing is decoded when
+ * the image is loaded: words are found by a binary search of the dictionary in the buffer, and postings are decoded
+ * as they are read with a PostingCursor. The buffer is only read with absolute gets, so an image can be shared by
+ * several threads.
+ *
+ * The layout of the buffer is
+ * <ul>
+ * <li>the number of words, n (an int).</li>
+ * <li>n + 1 entries of five ints: where the word starts, where its postings start, where its positions start, where
+ * its skip entries start (all offsets in the buffer) and how many postings it has. The last entry only marks where
+ * the data of the last word ends.</li>
+ * <li>the words, in sorted order, one byte per character (words are made of the characters of \w, so they are
+ * ASCII).</li>
+ * <li>the postings of each word: the gaps between consecutive verse ordinals (counting the first from -1) as
+ * variable-length numbers (seven bits per byte, high bit set on all but the last byte).</li>
+ * <li>the positions of each word, as described in ConcordanceBuilder.</li>
+ * <li>the skip entries of each word: one for each block of BLOCK_SIZE postings after the first block, giving the
+ * ordinal of the posting just before the block and where the postings and positions of the block start. Cursors use
+ * them to jump over blocks without decoding them.</li>
+ * </ul>
+ *
+ * @author Logan
+ */
+class ConcordanceImage {
+	// The number of postings in each block that can be skipped over.
+	static final int			BLOCK_SIZE	= 64;
+	// The number of ints in each entry of the word table and the skip table.
+	private static final int	WORD_ENTRY	= 5;
+	static final int			SKIP_ENTRY	= 3;
+
+	private ByteBuffer			buffer;
+	private int					numberOfWords;
+
+	/**
+	 * @param buffer a buffer holding an image, as written by encode, starting at position 0.
+	 */
+	ConcordanceImage(ByteBuffer buffer) {
+		this.buffer = buffer;
+		numberOfWords = buffer.getInt(0);
+	}
+
+	/**
+	 * Check that a buffer could hold an image: that its word table fits, and that the last entry of the table says the
+	 * data ends where the buffer does. Only the start and the end of the table are read, so the rest of a mapped file
+	 * isn't touched.
+	 *
+	 * @param buffer a buffer that may hold an image, starting at position 0.
+	 * @return true if it could.
+	 */
+	static boolean isWellFormed(ByteBuffer buffer) {
+		int capacity = buffer.capacity();
+		if (capacity < 4) {
+			return false;
+		}
+		int n = buffer.getInt(0);
+		if (n < 0 || n >= (capacity - 4) / (4 * WORD_ENTRY)) {
+			return false;
+		}
+		int tableEnd = 4 + 4 * WORD_ENTRY * (n + 1);
+		int last = tableEnd - 4 * WORD_ENTRY;
+		int previous = tableEnd;
+		for (int i = 0; i < 4; i++) {
+			int offset = buffer.getInt(last + 4 * i);
+			if (offset < previous) {
+				return false;
+			}
+			previous = offset;
+		}
+		return buffer.getInt(4) == tableEnd && previous == capacity;
+	}
+
+	/**
+	 * Compress the words of a concordance into an image.
+	 *
+	 * @param words the words, postings and positions.
+	 * @return the image.
+	 */
+	static ConcordanceImage encode(WordPostings words) {
+		int n = words.words.length;
+		ByteWriter out = new ByteWriter(1 << 16);
+		out.writeInt(n);
+		int table = out.size();
+		for (int i = 0; i <= n; i++) {
+			for (int j = 0; j < WORD_ENTRY; j++) {
+				out.writeInt(0);
+			}
+		}
+
+		int[] wordStart = new int[n + 1];
+		for (int w = 0; w < n; w++) {
+			wordStart[w] = out.size();
+			for (int i = 0; i < words.words[w].length(); i++) {
+				out.writeByte(words.words[w].charAt(i));
+			}
+		}
+		wordStart[n] = out.size();
+
+		// The postings, remembering where each block starts.
+		int[] postingsStart = new int[n + 1];
+		int[][] blockStarts = new int[n][];
+		for (int w = 0; w < n; w++) {
+			int[] postings = words.postings[w];
+			postingsStart[w] = out.size();
+			blockStarts[w] = new int[(postings.length + BLOCK_SIZE - 1) / BLOCK_SIZE];
+			int previous = -1;
+			for (int i = 0; i < postings.length; i++) {
+				if (i % BLOCK_SIZE == 0) {
+					blockStarts[w][i / BLOCK_SIZE] = out.size();
+				}
+				out.writeVarInt(postings[i] - previous);
+				previous = postings[i];
+			}
+		}
+		postingsStart[n] = out.size();
+
+		// The positions, remembering where the entries of each block start.
+		int[] positionsStart = new int[n + 1];
+		int[][] blockPositions = new int[n][];
+		for (int w = 0; w < n; w++) {
+			byte[] positions = words.positions[w];
+			positionsStart[w] = out.size();
+			blockPositions[w] = new int[blockStarts[w].length];
+			int posting = 0;
+			for (int i = 0; i < positions.length; i++) {
+				if (i == 0 || positions[i - 1] == 0) {
+					// The entry of a new posting starts here.
+					if (posting % BLOCK_SIZE == 0) {
+						blockPositions[w][posting / BLOCK_SIZE] = out.size();
+					}
+					posting++;
+				}
+				out.writeByte(positions[i]);
+			}
+		}
+		positionsStart[n] = out.size();
+
+		// The skip entries, for every block but the first.
+		int[] skipStart = new int[n + 1];
+		for (int w = 0; w < n; w++) {
+			skipStart[w] = out.size();
+			for (int b = 1; b < blockStarts[w].length; b++) {
+				out.writeInt(words.postings[w][b * BLOCK_SIZE - 1]);
+				out.writeInt(blockStarts[w][b]);
+				out.writeInt(blockPositions[w][b]);
+			}
+		}
+		skipStart[n] = out.size();
+
+		for (int w = 0; w <= n; w++) {
+			int entry = table + 4 * WORD_ENTRY * w;
+			out.setInt(entry, wordStart[w]);
+			out.setInt(entry + 4, postingsStart[w]);
+			out.setInt(entry + 8, positionsStart[w]);
+			out.setInt(entry + 12, skipStart[w]);
+			out.setInt(entry + 16, w < n ? words.postings[w].length : 0);
+		}
+		return new ConcordanceImage(out.toByteBuffer());
+	}
+
+	/**
+	 * @return the number of distinct words.
+	 */
+	int getNumberOfWords() {
+		return numberOfWords;
+	}
+
+	/**
+	 * @param word a word, already lower-cased.
+	 * @return the index of the word in the dictionary, or -1 if it isn't there.
+	 */
+	int find(String word) {
+		int low = 0;
+		int high = numberOfWords - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int c = compareWord(middle, word);
+			if (c < 0) {
+				low = middle + 1;
+			} else if (c > 0) {
+				high = middle - 1;
+			} else {
+				return middle;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @param w the index of a word.
+	 * @return the word.
+	 */
+	String getWord(int w) {
+		int start = entry(w, 0);
+		char[] chars = new char[entry(w + 1, 0) - start];
+		for (int i = 0; i < chars.length; i++) {
+			chars[i] = (char) (buffer.get(start + i) & 0xFF);
+		}
+		return new String(chars);
+	}
+
+	/**
+	 * @param w the index of a word.
+	 * @return the number of verses that contain the word.
+	 */
+	int getPostingCount(int w) {
+		return entry(w, 4);
+	}
+
+	int getPostingsStart(int w) {
+		return entry(w, 1);
+	}
+
+	int getPositionsStart(int w) {
+		return entry(w, 2);
+	}
+
+	int getSkipStart(int w) {
+		return entry(w, 3);
+	}
+
+	/**
+	 * @return the number of skip entries of the word.
+	 */
+	int getNumberOfSkips(int w) {
+		return (entry(w + 1, 3) - entry(w, 3)) / (4 * SKIP_ENTRY);
+	}
+
+	/**
+	 * @return the buffer the image is stored in.
+	 */
+	ByteBuffer getBuffer() {
+		return buffer;
+	}
+
+	/**
+	 * @return the number of bytes the image takes.
+	 */
+	int getSizeInBytes() {
+		return buffer.capacity();
+	}
+
+	byte getByte(int offset) {
+		return buffer.get(offset);
+	}
+
+	int getInt(int offset) {
+		return buffer.getInt(offset);
+	}
+
+	// ---------------------------------------------------------------------------------------------
+	// Private helper methods
+
+	/**
+	 * @return field i of the entry of word w in the word table.
+	 */
+	private int entry(int w, int i) {
+		return buffer.getInt(4 + 4 * (WORD_ENTRY * w + i));
+	}
+
+	/**
+	 * Compare a word in the dictionary with a word the way String.compareTo would.
+	 */
+	private int compareWord(int w, String word) {
+		int start = entry(w, 0);
+		int length = entry(w + 1, 0) - start;
+		int common = Math.min(length, word.length());
+		for (int i = 0; i < common; i++) {
+			int c = (buffer.get(start + i) & 0xFF) - word.charAt(i);
+			if (c != 0) {
+				return c;
+			}
+		}
+		return length - word.length();
+	}
+
+	/**
+	 * A growable array of bytes, written in the same (big-endian) order as a ByteBuffer.
+	 */
+	private static class ByteWriter {
+		private byte[]	bytes;
+		private int		size;
+
+		ByteWriter(int capacity) {
+			bytes = new byte[capacity];
+		}
+
+		int size() {
+			return size;
+		}
+
+		void writeByte(int b) {
+			if (size == bytes.length) {
+				bytes = Arrays.copyOf(bytes, 2 * size);
+			}
+			bytes[size++] = (byte) b;
+		}
+
+		void writeInt(int value) {
+			writeByte(value >>> 24);
+			writeByte(value >>> 16);
+			writeByte(value >>> 8);
+			writeByte(value);
+		}
+
+		void writeVarInt(int value) {
+			while (value >= 0x80) {
+				writeByte(value | 0x80);
+				value >>>= 7;
+			}
+			writeByte(value);
+		}
+
+		void setInt(int offset, int value) {
+			bytes[offset] = (byte) (value >>> 24);
+			bytes[offset + 1] = (byte) (value >>> 16);
+			bytes[offset + 2] = (byte) (value >>> 8);
+			bytes[offset + 3] = (byte) value;
+		}
+
+		ByteBuffer toByteBuffer() {
+			return ByteBuffer.wrap(Arrays.copyOf(bytes, size));
+		}
+	}
+}
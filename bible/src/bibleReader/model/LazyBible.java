@@ -0,0 +1,289 @@
+package bibleReader.model;
+
+import java.lang.ref.SoftReference;
+
+/**
+ * A Bible that is only read from its source the first time one of its verses is needed. Until then only its version
+ * and title are kept, so a model can list many versions while only paying for the ones that are used.
+ *
+ * The loaded Bible (and its concordance, once one has been made) is only softly reachable, so if memory runs low the
+ * garbage collector may drop a version that hasn't been used lately. It is simply read again the next time it is
+ * needed. If the source can't be read, the version behaves as if it had no verses.
+ *
+ * @author Logan
+ */
+public class LazyBible implements Bible {
+	private String version;
+	private String title;
+	private BibleSource source;
+	// The Bible and its concordance, or null if they haven't been loaded (or have been dropped). It is only changed
+	// while holding the lock, but it is volatile so getConcordanceIfBuilt can read it without waiting for a load.
+	private volatile SoftReference<Loaded> loaded;
+	// The number of times the source has been read.
+	private int numberOfLoads;
+
+	/**
+	 * @param version the abbreviation of the version (e.g. "KJV"). It must be the version of the Bible the source
+	 *            reads.
+	 * @param title the full title of the version.
+	 * @param source where to read the Bible from when it is needed.
+	 */
+	public LazyBible(String version, String title, BibleSource source) {
+		this.version = version;
+		this.title = title;
+		this.source = source;
+	}
+
+	/**
+	 * @return true if the Bible is in memory at the moment.
+	 */
+	public synchronized boolean isLoaded() {
+		return loaded != null && loaded.get() != null;
+	}
+
+	/**
+	 * @return the number of times the Bible has been read from its source.
+	 */
+	public synchronized int getNumberOfLoads() {
+		return numberOfLoads;
+	}
+
+	/**
+	 * Drop the Bible and its concordance now rather than waiting for memory to run low. They are read again the next
+	 * time they are needed.
+	 */
+	public synchronized void unload() {
+		loaded = null;
+	}
+
+	/**
+	 * @return the concordance of the Bible, which is made the first time it is asked for and dropped along with the
+	 *         Bible.
+	 */
+	public Concordance getConcordance() {
+		Loaded current;
+		synchronized (this) {
+			current = load();
+			if (current.concordance != null) {
+				return current.concordance;
+			}
+		}
+		// Make it without holding the lock, so the Bible can still be used in the meantime.
+		Concordance concordance;
+		try {
+			concordance = source.loadConcordance(current.bible);
+		} catch (RuntimeException | Error e) {
+			current.concordanceFailed = true;
+			throw e;
+		}
+		synchronized (this) {
+			if (current.concordance == null) {
+				current.concordance = concordance;
+			}
+			return current.concordance;
+		}
+	}
+
+	/**
+	 * This never waits for the Bible to be read or its concordance to be made, so it can be called while holding
+	 * another lock.
+	 *
+	 * @return the concordance of the Bible if it is in memory and has been made, or null if it hasn't.
+	 */
+	public Concordance getConcordanceIfBuilt() {
+		SoftReference<Loaded> loaded = this.loaded;
+		Loaded current = loaded == null ? null : loaded.get();
+		return current == null ? null : current.concordance;
+	}
+
+	/**
+	 * Like getConcordanceIfBuilt, this never waits.
+	 *
+	 * @return true if making the concordance of the Bible that is in memory failed. Once the Bible has been dropped
+	 *         (see unload) and read again, it is worth trying again.
+	 */
+	public boolean hasConcordanceFailed() {
+		SoftReference<Loaded> loaded = this.loaded;
+		Loaded current = loaded == null ? null : loaded.get();
+		return current != null && current.concordanceFailed;
+	}
+
+	@Override
+	public String getVersion() {
+		return version;
+	}
+
+	@Override
+	public String getTitle() {
+		return title;
+	}
+
+	@Override
+	public int getNumberOfVerses() {
+		return bible().getNumberOfVerses();
+	}
+
+	@Override
+	public VerseList getAllVerses() {
+		return bible().getAllVerses();
+	}
+
+	@Override
+	public boolean isValid(Reference ref) {
+		return bible().isValid(ref);
+	}
+
+	@Override
+	public String getVerseText(Reference r) {
+		return bible().getVerseText(r);
+	}
+
+	@Override
+	public Verse getVerse(Reference r) {
+		return bible().getVerse(r);
+	}
+
+	@Override
+	public Verse getVerse(BookOfBible book, int chapter, int verse) {
+		return bible().getVerse(book, chapter, verse);
+	}
+
+	@Override
+	public VerseList getVersesContaining(String phrase) {
+		return bible().getVersesContaining(phrase);
+	}
+
+	@Override
+	public ReferenceList getReferencesContaining(String phrase) {
+		return bible().getReferencesContaining(phrase);
+	}
+
+	@Override
+	public VerseList getVerses(ReferenceList references) {
+		return bible().getVerses(references);
+	}
+
+	@Override
+	public String[] getVerseTexts(ReferenceList references) {
+		return bible().getVerseTexts(references);
+	}
+
+	@Override
+	public int getLastVerseNumber(BookOfBible book, int chapter) {
+		return bible().getLastVerseNumber(book, chapter);
+	}
+
+	@Override
+	public int getLastChapterNumber(BookOfBible book) {
+		return bible().getLastChapterNumber(book);
+	}
+
+	@Override
+	public ReferenceList getReferencesInclusive(Reference firstVerse, Reference lastVerse) {
+		return bible().getReferencesInclusive(firstVerse, lastVerse);
+	}
+
+	@Override
+	public ReferenceList getReferencesExclusive(Reference firstVerse, Reference lastVerse) {
+		return bible().getReferencesExclusive(firstVerse, lastVerse);
+	}
+
+	@Override
+	public ReferenceList getReferencesForBook(BookOfBible book) {
+		return bible().getReferencesForBook(book);
+	}
+
+	@Override
+	public ReferenceList getReferencesForChapter(BookOfBible book, int chapter) {
+		return bible().getReferencesForChapter(book, chapter);
+	}
+
+	@Override
+	public ReferenceList getReferencesForChapters(BookOfBible book, int chapter1, int chapter2) {
+		return bible().getReferencesForChapters(book, chapter1, chapter2);
+	}
+
+	@Override
+	public ReferenceList getReferencesForPassage(BookOfBible book, int chapter, int verse1, int verse2) {
+		return bible().getReferencesForPassage(book, chapter, verse1, verse2);
+	}
+
+	@Override
+	public ReferenceList getReferencesForPassage(BookOfBible book, int chapter1, int verse1, int chapter2, int verse2) {
+		return bible().getReferencesForPassage(book, chapter1, verse1, chapter2, verse2);
+	}
+
+	@Override
+	public VerseList getVersesInclusive(Reference firstVerse, Reference lastVerse) {
+		return bible().getVersesInclusive(firstVerse, lastVerse);
+	}
+
+	@Override
+	public VerseList getVersesExclusive(Reference firstVerse, Reference lastVerse) {
+		return bible().getVersesExclusive(firstVerse, lastVerse);
+	}
+
+	@Override
+	public VerseList getBook(BookOfBible book) {
+		return bible().getBook(book);
+	}
+
+	@Override
+	public VerseList getChapter(BookOfBible book, int chapter) {
+		return bible().getChapter(book, chapter);
+	}
+
+	@Override
+	public VerseList getChapters(BookOfBible book, int chapter1, int chapter2) {
+		return bible().getChapters(book, chapter1, chapter2);
+	}
+
+	@Override
+	public VerseList getPassage(BookOfBible book, int chapter, int verse1, int verse2) {
+		return bible().getPassage(book, chapter, verse1, verse2);
+	}
+
+	@Override
+	public VerseList getPassage(BookOfBible book, int chapter1, int verse1, int chapter2, int verse2) {
+		return bible().getPassage(book, chapter1, verse1, chapter2, verse2);
+	}
+
+	// ---------------------------------------------------------------------------------------------
+	// Private helper methods
+
+	private synchronized Bible bible() {
+		return load().bible;
+	}
+
+	/**
+	 * @return the loaded Bible, reading it from the source if it isn't in memory.
+	 */
+	private Loaded load() {
+		Loaded current = loaded == null ? null : loaded.get();
+		if (current == null) {
+			Bible bible = source.load();
+			numberOfLoads++;
+			if (bible == null) {
+				bible = new ArrayListBible(new VerseList(version, title));
+			}
+			current = new Loaded(bible);
+			loaded = new SoftReference<Loaded>(current);
+		}
+		return current;
+	}
+
+	/**
+	 * A loaded Bible and its concordance, which are dropped together.
+	 */
+	private static class Loaded {
+		private final Bible bible;
+		// Volatile since getConcordanceIfBuilt reads it without the lock.
+		private volatile Concordance concordance;
+		// True if making the concordance threw. Volatile for the same reason.
+		private volatile boolean concordanceFailed;
+
+		Loaded(Bible bible) {
+			this.bible = bible;
+		}
+	}
+}
@@ -0,0 +1,122 @@
+package bibleReader.model;
+
+/**
+ * The lower-cased text of every verse of one version of the Bible, kept in a single char buffer so that
+ * case-insensitive searches can scan it without calling toLowerCase (and allocating a new String) on every verse for
+ * every query.
+ *
+ * The text of the verse with ordinal i is chars[offsets[i]] up to (but not including) chars[offsets[i + 1]]. Each
+ * verse is lower-cased on its own with String.toLowerCase, so a phrase occurs in this copy of a verse exactly when
+ * verse.toLowerCase().contains(phrase.toLowerCase()) is true.
+ *
+ * @author Logan
+ */
+class LowerCaseCorpus {
+	// The size of an array header, used when estimating how much memory the corpus takes.
+	private static final int	ARRAY_HEADER	= 16;
+
+	private char[]				chars;
+	private int[]				offsets;
+
+	/**
+	 * Build the corpus.
+	 *
+	 * @param texts the text of every verse, indexed by ordinal.
+	 */
+	LowerCaseCorpus(String[] texts) {
+		offsets = new int[texts.length + 1];
+		String[] lowered = new String[texts.length];
+		int length = 0;
+		for (int i = 0; i < texts.length; i++) {
+			// Lower-casing can change the length of a string, so measure the lower-cased version.
+			lowered[i] = texts[i].toLowerCase();
+			length += lowered[i].length();
+		}
+		chars = new char[length];
+		for (int i = 0; i < texts.length; i++) {
+			offsets[i + 1] = offsets[i] + lowered[i].length();
+			lowered[i].getChars(0, lowered[i].length(), chars, offsets[i]);
+		}
+	}
+
+	/**
+	 * @return the number of verses in the corpus.
+	 */
+	int size() {
+		return offsets.length - 1;
+	}
+
+	/**
+	 * @param ordinal the ordinal of a verse.
+	 * @return the position in getChars() of the first character of the verse.
+	 */
+	int getStart(int ordinal) {
+		return offsets[ordinal];
+	}
+
+	/**
+	 * @param ordinal the ordinal of a verse.
+	 * @return one more than the position in getChars() of the last character of the verse.
+	 */
+	int getEnd(int ordinal) {
+		return offsets[ordinal + 1];
+	}
+
+	/**
+	 * @return the buffer holding the lower-cased text of every verse. It must not be modified.
+	 */
+	char[] getChars() {
+		return chars;
+	}
+
+	/**
+	 * @param ordinal the ordinal of a verse.
+	 * @param phrase a phrase that has already been lower-cased.
+	 * @return true if the lower-cased text of the verse contains phrase.
+	 */
+	boolean contains(int ordinal, String phrase) {
+		int length = phrase.length();
+		if (length == 0) {
+			return true;
+		}
+		char first = phrase.charAt(0);
+		int last = offsets[ordinal + 1] - length;
+		for (int i = offsets[ordinal]; i <= last; i++) {
+			if (chars[i] != first) {
+				continue;
+			}
+			int j = 1;
+			while (j < length && chars[i + j] == phrase.charAt(j)) {
+				j++;
+			}
+			if (j == length) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return roughly how many bytes of memory the corpus uses.
+	 */
+	long getSizeInBytes() {
+		return sizeInBytes(chars.length, offsets.length);
+	}
+
+	/**
+	 * @param texts the text of every verse, indexed by ordinal.
+	 * @return roughly how many bytes of memory a corpus built from texts would use. Lower-casing rarely changes the
+	 *         length of a verse, so this is almost always exact.
+	 */
+	static long estimateSizeInBytes(String[] texts) {
+		long length = 0;
+		for (String text : texts) {
+			length += text.length();
+		}
+		return sizeInBytes(length, texts.length + 1);
+	}
+
+	private static long sizeInBytes(long numberOfChars, int numberOfOffsets) {
+		return 2 * ARRAY_HEADER + 2 * numberOfChars + 4L * numberOfOffsets;
+	}
+}
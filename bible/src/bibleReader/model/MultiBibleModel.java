@@ -51,6 +51,24 @@ public interface MultiBibleModel {
 	 */
 	public String getText(String version, Reference reference);
 
+	/**
+	 * Returns the text of each of the given references in each of the given
+	 * versions, as a table with one column per version. Asking for the whole
+	 * table at once means each Bible is only found once, and it looks up its
+	 * column in a single pass over the references (which is quickest when
+	 * they are in order, as the results of searches and passages are).
+	 * 
+	 * @param versions
+	 *            The versions of the Bible to look in.
+	 * @param references
+	 *            The References we want the text for.
+	 * @return an array with one column for each version, in the same order as
+	 *         versions. Element [v][i] is the text of references.get(i) in
+	 *         versions[v], or null if it isn't in that version. The column for
+	 *         a version that isn't in the model is all null.
+	 */
+	public String[][] getTexts(String[] versions, ReferenceList references);
+
 	/**
 	 * Returns a list of all references <i>r</i> such that <i>words</i> is
 	 * contained in <i>r</i> for at least one version of the Bible. In other
@@ -132,6 +150,12 @@ public interface MultiBibleModel {
 	 * any of the versions, and only listing each reference once no matter how
 	 * many versions it appears in.
 	 * 
+	 * Several passages may be given at once, separated by ';' or ',' and a
+	 * space (e.g. "Rom 3:23; 6:23, 25"). A passage without a book is in the
+	 * book of the one before it, and if the one before ended with a verse, a
+	 * bare number is a verse in the same chapter. The verses of all of the
+	 * passages are combined into one list, in order and without duplicates.
+	 * 
 	 * @param reference
 	 *            A string representation of the reference (e.g.
 	 *            "Genesis 1:2-3:4")
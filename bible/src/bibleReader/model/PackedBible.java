@@ -0,0 +1,680 @@
+package bibleReader.model;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * A class that stores a version of the Bible in flat arrays.
+ *
+ * Every verse is given an ordinal (its position in the Bible), and the references and texts are stored in parallel
+ * arrays indexed by that ordinal. The references are kept packed into ints (see {@link Reference#pack()}) in sorted
+ * order, so looking up a verse is a binary search over an int[] and every passage is a contiguous range of ordinals.
+ *
+ * A PackedBible can also be saved in a binary form (see write) and read straight out of a buffer holding it (see
+ * read). Then the texts and references are only decoded from the buffer the first time each verse is used, so
+ * loading a version from a memory-mapped file does little more than copy the packed references.
+ *
+ * @author Logan
+ */
+public class PackedBible implements Bible {
+	// The saved form (see write) starts with MAGIC, FORMAT_VERSION, the number of verses, where the packed references
+	// start, where the texts start, how many bytes of text there are and the checksums of the references and the text
+	// (see VerseChecksums), then the version and the title. The packed
+	// references are followed by the offsets of the texts (one more than the number of verses), then the texts, all
+	// in UTF-8.
+	private static final int		MAGIC			= 0x42424942;
+	/**
+	 * The version of the saved form written by write. Buffers in any other version are ignored by read.
+	 */
+	public static final int			FORMAT_VERSION	= 2;
+	private static final int		HEADER_SIZE		= 40;
+	private static final Charset	UTF_8			= Charset.forName("UTF-8");
+
+	// The Fields
+	private String version;
+	private String title;
+	// keys[i] is the packed reference of the verse with ordinal i. They are strictly increasing.
+	private int[] keys;
+	// texts[i] is the text of the verse with ordinal i. For a Bible read from a buffer it is null until it is needed.
+	private String[] texts;
+	// references[i] is the Reference of the verse with ordinal i, so we never have to build one for a lookup. For a
+	// Bible read from a buffer it is null until it is needed.
+	private Reference[] references;
+	// The buffer the Bible was read from, where the offsets of the texts start and where the texts start, or null if
+	// the Bible was not read from a buffer.
+	private ByteBuffer buffer;
+	private int offsetsStart;
+	private int textStart;
+	// Where each book and chapter starts.
+	private ChapterIndex index;
+	// The index used for phrase searches. It is built the first time it is needed.
+	private TrigramIndex searchIndex;
+	// The checksums of the verses, for checking saved concordances. A Bible read from a buffer gets them from there.
+	private VerseChecksums checksums;
+
+	/**
+	 * Create a new Bible with the given verses. The verses do not need to be in order. If a reference occurs more than
+	 * once, the last verse with that reference is kept (as TreeMapBible does). Verses whose reference cannot be packed
+	 * (a null or Dummy book, or a chapter or verse number outside 0..Reference.MAX_PACKED) are ignored.
+	 *
+	 * @param verses
+	 *            All of the verses of this version of the Bible.
+	 */
+	public PackedBible(VerseList verses) {
+		version = verses.getVersion();
+		title = verses.getDescription();
+
+		// Collect the verses we can store.
+		int size = 0;
+		int[] packed = new int[verses.size()];
+		String[] keptTexts = new String[verses.size()];
+		Reference[] keptReferences = new Reference[verses.size()];
+		for (Verse verse : verses) {
+			Reference ref = verse.getReference();
+			if (ref.isPackable() && ref.getBookOfBible() != BookOfBible.Dummy) {
+				packed[size] = ref.pack();
+				keptTexts[size] = verse.getText();
+				keptReferences[size] = ref;
+				size++;
+			}
+		}
+		store(packed, keptTexts, keptReferences, size);
+	}
+
+	/**
+	 * Create a Bible from verses collected by a Builder. The references are made when they are first needed.
+	 */
+	private PackedBible(String version, String title, int[] packed, String[] texts, int size) {
+		this.version = version;
+		this.title = title;
+		store(packed, texts, null, size);
+	}
+
+	/**
+	 * Create a Bible served from a buffer that read has already checked.
+	 */
+	private PackedBible(ByteBuffer buffer, String version, String title, int[] keys, int offsetsStart, int textStart,
+			VerseChecksums checksums) {
+		this.buffer = buffer;
+		this.version = version;
+		this.title = title;
+		this.keys = keys;
+		this.offsetsStart = offsetsStart;
+		this.textStart = textStart;
+		texts = new String[keys.length];
+		references = new Reference[keys.length];
+		index = new ChapterIndex(keys, keys.length);
+		this.checksums = checksums;
+	}
+
+	/**
+	 * Read a Bible saved by write. The verses are served straight from the buffer, so if it is a MappedByteBuffer the
+	 * text of a verse is only read from the file when it is first used.
+	 *
+	 * @param buffer
+	 *            the saved Bible, starting at position 0.
+	 * @return the Bible, or null if the buffer doesn't hold a Bible in the current format (or it is damaged).
+	 */
+	public static PackedBible read(ByteBuffer buffer) {
+		if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION) {
+			return null;
+		}
+		int size = buffer.getInt(8);
+		int keysStart = buffer.getInt(12);
+		int textStart = buffer.getInt(16);
+		int textLength = buffer.getInt(20);
+		if (size < 0 || keysStart < HEADER_SIZE || textLength < 0 || textStart < keysStart
+				|| (textStart - keysStart) / 4 != 2 * size + 1 || textStart > buffer.capacity() - textLength) {
+			return null;
+		}
+		int position = HEADER_SIZE;
+		int versionLength = buffer.getInt(position);
+		if (versionLength < 0 || versionLength > keysStart - position - 8) {
+			return null;
+		}
+		String version = decode(buffer, position + 4, versionLength);
+		position += 4 + versionLength;
+		int titleLength = buffer.getInt(position);
+		if (titleLength < 0 || titleLength > keysStart - position - 4) {
+			return null;
+		}
+		String title = decode(buffer, position + 4, titleLength);
+
+		// The keys are the only thing copied out of the buffer, since every lookup searches them.
+		int[] keys = new int[size];
+		ByteBuffer view = buffer.duplicate();
+		view.position(keysStart);
+		view.asIntBuffer().get(keys);
+		BookOfBible[] books = BookOfBible.values();
+		int largestKey = Reference.pack(books[books.length - 1], Reference.MAX_PACKED, Reference.MAX_PACKED);
+		for (int i = 0; i < size; i++) {
+			if (keys[i] < 0 || keys[i] > largestKey || (i > 0 && keys[i] <= keys[i - 1])) {
+				return null;
+			}
+		}
+		int offsetsStart = keysStart + 4 * size;
+		if (buffer.getInt(offsetsStart) != 0 || buffer.getInt(offsetsStart + 4 * size) != textLength) {
+			return null;
+		}
+		VerseChecksums checksums = new VerseChecksums(size, buffer.getLong(24), buffer.getLong(32));
+		return new PackedBible(buffer, version, title, keys, offsetsStart, textStart, checksums);
+	}
+
+	/**
+	 * Save the Bible so that read can load it again.
+	 *
+	 * @param out
+	 *            the stream to write to. It is not closed.
+	 * @throws IOException
+	 *             if the stream can't be written to.
+	 */
+	public void write(OutputStream out) throws IOException {
+		byte[] versionBytes = version == null ? new byte[0] : version.getBytes(UTF_8);
+		byte[] titleBytes = title == null ? new byte[0] : title.getBytes(UTF_8);
+		byte[][] textBytes = new byte[keys.length][];
+		int textLength = 0;
+		for (int i = 0; i < keys.length; i++) {
+			textBytes[i] = text(i).getBytes(UTF_8);
+			textLength += textBytes[i].length;
+		}
+		// Pad the strings so the keys and offsets start on a multiple of four.
+		int keysStart = HEADER_SIZE + 8 + versionBytes.length + titleBytes.length;
+		int padding = (4 - keysStart % 4) % 4;
+		keysStart += padding;
+
+		DataOutputStream data = new DataOutputStream(out);
+		data.writeInt(MAGIC);
+		data.writeInt(FORMAT_VERSION);
+		data.writeInt(keys.length);
+		data.writeInt(keysStart);
+		data.writeInt(keysStart + 4 * (2 * keys.length + 1));
+		data.writeInt(textLength);
+		data.writeLong(checksums.getReferenceChecksum());
+		data.writeLong(checksums.getTextChecksum());
+		data.writeInt(versionBytes.length);
+		data.write(versionBytes);
+		data.writeInt(titleBytes.length);
+		data.write(titleBytes);
+		data.write(new byte[padding]);
+		for (int key : keys) {
+			data.writeInt(key);
+		}
+		int offset = 0;
+		data.writeInt(offset);
+		for (byte[] bytes : textBytes) {
+			offset += bytes.length;
+			data.writeInt(offset);
+		}
+		for (byte[] bytes : textBytes) {
+			data.write(bytes);
+		}
+		data.flush();
+	}
+
+	@Override
+	public int getNumberOfVerses() {
+		return keys.length;
+	}
+
+	@Override
+	public VerseList getAllVerses() {
+		return versesBetween(0, keys.length);
+	}
+
+	@Override
+	public String getVersion() {
+		return version;
+	}
+
+	@Override
+	public String getTitle() {
+		return title;
+	}
+
+	@Override
+	public boolean isValid(Reference ref) {
+		return indexOf(ref) >= 0;
+	}
+
+	@Override
+	public String getVerseText(Reference r) {
+		int ordinal = indexOf(r);
+		if (ordinal < 0) {
+			return null;
+		}
+		return text(ordinal);
+	}
+
+	@Override
+	public Verse getVerse(Reference r) {
+		int ordinal = indexOf(r);
+		if (ordinal < 0) {
+			return null;
+		}
+		return new Verse(reference(ordinal), text(ordinal));
+	}
+
+	@Override
+	public Verse getVerse(BookOfBible book, int chapter, int verse) {
+		if (!Reference.isPackable(book, chapter, verse)) {
+			return null;
+		}
+		int ordinal = Arrays.binarySearch(keys, Reference.pack(book, chapter, verse));
+		if (ordinal < 0) {
+			return null;
+		}
+		return new Verse(reference(ordinal), text(ordinal));
+	}
+
+	@Override
+	public VerseList getVersesContaining(String phrase) {
+		VerseList list = new VerseList(version, title);
+		for (int ordinal : getSearchIndex().search(phrase)) {
+			list.add(new Verse(reference(ordinal), text(ordinal)));
+		}
+		return list;
+	}
+
+	@Override
+	public ReferenceList getReferencesContaining(String phrase) {
+		int[] ordinals = getSearchIndex().search(phrase);
+		ReferenceList list = new ReferenceList(ordinals.length);
+		for (int ordinal : ordinals) {
+			list.add(reference(ordinal));
+		}
+		return list;
+	}
+
+	@Override
+	public VerseList getVerses(ReferenceList references) {
+		VerseList list = new VerseList(version, "Arbitrary list of Verses");
+		for (Reference ref : references) {
+			list.add(getVerse(ref));
+		}
+		return list;
+	}
+
+	@Override
+	public String[] getVerseTexts(ReferenceList references) {
+		String[] found = new String[references.size()];
+		// Each reference in order can only be at or after the one before it, so only search the keys from that one on.
+		int from = 0;
+		int previous = -1;
+		for (int i = 0; i < found.length; i++) {
+			Reference ref = references.get(i);
+			if (ref == null || !ref.isPackable()) {
+				continue;
+			}
+			int key = ref.pack();
+			if (key < previous) {
+				// Out of order, so start again from the beginning.
+				from = 0;
+			}
+			previous = key;
+			int ordinal = Arrays.binarySearch(keys, from, keys.length, key);
+			if (ordinal >= 0) {
+				found[i] = text(ordinal);
+				from = ordinal;
+			} else {
+				from = -(ordinal + 1);
+			}
+		}
+		return found;
+	}
+
+	@Override
+	public int getLastVerseNumber(BookOfBible book, int chapter) {
+		return index.getLastVerseNumber(book, chapter);
+	}
+
+	@Override
+	public int getLastChapterNumber(BookOfBible book) {
+		return index.getLastChapterNumber(book);
+	}
+
+	@Override
+	public ReferenceList getReferencesInclusive(Reference firstVerse, Reference lastVerse) {
+		// As in TreeMapBible, a passage that starts and ends at the same verse is empty.
+		int from = indexOf(firstVerse);
+		if (from < 0 || !isComparable(lastVerse) || firstVerse.compareTo(lastVerse) >= 0) {
+			return new ReferenceList();
+		}
+		return referencesBetween(from, upperBound(lastVerse.pack()));
+	}
+
+	@Override
+	public ReferenceList getReferencesExclusive(Reference firstVerse, Reference lastVerse) {
+		int from = indexOf(firstVerse);
+		if (from < 0 || !isComparable(lastVerse) || firstVerse.compareTo(lastVerse) >= 0) {
+			return new ReferenceList();
+		}
+		return referencesBetween(from, lowerBound(lastVerse.pack()));
+	}
+
+	@Override
+	public ReferenceList getReferencesForBook(BookOfBible book) {
+		if (book == null) {
+			return new ReferenceList();
+		}
+		return referencesBetween(index.getBookStart(book), index.getBookEnd(book));
+	}
+
+	@Override
+	public ReferenceList getReferencesForChapter(BookOfBible book, int chapter) {
+		return referencesBetween(index.getChapterStart(book, chapter), index.getChapterEnd(book, chapter));
+	}
+
+	@Override
+	public ReferenceList getReferencesForChapters(BookOfBible book, int chapter1, int chapter2) {
+		int from = index.getChapterStart(book, chapter1);
+		if (from < 0 || chapter1 > chapter2) {
+			return new ReferenceList();
+		}
+		return referencesBetween(from, endOfChapter(book, chapter2));
+	}
+
+	@Override
+	public ReferenceList getReferencesForPassage(BookOfBible book, int chapter, int verse1, int verse2) {
+		return getReferencesInclusive(new Reference(book, chapter, verse1), new Reference(book, chapter, verse2));
+	}
+
+	@Override
+	public ReferenceList getReferencesForPassage(BookOfBible book, int chapter1, int verse1, int chapter2, int verse2) {
+		return getReferencesInclusive(new Reference(book, chapter1, verse1), new Reference(book, chapter2, verse2));
+	}
+
+	@Override
+	public VerseList getVersesInclusive(Reference firstVerse, Reference lastVerse) {
+		int from = indexOf(firstVerse);
+		if (from < 0 || !isComparable(lastVerse) || firstVerse.compareTo(lastVerse) >= 0) {
+			return new VerseList(version, title);
+		}
+		return versesBetween(from, upperBound(lastVerse.pack()));
+	}
+
+	@Override
+	public VerseList getVersesExclusive(Reference firstVerse, Reference lastVerse) {
+		int from = indexOf(firstVerse);
+		if (from < 0 || !isComparable(lastVerse) || firstVerse.compareTo(lastVerse) >= 0) {
+			return new VerseList(version, title);
+		}
+		return versesBetween(from, lowerBound(lastVerse.pack()));
+	}
+
+	@Override
+	public VerseList getBook(BookOfBible book) {
+		if (book == null) {
+			return new VerseList(version, title);
+		}
+		return versesBetween(index.getBookStart(book), index.getBookEnd(book));
+	}
+
+	@Override
+	public VerseList getChapter(BookOfBible book, int chapter) {
+		return versesBetween(index.getChapterStart(book, chapter), index.getChapterEnd(book, chapter));
+	}
+
+	@Override
+	public VerseList getChapters(BookOfBible book, int chapter1, int chapter2) {
+		int from = index.getChapterStart(book, chapter1);
+		if (from < 0 || chapter1 > chapter2) {
+			return new VerseList(version, title);
+		}
+		return versesBetween(from, endOfChapter(book, chapter2));
+	}
+
+	@Override
+	public VerseList getPassage(BookOfBible book, int chapter, int verse1, int verse2) {
+		return getVersesInclusive(new Reference(book, chapter, verse1), new Reference(book, chapter, verse2));
+	}
+
+	@Override
+	public VerseList getPassage(BookOfBible book, int chapter1, int verse1, int chapter2, int verse2) {
+		return getVersesInclusive(new Reference(book, chapter1, verse1), new Reference(book, chapter2, verse2));
+	}
+
+	/**
+	 * A VerseSink that builds a PackedBible. Only the packed reference and the text of each verse are kept while the
+	 * verses are being read, so a Bible can be read from a file (see BibleIO.streamBible) without making a Verse or a
+	 * Reference for every line.
+	 *
+	 * As with the PackedBible constructor, the verses do not need to be in order, the last verse with a reference is
+	 * kept, and verses whose reference cannot be packed are ignored.
+	 */
+	public static class Builder implements VerseSink {
+		private String		version	= "";
+		private String		title	= "";
+		private int			size;
+		private int[]		packed	= new int[1024];
+		private String[]	texts	= new String[1024];
+
+		@Override
+		public void setVersion(String version, String title) {
+			this.version = version;
+			this.title = title;
+		}
+
+		@Override
+		public void addVerse(BookOfBible book, int chapter, int verse, String text) {
+			if (!Reference.isPackable(book, chapter, verse) || book == BookOfBible.Dummy) {
+				return;
+			}
+			if (size == packed.length) {
+				packed = Arrays.copyOf(packed, 2 * size);
+				texts = Arrays.copyOf(texts, 2 * size);
+			}
+			packed[size] = Reference.pack(book, chapter, verse);
+			texts[size] = text;
+			size++;
+		}
+
+		/**
+		 * @return a Bible with the verses added so far.
+		 */
+		public PackedBible build() {
+			return new PackedBible(version, title, packed, texts, size);
+		}
+	}
+
+	// ---------------------------------------------------------------------------------------------
+	// Private helper methods
+
+	/**
+	 * Store the given verses, sorting them by reference if they aren't in order already.
+	 *
+	 * @param packed the packed references of the verses.
+	 * @param texts their texts.
+	 * @param refs their references, or null to make them when they are needed.
+	 * @param size the number of verses in the arrays.
+	 */
+	private void store(int[] packed, String[] texts, Reference[] refs, int size) {
+		boolean sorted = true;
+		for (int i = 1; i < size && sorted; i++) {
+			sorted = packed[i - 1] < packed[i];
+		}
+
+		int[] order;
+		if (sorted) {
+			order = null;
+		} else {
+			// Sort by key, breaking ties by position, then keep the last of each run of equal keys.
+			long[] keyAndPosition = new long[size];
+			for (int i = 0; i < size; i++) {
+				keyAndPosition[i] = ((long) packed[i] << 32) | i;
+			}
+			Arrays.sort(keyAndPosition);
+			order = new int[size];
+			int unique = 0;
+			for (int i = 0; i < size; i++) {
+				if (i + 1 < size && (keyAndPosition[i] >>> 32) == (keyAndPosition[i + 1] >>> 32)) {
+					continue;
+				}
+				order[unique++] = (int) keyAndPosition[i];
+			}
+			size = unique;
+		}
+
+		keys = new int[size];
+		this.texts = new String[size];
+		references = new Reference[size];
+		VerseChecksums.Builder sums = new VerseChecksums.Builder();
+		for (int i = 0; i < size; i++) {
+			int from = order == null ? i : order[i];
+			keys[i] = packed[from];
+			this.texts[i] = texts[from];
+			if (refs != null) {
+				references[i] = refs[from];
+			}
+			sums.add(refs != null ? refs[from] : Reference.unpack(keys[i]), texts[from]);
+		}
+		index = new ChapterIndex(keys, size);
+		checksums = sums.build();
+	}
+
+	/**
+	 * @return the checksums of the verses, worked out when the Bible was made or read from its buffer.
+	 */
+	VerseChecksums getChecksums() {
+		return checksums;
+	}
+
+	/**
+	 * @return the references of all of the verses, in order. Unlike getAllVerses, no text is read from the buffer.
+	 */
+	Reference[] getReferences() {
+		Reference[] all = new Reference[keys.length];
+		for (int i = 0; i < all.length; i++) {
+			all[i] = reference(i);
+		}
+		return all;
+	}
+
+	/**
+	 * @return roughly how many bytes the search index's lower-cased copy of the text uses, building the index if it
+	 *         hasn't been. 0 means the index lower-cases verses as it searches.
+	 */
+	synchronized long getLowerCaseCacheSize() {
+		return getSearchIndex().getLowerCaseCacheSize();
+	}
+
+	private synchronized TrigramIndex getSearchIndex() {
+		if (searchIndex == null) {
+			for (int i = 0; i < texts.length; i++) {
+				text(i);
+			}
+			searchIndex = new TrigramIndex(texts);
+		}
+		return searchIndex;
+	}
+
+	/**
+	 * @return the text of the verse with the given ordinal, decoding it from the buffer if it hasn't been yet.
+	 */
+	private String text(int ordinal) {
+		String text = texts[ordinal];
+		if (text == null) {
+			// Two threads may both decode it, but they get the same String, so it doesn't matter which is kept.
+			int start = buffer.getInt(offsetsStart + 4 * ordinal);
+			int end = buffer.getInt(offsetsStart + 4 * ordinal + 4);
+			text = decode(buffer, textStart + start, end - start);
+			texts[ordinal] = text;
+		}
+		return text;
+	}
+
+	/**
+	 * @return the reference of the verse with the given ordinal, unpacking it if it hasn't been yet.
+	 */
+	private Reference reference(int ordinal) {
+		Reference ref = references[ordinal];
+		if (ref == null) {
+			ref = Reference.unpack(keys[ordinal]);
+			references[ordinal] = ref;
+		}
+		return ref;
+	}
+
+	/**
+	 * @return the UTF-8 string of the given length starting at the given offset in the buffer.
+	 */
+	private static String decode(ByteBuffer buffer, int offset, int length) {
+		byte[] bytes = new byte[length];
+		ByteBuffer view = buffer.duplicate();
+		view.position(offset);
+		view.get(bytes);
+		return new String(bytes, UTF_8);
+	}
+
+	/**
+	 * @param ref a reference.
+	 * @return the ordinal of the verse with the given reference, or -1 if it isn't in this Bible.
+	 */
+	private int indexOf(Reference ref) {
+		if (ref == null || !ref.isPackable()) {
+			return -1;
+		}
+		int ordinal = Arrays.binarySearch(keys, ref.pack());
+		return ordinal < 0 ? -1 : ordinal;
+	}
+
+	/**
+	 * @return the ordinal of the first verse whose packed reference is at least key.
+	 */
+	private int lowerBound(int key) {
+		int ordinal = Arrays.binarySearch(keys, key);
+		return ordinal < 0 ? -(ordinal + 1) : ordinal;
+	}
+
+	/**
+	 * @return the ordinal of the first verse whose packed reference is greater than key.
+	 */
+	private int upperBound(int key) {
+		int ordinal = Arrays.binarySearch(keys, key);
+		return ordinal < 0 ? -(ordinal + 1) : ordinal + 1;
+	}
+
+	/**
+	 * @return one more than the ordinal of the last verse at or before the end of the given chapter.
+	 */
+	private int endOfChapter(BookOfBible book, int chapter) {
+		int end = index.getChapterEnd(book, chapter);
+		if (end >= 0) {
+			return end;
+		}
+		// The chapter itself is missing, so find where it would have ended.
+		return upperBound(Reference.pack(book, chapter, Reference.MAX_PACKED));
+	}
+
+	/**
+	 * @return true if ref can be compared against the references in this Bible.
+	 */
+	private static boolean isComparable(Reference ref) {
+		return ref != null && ref.getBookOfBible() != null;
+	}
+
+	private ReferenceList referencesBetween(int from, int to) {
+		if (to <= from) {
+			return new ReferenceList();
+		}
+		ReferenceList list = new ReferenceList(to - from);
+		for (int i = from; i < to; i++) {
+			list.add(reference(i));
+		}
+		return list;
+	}
+
+	private VerseList versesBetween(int from, int to) {
+		VerseList list = new VerseList(version, title);
+		if (to > from) {
+			list.ensureCapacity(to - from);
+			for (int i = from; i < to; i++) {
+				list.add(new Verse(reference(i), text(i)));
+			}
+		}
+		return list;
+	}
+}
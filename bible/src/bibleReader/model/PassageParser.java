@@ -0,0 +1,427 @@
+package bibleReader.model;
+
+import java.util.ArrayList;
+
+/**
+ * Parses a passage reference such as "John 3:16-18" in a single pass over the string, without regular expressions,
+ * substrings or boxed numbers. The book is looked up with BookOfBible.getBookOfBible(CharSequence, int, int).
+ *
+ * The references accepted, and how they are split into a book and the rest, are exactly those of the patterns in
+ * BibleReaderModel (bookPattern followed by one of the chapter and verse patterns): a book, then one of "c", "c-c",
+ * "c:v", "c:v-v", "c:v-c:v" or "c-c:v", with white space allowed around the numbers. Like those patterns, the book
+ * name is not checked here; a reference whose book isn't known still parses, with a null book.
+ *
+ * parseAll also accepts several references separated by ';' or ',', such as "Rom 3:23; 6:23, 25; 1 Cor 13". The
+ * separator must be followed by white space (or end the string), as in the example; "John 3;16" is not two references. A
+ * reference after the first may leave out the book, which is then the book of the one before. If the one before named
+ * a verse, a bare number (or range of numbers) is a verse (or verses) in the same chapter; otherwise it is a chapter.
+ *
+ * @author Logan
+ */
+class PassageParser {
+	/**
+	 * The forms a reference can take.
+	 */
+	enum Form {
+		// "Book"
+		BOOK,
+		// "Book c"
+		CHAPTER,
+		// "Book c-c"
+		CHAPTERS,
+		// "Book c:v"
+		VERSE,
+		// "Book c:v-v"
+		VERSES,
+		// "Book c:v-c:v"
+		PASSAGE,
+		// "Book c-c:v"
+		CHAPTERS_TO_VERSE
+	}
+
+	private Form		form;
+	private BookOfBible	book;
+	// The numbers in the reference, in the order they appear.
+	private int[]		numbers	= new int[4];
+
+	/**
+	 * Parse one or more references separated by ';' or ','.
+	 *
+	 * @param references the references.
+	 * @return the parsed references, or null if any of them isn't in one of the forms. If there are several, they must
+	 *         all have known books.
+	 * @throws NumberFormatException if one of the numbers is too big for an int.
+	 */
+	static ArrayList<PassageParser> parseAll(String references) {
+		ArrayList<PassageParser> passages = new ArrayList<PassageParser>();
+		int length = references.length();
+		int end = nextSeparator(references, 0, length);
+		if (end == length) {
+			// Just one, which is parsed exactly as it always was.
+			PassageParser passage = parse(references, 0, length);
+			if (passage == null) {
+				return null;
+			}
+			passages.add(passage);
+			return passages;
+		}
+		PassageParser previous = null;
+		for (int start = 0; start < length; start = end + 1, end = nextSeparator(references, start, length)) {
+			if (skipSpace(references, start, end) == end) {
+				// Nothing between two separators, or after the last.
+				continue;
+			}
+			PassageParser passage = parse(references, start, end);
+			if ((passage == null || passage.book == null) && previous != null) {
+				passage = new PassageParser();
+				if (!passage.parseRest(references, skipSpace(references, start, end), end)
+						|| passage.form == Form.BOOK) {
+					return null;
+				}
+				passage.carryFrom(previous);
+			}
+			if (passage == null || passage.book == null) {
+				return null;
+			}
+			passages.add(passage);
+			previous = passage;
+		}
+		return passages.isEmpty() ? null : passages;
+	}
+
+	/**
+	 * Parse a reference.
+	 *
+	 * @param reference the reference.
+	 * @return the parsed reference, or null if it isn't in any of the forms.
+	 * @throws NumberFormatException if one of the numbers is too big for an int.
+	 */
+	static PassageParser parse(String reference) {
+		return parse(reference, 0, reference.length());
+	}
+
+	/**
+	 * Parse a reference held in part of a string.
+	 *
+	 * @param reference the string holding the reference.
+	 * @param from where the reference starts.
+	 * @param end where the reference ends.
+	 * @return the parsed reference, or null if it isn't in any of the forms.
+	 * @throws NumberFormatException if one of the numbers is too big for an int.
+	 */
+	static PassageParser parse(String reference, int from, int end) {
+		int start = skipSpace(reference, from, end);
+		// The rest (matched by ".*") can't have a line terminator in it, so the book has to go past the last one. The
+		// pattern tries each way of starting the book in turn until one does: 1, 2, 3, I, II or III followed by a
+		// word, and then words alone.
+		int last = lastLineTerminator(reference, start, end);
+		int bookEnd = -1;
+		int restStart = -1;
+		for (int prefix = 1; prefix <= 3 && restStart <= last; prefix++) {
+			bookEnd = numberedBookEnd(reference, start, prefix, end);
+			restStart = bookEnd < 0 ? -1 : skipSpace(reference, bookEnd, end);
+		}
+		if (restStart <= last) {
+			bookEnd = wordsBookEnd(reference, start, end);
+			restStart = bookEnd < 0 ? -1 : skipSpace(reference, bookEnd, end);
+			if (restStart <= last) {
+				return null;
+			}
+		}
+
+		PassageParser parser = new PassageParser();
+		if (!parser.parseRest(reference, restStart, end)) {
+			return null;
+		}
+		parser.book = BookOfBible.getBookOfBible(reference, start, bookEnd);
+		return parser;
+	}
+
+	/**
+	 * @return the form of the reference.
+	 */
+	Form getForm() {
+		return form;
+	}
+
+	/**
+	 * @return the book, or null if the book in the reference isn't known.
+	 */
+	BookOfBible getBook() {
+		return book;
+	}
+
+	/**
+	 * @param i which number.
+	 * @return the i-th number in the reference (counting from 0), e.g. for "John 3:16-18", 3, 16 and 18.
+	 */
+	int getNumber(int i) {
+		return numbers[i];
+	}
+
+	/**
+	 * Find the verses of the reference in a Bible, just as the BibleReaderModel method for its form does for each
+	 * version.
+	 *
+	 * @param bible the Bible.
+	 * @return the references of the verses, in order.
+	 */
+	ReferenceList getReferences(Bible bible) {
+		switch (form) {
+		case BOOK:
+			return bible.getReferencesForBook(book);
+		case CHAPTER:
+			return bible.getReferencesForChapter(book, numbers[0]);
+		case CHAPTERS:
+			return bible.getReferencesForChapters(book, numbers[0], numbers[1]);
+		case VERSE:
+			ReferenceList list = new ReferenceList(1);
+			Verse verse = bible.getVerse(book, numbers[0], numbers[1]);
+			if (verse != null) {
+				list.add(verse.getReference());
+			}
+			return list;
+		case VERSES:
+			return bible.getReferencesForPassage(book, numbers[0], numbers[1], numbers[2]);
+		case PASSAGE:
+			return bible.getReferencesForPassage(book, numbers[0], numbers[1], numbers[2], numbers[3]);
+		default:
+			// "c1-c2:v2" starts at the beginning of c1.
+			return bible.getReferencesForPassage(book, numbers[0], 1, numbers[1], numbers[2]);
+		}
+	}
+
+	// ---------------------------------------------------------------------------------------------
+	// Private helper methods
+
+	/**
+	 * Fill in what a reference without a book leaves out from the reference before it.
+	 */
+	private void carryFrom(PassageParser previous) {
+		book = previous.book;
+		int chapter;
+		switch (previous.form) {
+		case VERSE:
+		case VERSES:
+			chapter = previous.numbers[0];
+			break;
+		case PASSAGE:
+			chapter = previous.numbers[2];
+			break;
+		case CHAPTERS_TO_VERSE:
+			chapter = previous.numbers[1];
+			break;
+		default:
+			// The one before was a book or chapters, so the numbers are chapters too.
+			return;
+		}
+		// The numbers that would be chapters are verses in the chapter the one before ended in.
+		if (form == Form.CHAPTER) {
+			form = Form.VERSE;
+			numbers[1] = numbers[0];
+			numbers[0] = chapter;
+		} else if (form == Form.CHAPTERS) {
+			form = Form.VERSES;
+			numbers[2] = numbers[1];
+			numbers[1] = numbers[0];
+			numbers[0] = chapter;
+		} else if (form == Form.CHAPTERS_TO_VERSE) {
+			form = Form.PASSAGE;
+			numbers[3] = numbers[2];
+			numbers[2] = numbers[1];
+			numbers[1] = numbers[0];
+			numbers[0] = chapter;
+		}
+	}
+
+	/**
+	 * @return the index of the first separator at or after i, or end. A ';' or ',' only separates references when it
+	 *         is followed by white space, another ';' or ',', or the end, so "John 3;16" is still one (invalid)
+	 *         reference rather than John 3 and John 16.
+	 */
+	private static int nextSeparator(String text, int i, int end) {
+		for (; i < end; i++) {
+			char c = text.charAt(i);
+			if (c == ';' || c == ',') {
+				if (i + 1 == end || skipSpace(text, i + 1, end) > i + 1) {
+					return i;
+				}
+				char next = text.charAt(i + 1);
+				if (next == ';' || next == ',') {
+					return i;
+				}
+			}
+		}
+		return end;
+	}
+
+	/**
+	 * Parse the numbers after the book, setting the form (or leaving it null if they aren't in one of the forms).
+	 *
+	 * @return true if they are in one of the forms.
+	 */
+	private boolean parseRest(String text, int i, int end) {
+		if (i == end) {
+			form = Form.BOOK;
+			return true;
+		}
+		// The separators between the numbers, e.g. ":-" for "c:v-v".
+		char first = 0;
+		char second = 0;
+		char third = 0;
+		// Where each number ends; numbers holds where they start until the form is known.
+		int[] ends = new int[numbers.length];
+		int count = 0;
+		while (true) {
+			i = skipSpace(text, i, end);
+			int digitsEnd = i;
+			while (digitsEnd < end && text.charAt(digitsEnd) >= '0' && text.charAt(digitsEnd) <= '9') {
+				digitsEnd++;
+			}
+			if (digitsEnd == i || count == numbers.length) {
+				return false;
+			}
+			numbers[count] = i;
+			ends[count++] = digitsEnd;
+			i = skipSpace(text, digitsEnd, end);
+			if (i == end) {
+				break;
+			}
+			char separator = text.charAt(i++);
+			if (separator != ':' && separator != '-') {
+				return false;
+			}
+			if (count == 1) {
+				first = separator;
+			} else if (count == 2) {
+				second = separator;
+			} else {
+				third = separator;
+			}
+		}
+		if (count == 1) {
+			form = Form.CHAPTER;
+		} else if (count == 2) {
+			form = first == '-' ? Form.CHAPTERS : Form.VERSE;
+		} else if (count == 3) {
+			if (first == ':' && second == '-') {
+				form = Form.VERSES;
+			} else if (first == '-' && second == ':') {
+				form = Form.CHAPTERS_TO_VERSE;
+			}
+		} else if (first == ':' && second == '-' && third == ':') {
+			form = Form.PASSAGE;
+		}
+		if (form == null) {
+			return false;
+		}
+		// Only a number in a reference of the right form can be too big.
+		for (int j = 0; j < count; j++) {
+			numbers[j] = parseInt(text, numbers[j], ends[j]);
+		}
+		return true;
+	}
+
+	/**
+	 * @param prefix the length of the number at the start of the book: 1 for 1, 2, 3 or I, 2 for II or 3 for III.
+	 * @return where a book of the form "1 Word" (the number, optional white space, and a word) starting at i ends, or
+	 *         -1 if there isn't one.
+	 */
+	private static int numberedBookEnd(String text, int i, int prefix, int end) {
+		if (end - i < prefix) {
+			return -1;
+		}
+		char c = text.charAt(i);
+		if (prefix == 1 && c != '1' && c != '2' && c != '3' && c != 'I') {
+			return -1;
+		}
+		for (int k = 0; k < prefix && prefix > 1; k++) {
+			if (text.charAt(i + k) != 'I') {
+				return -1;
+			}
+		}
+		int j = skipSpace(text, i + prefix, end);
+		if (j == end || !isWordChar(text.charAt(j))) {
+			return -1;
+		}
+		while (j < end && isWordChar(text.charAt(j))) {
+			j++;
+		}
+		return j;
+	}
+
+	/**
+	 * @return where a book made of words of letters separated by white space starting at i ends, or -1 if there isn't
+	 *         one.
+	 */
+	private static int wordsBookEnd(String text, int i, int end) {
+		if (i == end || !isLetter(text.charAt(i))) {
+			return -1;
+		}
+		int j = i;
+		while (true) {
+			while (j < end && isLetter(text.charAt(j))) {
+				j++;
+			}
+			int next = skipSpace(text, j, end);
+			if (next == end || !isLetter(text.charAt(next))) {
+				return j;
+			}
+			j = next;
+		}
+	}
+
+	/**
+	 * @return the first index at or after i that isn't white space (as \s matches it), or end.
+	 */
+	private static int skipSpace(String text, int i, int end) {
+		while (i < end) {
+			char c = text.charAt(i);
+			if (c != ' ' && c != '\t' && c != '\n' && c != '\u000B' && c != '\f' && c != '\r') {
+				break;
+			}
+			i++;
+		}
+		return i;
+	}
+
+	/**
+	 * @return the index of the last character from start on that "." doesn't match, or start - 1 if there isn't one.
+	 */
+	private static int lastLineTerminator(String text, int start, int end) {
+		int i = end - 1;
+		while (i >= start) {
+			char c = text.charAt(i);
+			if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') {
+				break;
+			}
+			i--;
+		}
+		return i;
+	}
+
+	private static boolean isLetter(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+	}
+
+	// As \w matches it.
+	private static boolean isWordChar(char c) {
+		return isLetter(c) || (c >= '0' && c <= '9') || c == '_';
+	}
+
+	/**
+	 * Parse the digits text[start, end) as Integer.parseInt would.
+	 *
+	 * @throws NumberFormatException if they are too big for an int.
+	 */
+	private static int parseInt(String text, int start, int end) {
+		if (end - start <= 9) {
+			int value = 0;
+			for (int i = start; i < end; i++) {
+				value = 10 * value + (text.charAt(i) - '0');
+			}
+			return value;
+		}
+		return Integer.parseInt(text.substring(start, end));
+	}
+}
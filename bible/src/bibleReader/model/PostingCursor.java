@@ -0,0 +1,213 @@
+package bibleReader.model;
+
+import java.util.Arrays;
+
+/**
+ * Reads the postings (and, when asked, the positions) of one word of a ConcordanceImage, decoding them as it goes.
+ * A cursor only moves forward. Before the first call to next or advance it is before the first posting.
+ *
+ * @author Logan
+ */
+class PostingCursor {
+	/**
+	 * The ordinal returned once a cursor has gone past the last posting. It is larger than every real ordinal.
+	 */
+	static final int			END	= Integer.MAX_VALUE;
+
+	private ConcordanceImage	image;
+	private int					count;
+	// The skip entries of the word.
+	private int					skipStart;
+	private int					numberOfSkips;
+
+	// The index and ordinal of the current posting, and where the next posting starts in the image.
+	private int					index;
+	private int					ordinal;
+	private int					offset;
+
+	// Where the positions of posting positionsIndex start. This lags behind index until the positions are needed.
+	private int					positionsIndex;
+	private int					positionsOffset;
+	// The positions read by the last call to readPositions.
+	private int[]				positions;
+	private int					size;
+
+	/**
+	 * @param image the image.
+	 * @param w the index of the word in the image.
+	 */
+	PostingCursor(ConcordanceImage image, int w) {
+		this.image = image;
+		count = image.getPostingCount(w);
+		skipStart = image.getSkipStart(w);
+		numberOfSkips = image.getNumberOfSkips(w);
+		index = -1;
+		ordinal = -1;
+		offset = image.getPostingsStart(w);
+		positionsOffset = image.getPositionsStart(w);
+		positions = new int[8];
+	}
+
+	/**
+	 * @return the number of postings of the word.
+	 */
+	int getCount() {
+		return count;
+	}
+
+	/**
+	 * @return the ordinal of the current posting, or END if the cursor has gone past the last one.
+	 */
+	int getOrdinal() {
+		return ordinal;
+	}
+
+	/**
+	 * Move to the next posting.
+	 *
+	 * @return its ordinal, or END if there are no more.
+	 */
+	int next() {
+		if (index + 1 >= count) {
+			index = count;
+			ordinal = END;
+			return END;
+		}
+		index++;
+		int gap = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = image.getByte(offset++);
+			gap |= (b & 0x7F) << shift;
+			shift += 7;
+		} while (b < 0);
+		ordinal += gap;
+		return ordinal;
+	}
+
+	/**
+	 * Move forward to the first posting whose ordinal is at least target. If the current posting is already there,
+	 * the cursor doesn't move.
+	 *
+	 * @param target the ordinal to look for.
+	 * @return the ordinal of the posting moved to, or END if there is none.
+	 */
+	int advance(int target) {
+		if (ordinal >= target) {
+			return ordinal;
+		}
+		skipTo(target);
+		while (ordinal < target) {
+			next();
+		}
+		return ordinal;
+	}
+
+	/**
+	 * Read the positions of the word in the verse of the current posting.
+	 *
+	 * @return the number of positions. They can be got with getPosition.
+	 */
+	int readPositions() {
+		// Move past the entries of the postings in between.
+		while (positionsIndex < index) {
+			while (image.getByte(positionsOffset++) != 0) {
+				// Nothing to do but move past it.
+			}
+			positionsIndex++;
+		}
+		size = 0;
+		int position = -1;
+		int value = 0;
+		int shift = 0;
+		for (int i = positionsOffset;; i++) {
+			byte b = image.getByte(i);
+			if (b == 0) {
+				break;
+			}
+			value |= (b & 0x7F) << shift;
+			if (b < 0) {
+				shift += 7;
+			} else {
+				position += value;
+				if (size == positions.length) {
+					positions = Arrays.copyOf(positions, 2 * size);
+				}
+				positions[size++] = position;
+				value = 0;
+				shift = 0;
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * @return the number of positions read by the last call to readPositions.
+	 */
+	int getNumberOfPositions() {
+		return size;
+	}
+
+	/**
+	 * @param i which of the positions read by the last call to readPositions to get.
+	 * @return the position, in increasing order of i.
+	 */
+	int getPosition(int i) {
+		return positions[i];
+	}
+
+	/**
+	 * @param position a position within the verse of the current posting.
+	 * @return true if the word is at that position (according to the last call to readPositions).
+	 */
+	boolean isAt(int position) {
+		return Arrays.binarySearch(positions, 0, size, position) >= 0;
+	}
+
+	// ---------------------------------------------------------------------------------------------
+	// Private helper methods
+
+	/**
+	 * Jump to the end of the last block whose postings are all smaller than target, if that is past the current
+	 * posting. The skip entries are searched by doubling the step and then binary searching the last step.
+	 */
+	private void skipTo(int target) {
+		// Skip entry s is for block s + 1, whose postings start at index (s + 1) * BLOCK_SIZE.
+		int first = (index + 1) / ConcordanceImage.BLOCK_SIZE;
+		if (first >= numberOfSkips || skipOrdinal(first) >= target) {
+			return;
+		}
+		// Find the last entry from first on whose ordinal is smaller than target.
+		int low = first;
+		int step = 1;
+		while (low + step < numberOfSkips && skipOrdinal(low + step) < target) {
+			low += step;
+			step <<= 1;
+		}
+		int high = Math.min(low + step, numberOfSkips);
+		while (low + 1 < high) {
+			int middle = (low + high) >>> 1;
+			if (skipOrdinal(middle) < target) {
+				low = middle;
+			} else {
+				high = middle;
+			}
+		}
+		int entry = skipStart + 4 * ConcordanceImage.SKIP_ENTRY * low;
+		index = (low + 1) * ConcordanceImage.BLOCK_SIZE - 1;
+		ordinal = image.getInt(entry);
+		offset = image.getInt(entry + 4);
+		if (positionsIndex < index + 1) {
+			positionsIndex = index + 1;
+			positionsOffset = image.getInt(entry + 8);
+		}
+	}
+
+	/**
+	 * @return the ordinal of the posting just before the block of skip entry s.
+	 */
+	private int skipOrdinal(int s) {
+		return image.getInt(skipStart + 4 * ConcordanceImage.SKIP_ENTRY * s);
+	}
+}
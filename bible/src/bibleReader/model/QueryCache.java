@@ -0,0 +1,214 @@
+package bibleReader.model;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The results of recent searches and passage lookups, so that asking for the same thing again (which users do all the
+ * time) doesn't search every version again. The least recently used results are dropped once the results take more
+ * than a given number of bytes (estimated from the number of references in them), so one search that finds most of
+ * the Bible counts for more than many that find a verse or two.
+ *
+ * A cache may be used from several threads at once. The results are computed outside of it, so a search that is
+ * already being done by one thread may be done again by another; they both find the same thing.
+ *
+ * @author Logan
+ */
+public class QueryCache {
+	/**
+	 * How many bytes the results may take unless setMaximumSizeInBytes is called.
+	 */
+	public static final long				DEFAULT_MAXIMUM_SIZE	= 8 * 1024 * 1024;
+
+	// Estimates of what an entry costs: the map entry, the key, the list and the array behind it, and one slot in
+	// that array for each reference. The References themselves belong to the Bibles or concordances.
+	private static final int				ENTRY_SIZE				= 128;
+	private static final int				REFERENCE_SIZE			= 8;
+
+	// In order of use, least recently used first.
+	private LinkedHashMap<Key, ReferenceList>	results;
+	private long							sizeInBytes;
+	private long							maximumSizeInBytes;
+	// Changed whenever the cache is cleared, so results found before that can be recognized and left out.
+	private int								generation;
+
+	private long							hits;
+	private long							misses;
+	private long							evictions;
+
+	public QueryCache() {
+		this(DEFAULT_MAXIMUM_SIZE);
+	}
+
+	/**
+	 * @param maximumSizeInBytes roughly how many bytes the results may take before the least recently used are
+	 *            dropped.
+	 */
+	public QueryCache(long maximumSizeInBytes) {
+		results = new LinkedHashMap<Key, ReferenceList>(16, 0.75f, true);
+		this.maximumSizeInBytes = maximumSizeInBytes;
+	}
+
+	/**
+	 * Look up the results of a query.
+	 *
+	 * @param key the query.
+	 * @return a copy of the results, or null if they aren't in the cache.
+	 */
+	synchronized ReferenceList get(Key key) {
+		ReferenceList found = results.get(key);
+		if (found == null) {
+			misses++;
+			return null;
+		}
+		hits++;
+		// The caller may change the list it gets.
+		return new ReferenceList(found);
+	}
+
+	/**
+	 * @return a number to give to put along with the results of a query that is about to be done.
+	 */
+	synchronized int getGeneration() {
+		return generation;
+	}
+
+	/**
+	 * Add the results of a query, dropping the least recently used results if they now take too much room.
+	 *
+	 * @param key the query.
+	 * @param found the results.
+	 * @param generation what getGeneration returned before the query was done. If the cache has been cleared since,
+	 *            the results may be out of date and aren't added.
+	 */
+	synchronized void put(Key key, ReferenceList found, int generation) {
+		long size = estimateSize(key, found);
+		if (generation != this.generation || size > maximumSizeInBytes) {
+			return;
+		}
+		ReferenceList old = results.put(key, new ReferenceList(found));
+		if (old != null) {
+			sizeInBytes -= estimateSize(key, old);
+		}
+		sizeInBytes += size;
+		shrinkTo(maximumSizeInBytes);
+	}
+
+	/**
+	 * Drop all of the results, because what they would be has changed.
+	 */
+	public synchronized void clear() {
+		results.clear();
+		sizeInBytes = 0;
+		generation++;
+	}
+
+	/**
+	 * @return the number of queries whose results are in the cache.
+	 */
+	public synchronized int size() {
+		return results.size();
+	}
+
+	/**
+	 * @return roughly how many bytes the results in the cache take.
+	 */
+	public synchronized long getSizeInBytes() {
+		return sizeInBytes;
+	}
+
+	public synchronized long getMaximumSizeInBytes() {
+		return maximumSizeInBytes;
+	}
+
+	/**
+	 * @param maximumSizeInBytes roughly how many bytes the results may take. The least recently used are dropped
+	 *            until they fit.
+	 */
+	public synchronized void setMaximumSizeInBytes(long maximumSizeInBytes) {
+		this.maximumSizeInBytes = maximumSizeInBytes;
+		shrinkTo(maximumSizeInBytes);
+	}
+
+	/**
+	 * @return how many times results were found in the cache.
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * @return how many times results were looked for and not found.
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * @return how many results have been dropped to make room (not counting those dropped by clear).
+	 */
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * @return the fraction of lookups that found results in the cache, or 0 if there haven't been any.
+	 */
+	public synchronized double getHitRate() {
+		return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+	}
+
+	// ---------------------------------------------------------------------------------------------
+	// Private helper methods
+
+	private void shrinkTo(long maximum) {
+		Iterator<Map.Entry<Key, ReferenceList>> leastRecent = results.entrySet().iterator();
+		while (sizeInBytes > maximum && leastRecent.hasNext()) {
+			Map.Entry<Key, ReferenceList> entry = leastRecent.next();
+			sizeInBytes -= estimateSize(entry.getKey(), entry.getValue());
+			leastRecent.remove();
+			evictions++;
+		}
+	}
+
+	private static long estimateSize(Key key, ReferenceList found) {
+		return ENTRY_SIZE + 2L * key.query.length() + (long) REFERENCE_SIZE * found.size();
+	}
+
+	/**
+	 * A query: what kind of results it is for, which search was done, and what was asked for (normalized so that
+	 * queries that are bound to find the same things are equal).
+	 */
+	static class Key {
+		private ResultType	type;
+		private String		search;
+		private String		query;
+
+		/**
+		 * @param type whether the query is a search or a passage.
+		 * @param search the name of the method that does the query, since different searches for the same words find
+		 *            different verses.
+		 * @param query the normalized query.
+		 */
+		Key(ResultType type, String search, String query) {
+			this.type = type;
+			this.search = search;
+			this.query = query;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof Key)) {
+				return false;
+			}
+			Key key = (Key) other;
+			return type == key.type && search.equals(key.search) && query.equals(key.query);
+		}
+
+		@Override
+		public int hashCode() {
+			return (31 * type.hashCode() + search.hashCode()) * 31 + query.hashCode();
+		}
+	}
+}
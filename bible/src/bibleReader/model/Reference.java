@@ -6,6 +6,22 @@ package bibleReader.model;
  * @author chuck, Logan
  */
 public class Reference implements Comparable<Reference> {
+	/*
+	 * A Reference can be packed into a single int laid out as book|chapter|verse, with 10 bits each for the chapter
+	 * and the verse. Packed references sort in the same order as compareTo, so a sorted int[] of them can stand in for
+	 * a sorted collection of Reference objects.
+	 */
+	private static final int	BITS		= 10;
+	private static final int	MASK		= (1 << BITS) - 1;
+
+	/**
+	 * The largest chapter or verse number that can be packed exactly.
+	 */
+	public static final int		MAX_PACKED	= MASK;
+
+	// values() copies the array on every call, so keep our own copy for unpacking.
+	private static final BookOfBible[]	BOOKS	= BookOfBible.values();
+
 	private BookOfBible	book;
 	private int			chapter;
 	private int			verse;
@@ -56,9 +72,89 @@ public class Reference implements Comparable<Reference> {
 
 	@Override
 	public int hashCode() {
-		return toString().hashCode();
+		int bookHash = book == null ? 0 : book.ordinal() + 1;
+		return (bookHash * 31 + chapter) * 31 + verse;
+	}
+
+	/**
+	 * @return this reference packed into a single int. See {@link #pack(BookOfBible, int, int)}.
+	 */
+	public int pack() {
+		return pack(book, chapter, verse);
 	}
 
+	/**
+	 * Pack a book, chapter, and verse into a single int which sorts the same way the corresponding Reference would.
+	 * Chapter and verse numbers outside of 0..MAX_PACKED are clamped into that range, so the result still sorts
+	 * correctly against any packable reference, but it no longer identifies the original reference. Use
+	 * {@link #isPackable(BookOfBible, int, int)} first when an exact match matters.
+	 * 
+	 * @param book the book, which must not be null.
+	 * @param chapter the chapter number.
+	 * @param verse the verse number.
+	 * @return the packed form of the reference.
+	 */
+	public static int pack(BookOfBible book, int chapter, int verse) {
+		return (book.ordinal() << (2 * BITS)) | (clamp(chapter) << BITS) | clamp(verse);
+	}
+
+	/**
+	 * @param book the book.
+	 * @param chapter the chapter number.
+	 * @param verse the verse number.
+	 * @return true if and only if pack(book, chapter, verse) identifies exactly this book, chapter and verse.
+	 */
+	public static boolean isPackable(BookOfBible book, int chapter, int verse) {
+		return book != null && chapter >= 0 && chapter <= MASK && verse >= 0 && verse <= MASK;
+	}
+
+	/**
+	 * @return true if and only if this reference can be packed exactly.
+	 */
+	public boolean isPackable() {
+		return isPackable(book, chapter, verse);
+	}
+
+	/**
+	 * @param packed a reference packed by {@link #pack(BookOfBible, int, int)}.
+	 * @return the Reference the int represents.
+	 */
+	public static Reference unpack(int packed) {
+		return new Reference(getBookOfBible(packed), getChapter(packed), getVerse(packed));
+	}
+
+	/**
+	 * @param packed a packed reference.
+	 * @return the book of the packed reference.
+	 */
+	public static BookOfBible getBookOfBible(int packed) {
+		return BOOKS[packed >>> (2 * BITS)];
+	}
+
+	/**
+	 * @param packed a packed reference.
+	 * @return the chapter of the packed reference.
+	 */
+	public static int getChapter(int packed) {
+		return (packed >>> BITS) & MASK;
+	}
+
+	/**
+	 * @param packed a packed reference.
+	 * @return the verse of the packed reference.
+	 */
+	public static int getVerse(int packed) {
+		return packed & MASK;
+	}
+
+	private static int clamp(int number) {
+		if (number < 0) {
+			return 0;
+		} else if (number > MASK) {
+			return MASK;
+		}
+		return number;
+	}
 
 	@Override
 	public int compareTo(Reference otherRef) {
@@ -66,11 +162,13 @@ public class Reference implements Comparable<Reference> {
 		if (diffBook != 0) {
 			return diffBook;
 		} else {
-			int diffChapter = chapter-otherRef.chapter;
+			// Not chapter - otherRef.chapter, which overflows for numbers far
+			// apart (such as the Integer.MIN_VALUE used as a lower bound).
+			int diffChapter = Integer.compare(chapter, otherRef.chapter);
 			if (diffChapter != 0) {
 				return diffChapter;
 			} else {
-				return verse-otherRef.verse;
+				return Integer.compare(verse, otherRef.verse);
 			}
 		}
 	}
@@ -2,6 +2,7 @@ package bibleReader.model;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 
 /**
  * A list of references. This is just a subclass of ArrayList. It is mostly for convenience. This is done as a subclass
@@ -22,4 +23,85 @@ public class ReferenceList extends ArrayList<Reference> {
 		super(list);
 	}
 
+	/**
+	 * Combine several lists of references, such as what was found in each version of the Bible, into one list in
+	 * order and without duplicates. Lists that are already in order (as nearly all are) are merged by walking them
+	 * side by side, so each reference costs a comparison or two rather than a node in a TreeSet. Lists that aren't in
+	 * order are sorted first. None of the lists are changed.
+	 *
+	 * @param lists the lists to combine.
+	 * @return a new list of every reference in any of the lists, in order and without duplicates.
+	 */
+	public static ReferenceList union(ReferenceList... lists) {
+		if (lists.length == 0) {
+			return new ReferenceList();
+		}
+		ReferenceList[] sorted = new ReferenceList[lists.length];
+		for (int i = 0; i < lists.length; i++) {
+			sorted[i] = inOrder(lists[i]);
+		}
+		return union(sorted, 0, sorted.length);
+	}
+
+	/**
+	 * @return the union of the lists from first up to last, which are in order. Merging the two halves and then the
+	 *         results takes about log(k) comparisons for each reference, for k lists.
+	 */
+	private static ReferenceList union(ReferenceList[] lists, int first, int last) {
+		if (last - first == 1) {
+			return removeDuplicates(lists[first]);
+		}
+		int middle = (first + last) / 2;
+		return union(union(lists, first, middle), union(lists, middle, last));
+	}
+
+	/**
+	 * @return the union of two lists that are in order.
+	 */
+	private static ReferenceList union(ReferenceList a, ReferenceList b) {
+		ReferenceList merged = new ReferenceList(Math.max(a.size(), b.size()));
+		int i = 0;
+		int j = 0;
+		Reference last = null;
+		while (i < a.size() || j < b.size()) {
+			Reference next;
+			if (j == b.size() || (i < a.size() && a.get(i).compareTo(b.get(j)) <= 0)) {
+				next = a.get(i++);
+			} else {
+				next = b.get(j++);
+			}
+			if (last == null || next.compareTo(last) != 0) {
+				merged.add(next);
+				last = next;
+			}
+		}
+		return merged;
+	}
+
+	/**
+	 * @return the list if it is in order, or a sorted copy of it if it isn't.
+	 */
+	private static ReferenceList inOrder(ReferenceList list) {
+		for (int i = 1; i < list.size(); i++) {
+			if (list.get(i - 1).compareTo(list.get(i)) > 0) {
+				ReferenceList copy = new ReferenceList(list);
+				Collections.sort(copy);
+				return copy;
+			}
+		}
+		return list;
+	}
+
+	/**
+	 * @return a copy of a list that is in order, without duplicates.
+	 */
+	private static ReferenceList removeDuplicates(ReferenceList list) {
+		ReferenceList copy = new ReferenceList(list.size());
+		for (Reference ref : list) {
+			if (copy.isEmpty() || ref.compareTo(copy.get(copy.size() - 1)) != 0) {
+				copy.add(ref);
+			}
+		}
+		return copy;
+	}
 }
@@ -1,5 +1,7 @@
 package bibleReader.model;
 
+import java.util.Iterator;
+import java.util.Map.Entry;
 import java.util.SortedMap;
 import java.util.TreeMap;
 
@@ -15,6 +17,14 @@ public class TreeMapBible implements Bible {
 	private String version;
 	private String title;
 	private TreeMap<Reference, String> theVerses;
+	// Where each book and chapter starts, and their last chapter and verse numbers.
+	private ChapterIndex index;
+	// The index used for phrase searches and the references it refers to by
+	// ordinal. Both are built the first time they are needed.
+	private TrigramIndex searchIndex;
+	private Reference[] searchReferences;
+	// The checksums of the verses, for checking saved concordances.
+	private VerseChecksums checksums;
 
 	/**
 	 * Create a new Bible with the given verses.
@@ -28,12 +38,16 @@ public class TreeMapBible implements Bible {
 		theVerses = new TreeMap<Reference, String>();
 		version = verses.getVersion();
 		title = verses.getDescription();
-		// Loop through the verselist and add all of the verses
+		// Loop through the verselist and add all of the verses. Verses without
+		// a book can't be put in order, so they are left out.
 		for (Verse verse : verses) {
-			theVerses.put(verse.getReference(), verse.getText());
+			if (verse.getReference().getBookOfBible() != null)
+				theVerses.put(verse.getReference(), verse.getText());
 		}
+		index = buildIndex();
 		// Add the dummy book to the end.
 		theVerses.put(new Reference(BookOfBible.Dummy, 1, 1), "dummy");
+		checksums = VerseChecksums.of(getAllVerses());
 	}
 
 	@Override
@@ -43,14 +57,13 @@ public class TreeMapBible implements Bible {
 
 	@Override
 	public VerseList getAllVerses() {
-		// Remove the dummy book.
-		theVerses.remove(theVerses.lastKey());
+		// Leave out the dummy book. The map isn't changed, so this is safe
+		// while the concordance is being built from another thread.
 		VerseList listToReturn = new VerseList(version, title);
-		for (Reference ref : theVerses.keySet()) {
-			listToReturn.add(new Verse(ref, theVerses.get(ref)));
+		for (Entry<Reference, String> entry : theVerses.headMap(
+				theVerses.lastKey()).entrySet()) {
+			listToReturn.add(new Verse(entry.getKey(), entry.getValue()));
 		}
-		// Add back the dummy book.
-		theVerses.put(new Reference(BookOfBible.Dummy, 1, 1), "dummy");
 		return listToReturn;
 	}
 
@@ -93,29 +106,20 @@ public class TreeMapBible implements Bible {
 
 	@Override
 	public VerseList getVersesContaining(String phrase) {
-		VerseList list = new VerseList(version,title);
-		phrase = phrase.toLowerCase();
-		if (phrase.isEmpty()) {
-			return list;
-		}
-		for (Reference ref : theVerses.keySet()) {
-			String verseText = theVerses.get(ref);
-			if (verseText.toLowerCase().contains(phrase))
-				list.add(new Verse(ref, verseText));
+		VerseList list = new VerseList(version, title);
+		for (int ordinal : getSearchIndex().search(phrase)) {
+			Reference ref = searchReferences[ordinal];
+			list.add(new Verse(ref, theVerses.get(ref)));
 		}
 		return list;
 	}
 
 	@Override
 	public ReferenceList getReferencesContaining(String phrase) {
-		ReferenceList list = new ReferenceList();
-		phrase = phrase.toLowerCase();
-		if (phrase.isEmpty()) {
-			return list;
-		}
-		for (Reference ref : theVerses.keySet()) {
-			if (theVerses.get(ref).toLowerCase().contains(phrase))
-				list.add(ref);
+		int[] ordinals = getSearchIndex().search(phrase);
+		ReferenceList list = new ReferenceList(ordinals.length);
+		for (int ordinal : ordinals) {
+			list.add(searchReferences[ordinal]);
 		}
 		return list;
 	}
@@ -138,32 +142,37 @@ public class TreeMapBible implements Bible {
 	}
 
 	@Override
-	public int getLastVerseNumber(BookOfBible book, int chapter) {
-		Reference startRef = new Reference(book, chapter, 1);
-		if (isValid(startRef)) {
-			if (isValid(new Reference(book, chapter + 1, 1))) {
-				SortedMap<Reference, String> subMap = theVerses.subMap(
-						startRef, new Reference(book, chapter + 1, 1));
-				return subMap.lastKey().getVerse();
-			} else {
-				SortedMap<Reference, String> subMap = theVerses.subMap(
-						startRef, new Reference(BookOfBible.nextBook(book), 1,
-								1));
-				return subMap.lastKey().getVerse();
+	public String[] getVerseTexts(ReferenceList references) {
+		String[] found = new String[references.size()];
+		// A run of references that are next to each other in the map (as in a
+		// passage) is read by walking the map rather than looking each one up.
+		Iterator<Entry<Reference, String>> walk = null;
+		Entry<Reference, String> next = null;
+		for (int i = 0; i < found.length; i++) {
+			Reference ref = references.get(i);
+			if (ref == null || ref.getBookOfBible() == null
+					|| ref.getBookOfBible() == BookOfBible.Dummy)
+				continue;
+			if (next == null || !next.getKey().equals(ref)) {
+				walk = theVerses.tailMap(ref, true).entrySet().iterator();
+				next = walk.next();
+				if (!next.getKey().equals(ref))
+					continue;
 			}
+			found[i] = next.getValue();
+			next = walk.next();
 		}
-		return -1;
+		return found;
+	}
+
+	@Override
+	public int getLastVerseNumber(BookOfBible book, int chapter) {
+		return index.getLastVerseNumber(book, chapter);
 	}
 
 	@Override
 	public int getLastChapterNumber(BookOfBible book) {
-		Reference startRef = new Reference(book, 1, 1);
-		if (isValid(startRef)) {
-			SortedMap<Reference, String> subMap = theVerses.subMap(startRef,
-					new Reference(BookOfBible.nextBook(book), 1, 1));
-			return subMap.lastKey().getChapter();
-		}
-		return -1;
+		return index.getLastChapterNumber(book);
 	}
 
 	@Override
@@ -180,32 +189,25 @@ public class TreeMapBible implements Bible {
 
 	@Override
 	public ReferenceList getReferencesForBook(BookOfBible book) {
-		if (book == null)
+		SortedMap<Reference, String> subMap = getBookMap(book);
+		if (subMap == null)
 			return new ReferenceList();
-		Reference startRef = new Reference(book, 1, 1);
-		Reference endRef = new Reference(BookOfBible.nextBook(book), 1, 1);
-		return getReferenceList(false, startRef, endRef);
+		return new ReferenceList(subMap.keySet());
 	}
 
 	@Override
 	public ReferenceList getReferencesForChapter(BookOfBible book, int chapter) {
-		if (book == null)
-			return new ReferenceList();
-		Reference startRef = new Reference(book, chapter, 1);
-		Reference endRef = new Reference(book, chapter, getLastVerseNumber(
-				book, chapter));
-		return getReferenceList(true, startRef, endRef);
+		return getReferencesForChapters(book, chapter, chapter);
 	}
 
 	@Override
 	public ReferenceList getReferencesForChapters(BookOfBible book,
 			int chapter1, int chapter2) {
-		if (book == null)
+		SortedMap<Reference, String> subMap = getChaptersMap(book, chapter1,
+				chapter2);
+		if (subMap == null)
 			return new ReferenceList();
-		Reference startRef = new Reference(book, chapter1, 1);
-		Reference endRef = new Reference(book, chapter2, getLastVerseNumber(
-				book, chapter2));
-		return getReferenceList(true, startRef, endRef);
+		return new ReferenceList(subMap.keySet());
 	}
 
 	@Override
@@ -242,31 +244,17 @@ public class TreeMapBible implements Bible {
 
 	@Override
 	public VerseList getBook(BookOfBible book) {
-		if (book == null)
-			return new VerseList(version, title);
-		Reference startRef = new Reference(book, 1, 1);
-		Reference endRef = new Reference(BookOfBible.nextBook(book), 1, 1);
-		return getVerseList(false, startRef, endRef);
+		return toVerseList(getBookMap(book));
 	}
 
 	@Override
 	public VerseList getChapter(BookOfBible book, int chapter) {
-		if (book == null)
-			return new VerseList(version, title);
-		Reference startRef = new Reference(book, chapter, 1);
-		Reference endRef = new Reference(book, chapter, getLastVerseNumber(
-				book, chapter));
-		return getVerseList(true, startRef, endRef);
+		return getChapters(book, chapter, chapter);
 	}
 
 	@Override
 	public VerseList getChapters(BookOfBible book, int chapter1, int chapter2) {
-		if (book == null)
-			return new VerseList(version, title);
-		Reference startRef = new Reference(book, chapter1, 1);
-		Reference endRef = new Reference(book, chapter2, getLastVerseNumber(
-				book, chapter2));
-		return getVerseList(true, startRef, endRef);
+		return toVerseList(getChaptersMap(book, chapter1, chapter2));
 	}
 
 	@Override
@@ -289,6 +277,105 @@ public class TreeMapBible implements Bible {
 		return getVerseList(true, startRef, endRef);
 	}
 
+	/**
+	 * Build the chapter index from the references in the map, leaving out the dummy verse.
+	 * 
+	 * @return the index.
+	 */
+	private ChapterIndex buildIndex() {
+		return new ChapterIndex(theVerses.headMap(
+				new Reference(BookOfBible.Dummy, Integer.MIN_VALUE,
+						Integer.MIN_VALUE)).keySet());
+	}
+
+	/**
+	 * @return the checksums of the verses, worked out when the Bible was made.
+	 */
+	VerseChecksums getChecksums() {
+		return checksums;
+	}
+
+	/**
+	 * @return roughly how many bytes the search index's lower-cased copy of the text uses, building the index if it
+	 *         hasn't been. 0 means the index lower-cases verses as it searches.
+	 */
+	synchronized long getLowerCaseCacheSize() {
+		return getSearchIndex().getLowerCaseCacheSize();
+	}
+
+	/**
+	 * @return the search index, building it (and searchReferences) if this is
+	 *         the first search.
+	 */
+	private synchronized TrigramIndex getSearchIndex() {
+		if (searchIndex == null) {
+			// Number the verses in order, leaving out the dummy verse.
+			int size = getNumberOfVerses();
+			Reference[] refs = new Reference[size];
+			String[] texts = new String[size];
+			int ordinal = 0;
+			for (Entry<Reference, String> entry : theVerses.headMap(
+					theVerses.lastKey()).entrySet()) {
+				refs[ordinal] = entry.getKey();
+				texts[ordinal] = entry.getValue();
+				ordinal++;
+			}
+			searchReferences = refs;
+			searchIndex = new TrigramIndex(texts);
+		}
+		return searchIndex;
+	}
+
+	/**
+	 * @param book
+	 *            The book.
+	 * @return the part of the map holding the given book, or null if the
+	 *         book is not in this Bible.
+	 */
+	private SortedMap<Reference, String> getBookMap(BookOfBible book) {
+		if (book == null || index.getBookStart(book) == index.getBookEnd(book))
+			return null;
+		// Chapter and verse numbers can be negative (see ChapterIndex), so the
+		// bounds are below any chapter of this book and of the next one.
+		return theVerses.subMap(new Reference(book, Integer.MIN_VALUE,
+				Integer.MIN_VALUE), new Reference(BookOfBible.nextBook(book),
+				Integer.MIN_VALUE, Integer.MIN_VALUE));
+	}
+
+	/**
+	 * @param book
+	 *            The book.
+	 * @param chapter1
+	 *            The first chapter, which must be in this Bible.
+	 * @param chapter2
+	 *            The last chapter.
+	 * @return the part of the map holding the given chapters, or null if the
+	 *         passage is not valid in this Bible.
+	 */
+	private SortedMap<Reference, String> getChaptersMap(BookOfBible book,
+			int chapter1, int chapter2) {
+		if (index.getChapterStart(book, chapter1) < 0 || chapter1 > chapter2)
+			return null;
+		return theVerses.subMap(new Reference(book, chapter1, 0), true,
+				new Reference(book, chapter2, Integer.MAX_VALUE), true);
+	}
+
+	/**
+	 * @param subMap
+	 *            Part of the map, or null.
+	 * @return a VerseList of the verses in the map, or an empty list if it
+	 *         is null.
+	 */
+	private VerseList toVerseList(SortedMap<Reference, String> subMap) {
+		VerseList list = new VerseList(version, title);
+		if (subMap != null) {
+			for (Entry<Reference, String> entry : subMap.entrySet()) {
+				list.add(new Verse(entry.getKey(), entry.getValue()));
+			}
+		}
+		return list;
+	}
+
 	/**
 	 * Returns a referencelist of references between reference start and end.
 	 * 
@@ -0,0 +1,243 @@
+package bibleReader.model;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * An index of the trigrams (three character substrings) of the lower-cased verse texts of one version of the Bible,
+ * used to answer getVersesContaining and getReferencesContaining without looking at every verse.
+ *
+ * A verse can only contain a phrase if it contains every trigram of the phrase, so intersecting the posting lists of
+ * those trigrams gives a (usually very small) set of candidate verses. Each candidate is then checked with the same
+ * case-insensitive contains test the Bible classes have always used, so the results are exactly the same as a full
+ * scan. Phrases shorter than a trigram fall back to checking every verse.
+ *
+ * Verses are identified by their ordinal, which is their position in the array of texts the index was built from.
+ *
+ * If BibleFactory allows it, the index also keeps a LowerCaseCorpus so that checking a candidate doesn't lower-case
+ * (and copy) its text every time. Otherwise the texts are lower-cased as they are checked, which is slower but uses no
+ * extra memory.
+ *
+ * @author Logan
+ */
+class TrigramIndex {
+	// Once this few candidates are left, checking them directly is cheaper than intersecting more lists.
+	private static final int	FEW_CANDIDATES	= 8;
+
+	private String[]			texts;
+	// The lower-cased texts, or null if BibleFactory's limit didn't allow us to keep them.
+	private LowerCaseCorpus		corpus;
+
+	// An open addressing hash table from a trigram (three chars packed into a long) to its id.
+	private long[]				trigrams;
+	private int[]				ids;
+	private int					numberOfTrigrams;
+
+	// postings[id] holds the ordinals of the verses containing the trigram, in increasing order.
+	private int[][]				postings;
+
+	/**
+	 * Build the index.
+	 *
+	 * @param texts the text of every verse, indexed by ordinal.
+	 */
+	TrigramIndex(String[] texts) {
+		this.texts = texts;
+		if (LowerCaseCorpus.estimateSizeInBytes(texts) <= BibleFactory.getLowerCaseCacheLimit()) {
+			corpus = new LowerCaseCorpus(texts);
+		}
+		trigrams = new long[1 << 14];
+		ids = new int[1 << 14];
+		Arrays.fill(ids, -1);
+		postings = new int[1 << 12][];
+		int[] sizes = new int[1 << 12];
+		// The last verse each trigram was added for, so each verse is only added once per trigram.
+		int[] lastVerse = new int[1 << 12];
+
+		for (int verse = 0; verse < texts.length; verse++) {
+			char[] chars;
+			int start;
+			int end;
+			if (corpus != null) {
+				chars = corpus.getChars();
+				start = corpus.getStart(verse);
+				end = corpus.getEnd(verse);
+			} else {
+				chars = texts[verse].toLowerCase().toCharArray();
+				start = 0;
+				end = chars.length;
+			}
+			for (int i = start; i + 3 <= end; i++) {
+				int id = idFor(trigram(chars, i));
+				if (id == postings.length) {
+					postings = Arrays.copyOf(postings, 2 * id);
+					sizes = Arrays.copyOf(sizes, 2 * id);
+					lastVerse = Arrays.copyOf(lastVerse, 2 * id);
+				}
+				if (postings[id] == null) {
+					postings[id] = new int[4];
+					lastVerse[id] = -1;
+				}
+				if (lastVerse[id] != verse) {
+					if (sizes[id] == postings[id].length) {
+						postings[id] = Arrays.copyOf(postings[id], 2 * sizes[id]);
+					}
+					postings[id][sizes[id]++] = verse;
+					lastVerse[id] = verse;
+				}
+			}
+		}
+
+		// Trim everything down to size.
+		postings = Arrays.copyOf(postings, numberOfTrigrams);
+		for (int id = 0; id < numberOfTrigrams; id++) {
+			postings[id] = Arrays.copyOf(postings[id], sizes[id]);
+		}
+	}
+
+	/**
+	 * @param phrase the phrase to search for, ignoring case.
+	 * @return the ordinals, in increasing order, of the verses whose text contains phrase (ignoring case). An empty
+	 *         phrase matches nothing.
+	 */
+	int[] search(String phrase) {
+		phrase = phrase.toLowerCase();
+		if (phrase.isEmpty()) {
+			return new int[0];
+		}
+
+		int[] candidates = null;
+		if (phrase.length() >= 3) {
+			// Gather the posting list of each trigram of the phrase, rarest first.
+			char[] chars = phrase.toCharArray();
+			int[][] lists = new int[chars.length - 2][];
+			for (int i = 0; i < lists.length; i++) {
+				int id = find(trigram(chars, i));
+				if (id < 0) {
+					// Some trigram of the phrase occurs nowhere.
+					return new int[0];
+				}
+				lists[i] = postings[id];
+			}
+			Arrays.sort(lists, new Comparator<int[]>() {
+				@Override
+				public int compare(int[] a, int[] b) {
+					return a.length - b.length;
+				}
+			});
+			candidates = lists[0];
+			for (int i = 1; i < lists.length && candidates.length > FEW_CANDIDATES; i++) {
+				if (lists[i] != lists[i - 1]) {
+					candidates = intersect(candidates, lists[i]);
+				}
+			}
+		}
+
+		// Check the candidates (or every verse if there are none) for the actual phrase.
+		int count = candidates == null ? texts.length : candidates.length;
+		int[] matches = new int[count];
+		int size = 0;
+		for (int i = 0; i < count; i++) {
+			int verse = candidates == null ? i : candidates[i];
+			if (corpus != null ? corpus.contains(verse, phrase) : texts[verse].toLowerCase().contains(phrase)) {
+				matches[size++] = verse;
+			}
+		}
+		return Arrays.copyOf(matches, size);
+	}
+
+	/**
+	 * @return the number of distinct trigrams in the index.
+	 */
+	int getNumberOfTrigrams() {
+		return numberOfTrigrams;
+	}
+
+	/**
+	 * @return roughly how many bytes the lower-cased copy of the texts uses, or 0 if the index doesn't keep one.
+	 */
+	long getLowerCaseCacheSize() {
+		return corpus == null ? 0 : corpus.getSizeInBytes();
+	}
+
+	// ---------------------------------------------------------------------------------------------
+	// Private helper methods
+
+	private static long trigram(char[] chars, int i) {
+		return ((long) chars[i] << 32) | ((long) chars[i + 1] << 16) | chars[i + 2];
+	}
+
+	private int slot(long trigram) {
+		return (int) ((trigram * 0x9E3779B97F4A7C15L) >>> 40) & (ids.length - 1);
+	}
+
+	/**
+	 * @return the id of the trigram, or -1 if it isn't in the index.
+	 */
+	private int find(long trigram) {
+		for (int slot = slot(trigram);; slot = (slot + 1) & (ids.length - 1)) {
+			if (ids[slot] < 0 || trigrams[slot] == trigram) {
+				return ids[slot];
+			}
+		}
+	}
+
+	/**
+	 * @return the id of the trigram, giving it the next id if it isn't in the index yet.
+	 */
+	private int idFor(long trigram) {
+		int slot = slot(trigram);
+		while (ids[slot] >= 0) {
+			if (trigrams[slot] == trigram) {
+				return ids[slot];
+			}
+			slot = (slot + 1) & (ids.length - 1);
+		}
+		trigrams[slot] = trigram;
+		ids[slot] = numberOfTrigrams++;
+		if (2 * numberOfTrigrams > ids.length) {
+			grow();
+		}
+		return numberOfTrigrams - 1;
+	}
+
+	private void grow() {
+		long[] oldTrigrams = trigrams;
+		int[] oldIds = ids;
+		trigrams = new long[2 * oldIds.length];
+		ids = new int[2 * oldIds.length];
+		Arrays.fill(ids, -1);
+		for (int i = 0; i < oldIds.length; i++) {
+			if (oldIds[i] >= 0) {
+				int slot = slot(oldTrigrams[i]);
+				while (ids[slot] >= 0) {
+					slot = (slot + 1) & (ids.length - 1);
+				}
+				trigrams[slot] = oldTrigrams[i];
+				ids[slot] = oldIds[i];
+			}
+		}
+	}
+
+	/**
+	 * @return the values that occur in both sorted arrays, in order.
+	 */
+	private static int[] intersect(int[] a, int[] b) {
+		int[] result = new int[Math.min(a.length, b.length)];
+		int size = 0;
+		int i = 0;
+		int j = 0;
+		while (i < a.length && j < b.length) {
+			if (a[i] < b[j]) {
+				i++;
+			} else if (a[i] > b[j]) {
+				j++;
+			} else {
+				result[size++] = a[i];
+				i++;
+				j++;
+			}
+		}
+		return Arrays.copyOf(result, size);
+	}
+}
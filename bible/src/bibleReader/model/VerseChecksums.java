@@ -0,0 +1,113 @@
+package bibleReader.model;
+
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+/**
+ * Checksums of the references and the text of a Bible's verses, in order. A saved concordance records the checksums
+ * of the Bible it was built for, so that it is only used with a Bible whose verses have the same ordinals and text
+ * (see Concordance.read). The Bibles that createBible makes work out their checksums once, as they are built, so
+ * checking a saved concordance doesn't mean reading every verse again.
+ *
+ * @author Logan
+ */
+final class VerseChecksums {
+	private final int	count;
+	private final long	referenceChecksum;
+	private final long	textChecksum;
+
+	/**
+	 * @param count the number of verses.
+	 * @param referenceChecksum the checksum of their references.
+	 * @param textChecksum the checksum of their text.
+	 */
+	VerseChecksums(int count, long referenceChecksum, long textChecksum) {
+		this.count = count;
+		this.referenceChecksum = referenceChecksum;
+		this.textChecksum = textChecksum;
+	}
+
+	/**
+	 * @param verses some verses, in order.
+	 * @return the checksums of the verses.
+	 */
+	static VerseChecksums of(Iterable<Verse> verses) {
+		Builder builder = new Builder();
+		for (Verse verse : verses) {
+			builder.add(verse.getReference(), verse.getText());
+		}
+		return builder.build();
+	}
+
+	/**
+	 * @param bible a Bible.
+	 * @return the checksums of all of its verses. They are only worked out here if the Bible isn't one of the
+	 *         implementations createBible makes.
+	 */
+	static VerseChecksums of(Bible bible) {
+		if (bible instanceof ArrayListBible) {
+			return ((ArrayListBible) bible).getChecksums();
+		} else if (bible instanceof TreeMapBible) {
+			return ((TreeMapBible) bible).getChecksums();
+		} else if (bible instanceof PackedBible) {
+			return ((PackedBible) bible).getChecksums();
+		}
+		return of(bible.getAllVerses());
+	}
+
+	/**
+	 * @return the number of verses.
+	 */
+	int getCount() {
+		return count;
+	}
+
+	/**
+	 * @return a checksum of the references of the verses.
+	 */
+	long getReferenceChecksum() {
+		return referenceChecksum;
+	}
+
+	/**
+	 * @return a checksum of the text of the verses.
+	 */
+	long getTextChecksum() {
+		return textChecksum;
+	}
+
+	/**
+	 * Works out the checksums of verses added one at a time, in order.
+	 */
+	static class Builder {
+		private CRC32	references	= new CRC32();
+		private CRC32	text		= new CRC32();
+		private int		count;
+
+		/**
+		 * Add the next verse. The length of its text goes in before the text, so that moving words from one verse to
+		 * the next changes the checksum.
+		 */
+		void add(Reference ref, String verseText) {
+			update(references, ref.hashCode());
+			byte[] bytes = verseText.getBytes(StandardCharsets.UTF_8);
+			update(text, bytes.length);
+			text.update(bytes);
+			count++;
+		}
+
+		/**
+		 * @return the checksums of the verses added so far.
+		 */
+		VerseChecksums build() {
+			return new VerseChecksums(count, references.getValue(), text.getValue());
+		}
+
+		private static void update(CRC32 crc, int value) {
+			crc.update(value >>> 24);
+			crc.update(value >>> 16);
+			crc.update(value >>> 8);
+			crc.update(value);
+		}
+	}
+}
@@ -0,0 +1,29 @@
+package bibleReader.model;
+
+/**
+ * Something that verses can be handed to one at a time as they are read, such as a builder for a Bible or a
+ * concordance. BibleIO.streamBible reads a file straight into sinks, so a version can be loaded without first building
+ * a VerseList of the whole file.
+ *
+ * setVersion is called once, before any verses are added. The verses are added in the order they are in the file.
+ *
+ * @author Logan
+ */
+public interface VerseSink {
+
+	/**
+	 * @param version the abbreviation of the version (e.g. "KJV").
+	 * @param title the full title of the version, or "" if there isn't one.
+	 */
+	void setVersion(String version, String title);
+
+	/**
+	 * Add the next verse that was read.
+	 *
+	 * @param book the book of the verse. It may be null if the file didn't say which book the verse is in.
+	 * @param chapter the chapter of the verse.
+	 * @param verse the number of the verse.
+	 * @param text the text of the verse.
+	 */
+	void addVerse(BookOfBible book, int chapter, int verse, String text);
+}
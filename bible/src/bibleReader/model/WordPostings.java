@@ -0,0 +1,79 @@
+package bibleReader.model;
+
+import java.util.Arrays;
+
+/**
+ * The words of (part of) a Bible in sorted order, together with the ordinals of the verses that contain each word.
+ * This is what a ConcordanceBuilder produces, and two of them built from consecutive ranges of verses can be merged
+ * into one.
+ *
+ * @author Logan
+ */
+class WordPostings {
+	// Every word, in sorted order.
+	final String[]	words;
+	// postings[i] holds the ordinals of the verses containing words[i], in increasing order.
+	final int[][]	postings;
+	// positions[i] holds the positions of words[i] within each verse of postings[i] (see ConcordanceBuilder).
+	final byte[][]	positions;
+
+	WordPostings(String[] words, int[][] postings, byte[][] positions) {
+		this.words = words;
+		this.postings = postings;
+		this.positions = positions;
+	}
+
+	/**
+	 * Merge the words of two ranges of verses.
+	 *
+	 * @param first the words of some verses.
+	 * @param second the words of verses that all come after the verses of first.
+	 * @return the words of both. The postings (and positions) of a word in both are joined end to end, which keeps
+	 *         them sorted because every ordinal in second is larger than every ordinal in first.
+	 */
+	static WordPostings merge(WordPostings first, WordPostings second) {
+		String[] words = new String[first.words.length + second.words.length];
+		int[][] postings = new int[words.length][];
+		byte[][] positions = new byte[words.length][];
+		int size = 0;
+		int i = 0;
+		int j = 0;
+		while (i < first.words.length || j < second.words.length) {
+			int c;
+			if (i == first.words.length) {
+				c = 1;
+			} else if (j == second.words.length) {
+				c = -1;
+			} else {
+				c = first.words[i].compareTo(second.words[j]);
+			}
+			if (c < 0) {
+				words[size] = first.words[i];
+				positions[size] = first.positions[i];
+				postings[size++] = first.postings[i++];
+			} else if (c > 0) {
+				words[size] = second.words[j];
+				positions[size] = second.positions[j];
+				postings[size++] = second.postings[j++];
+			} else {
+				int[] a = first.postings[i];
+				int[] b = second.postings[j];
+				int[] both = Arrays.copyOf(a, a.length + b.length);
+				System.arraycopy(b, 0, both, a.length, b.length);
+				words[size] = first.words[i];
+				positions[size] = concatenate(first.positions[i], second.positions[j]);
+				postings[size++] = both;
+				i++;
+				j++;
+			}
+		}
+		return new WordPostings(Arrays.copyOf(words, size), Arrays.copyOf(postings, size),
+				Arrays.copyOf(positions, size));
+	}
+
+	private static byte[] concatenate(byte[] a, byte[] b) {
+		byte[] both = Arrays.copyOf(a, a.length + b.length);
+		System.arraycopy(b, 0, both, a.length, b.length);
+		return both;
+	}
+}